@@ -0,0 +1,25 @@
+package com.pekall.util.tree.diff.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 基准测试入口. 接受JMH的命令行参数, 并默认启用gc profiler以输出内存分配速率.
+ * <p>
+ *     java -jar tree-diff-benchmark/target/benchmarks.jar [DiffBenchmark] [-p size=1000]
+ * </p>
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        Options options = new OptionsBuilder()
+                .parent(commandLineOptions)
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
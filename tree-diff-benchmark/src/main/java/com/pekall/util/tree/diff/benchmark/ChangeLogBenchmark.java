@@ -0,0 +1,76 @@
+package com.pekall.util.tree.diff.benchmark;
+
+import com.pekall.util.tree.diff.DiffAlgorithm;
+import com.pekall.util.tree.diff.MyTree;
+import com.pekall.util.tree.diff.Node;
+import com.pekall.util.tree.diff.NodeEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 检查点之后少量新增节点时, 变化日志与完整比较的对照.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChangeLogBenchmark {
+
+    @Param({"BALANCED", "RANDOM"})
+    public TreeGenerator.Shape shape;
+
+    @Param({"100000"})
+    public int size;
+
+    @Param({"300"})
+    public int changes;
+
+    private MyTree<Integer> checkpoint;
+    private MyTree<Integer> tree;
+
+    @Setup
+    public void setUp() {
+        int[] parents = TreeGenerator.parents(shape, size, 42L);
+        checkpoint = TreeGenerator.build(parents);
+        tree = TreeGenerator.build(parents);
+        tree.checkpoint();
+
+        Random random = new Random(43L);
+        for (int i = 0; i < changes; i++) {
+            int level = 1 + random.nextInt(tree.getDeep());
+            List<Node<Integer>> nodes = tree.getByLevel(level);
+            tree.addNode(nodes.get(random.nextInt(nodes.size())), size + i);
+        }
+    }
+
+    @Benchmark
+    public Queue<NodeEvent<Integer>> getChanges() {
+        return tree.getChanges();
+    }
+
+    @Benchmark
+    public Queue<NodeEvent<Integer>> diff() {
+        return checkpoint.diff(tree, DiffAlgorithm.HASH);
+    }
+
+    @Benchmark
+    public Queue<NodeEvent<Integer>> diffChangesOnly() {
+        return checkpoint.diff(tree, DiffAlgorithm.CHANGES_ONLY);
+    }
+}
@@ -0,0 +1,90 @@
+package com.pekall.util.tree.diff.benchmark;
+
+import com.pekall.util.tree.diff.CompactTree;
+import com.pekall.util.tree.diff.HandleEventSink;
+import com.pekall.util.tree.diff.HandleVisitor;
+import com.pekall.util.tree.diff.NodeEventType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CompactTree}句柄接口的构建, 遍历和比较. 与{@link TreeBenchmark}, {@link TraversalBenchmark},
+ * {@link DiffBenchmark}中{@link com.pekall.util.tree.diff.MyTree}的结果对照, 分配量用 -prof gc 查看.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompactTreeBenchmark {
+
+    @Param({"BALANCED", "DEEP_CHAIN", "WIDE_FANOUT", "RANDOM"})
+    public TreeGenerator.Shape shape;
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private int[] parents;
+    private CompactTree<Integer> oldTree;
+    private CompactTree<Integer> newTree;
+
+    @Setup
+    public void setUp() {
+        parents = TreeGenerator.parents(shape, size, 42L);
+        oldTree = TreeGenerator.buildCompact(parents);
+        newTree = TreeGenerator.toCompact(
+                TreeGenerator.mutate(TreeGenerator.build(parents), 0.01, 0.01, 0.01, 43L));
+    }
+
+    private static HandleVisitor visitor(final Blackhole blackhole) {
+        return new HandleVisitor() {
+            @Override
+            public void visit(int node) {
+                blackhole.consume(node);
+            }
+        };
+    }
+
+    @Benchmark
+    public CompactTree<Integer> addNode() {
+        return TreeGenerator.buildCompact(parents);
+    }
+
+    @Benchmark
+    public void preOrderTraverse(Blackhole blackhole) {
+        oldTree.preOrderTraverse(CompactTree.ROOT, visitor(blackhole));
+    }
+
+    @Benchmark
+    public void postOrderTraverse(Blackhole blackhole) {
+        oldTree.postOrderTraverse(CompactTree.ROOT, visitor(blackhole));
+    }
+
+    @Benchmark
+    public void levelTraverse(Blackhole blackhole) {
+        oldTree.levelTraverse(CompactTree.ROOT, visitor(blackhole));
+    }
+
+    @Benchmark
+    public void diff(final Blackhole blackhole) {
+        oldTree.diff(newTree, new HandleEventSink() {
+            @Override
+            public void onEvent(NodeEventType eventType, int node) {
+                blackhole.consume(node);
+            }
+        });
+    }
+}
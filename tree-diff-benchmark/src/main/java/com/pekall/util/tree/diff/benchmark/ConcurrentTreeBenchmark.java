@@ -0,0 +1,125 @@
+package com.pekall.util.tree.diff.benchmark;
+
+import com.pekall.util.tree.diff.ConcurrentTree;
+import com.pekall.util.tree.diff.MyTree;
+import com.pekall.util.tree.diff.Node;
+import com.pekall.util.tree.diff.Tree;
+import com.pekall.util.tree.diff.Visitor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 多线程修改和读取同一棵树: 所有操作共用一把锁的MyTree与{@link ConcurrentTree}的对照.
+ * <p>
+ *     写操作添加一个叶子节点再删除, 树的大小保持不变. 线程数用-t指定(如1到32);
+ *     读写混合的组用-tg指定写线程数和读线程数, 如-tg 31,1.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentTreeBenchmark {
+
+    public enum Sharing {
+        LOCKED, CONCURRENT
+    }
+
+    @Param({"LOCKED", "CONCURRENT"})
+    public Sharing sharing;
+
+    @Param({"10000"})
+    public int size;
+
+    private MyTree<Integer> lockedTree;
+    private ConcurrentTree<Integer> concurrentTree;
+    private Node<Integer>[] parents;
+    private final AtomicInteger nextKey = new AtomicInteger();
+
+    @Setup(Level.Iteration)
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        int[] parentKeys = TreeGenerator.parents(TreeGenerator.Shape.RANDOM, size, 42L);
+        lockedTree = TreeGenerator.build(parentKeys);
+        concurrentTree = new ConcurrentTree<>(0);
+        parents = (Node<Integer>[]) new Node[size];
+        parents[0] = lockedTree.getRoot();
+        for (int i = 1; i < size; i++) {
+            parents[i] = lockedTree.findByKey(i);
+            concurrentTree.addNode(parents[parentKeys[i]], i);
+        }
+        nextKey.set(size);
+    }
+
+    @Benchmark
+    public void write() {
+        Node<Integer> parent = parents[ThreadLocalRandom.current().nextInt(size)];
+        int key = nextKey.getAndIncrement();
+        if (sharing == Sharing.LOCKED) {
+            synchronized (lockedTree) {
+                lockedTree.removeNode(lockedTree.addNode(parent, key));
+            }
+        } else {
+            concurrentTree.removeNode(concurrentTree.addNode(parent, key));
+        }
+    }
+
+    /**
+     * 层序遍历整棵树, 共用锁时遍历期间阻塞写线程.
+     */
+    @Benchmark
+    public int read() {
+        NodeCounter counter = new NodeCounter();
+        if (sharing == Sharing.LOCKED) {
+            synchronized (lockedTree) {
+                lockedTree.levelTraverse(lockedTree.getRoot(), counter);
+            }
+        } else {
+            Tree<Integer> snapshot = concurrentTree.snapshot();
+            snapshot.levelTraverse(snapshot.getRoot(), counter);
+        }
+        return counter.count;
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public void mixedWrite() {
+        write();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public int mixedRead() {
+        return read();
+    }
+
+    private static final class NodeCounter implements Visitor<Integer> {
+
+        private int count;
+
+        @Override
+        public void visit(Node<Integer> node) {
+            count++;
+        }
+    }
+}
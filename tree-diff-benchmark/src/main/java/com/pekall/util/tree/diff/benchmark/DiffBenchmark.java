@@ -0,0 +1,112 @@
+package com.pekall.util.tree.diff.benchmark;
+
+import com.pekall.util.tree.diff.DiffAlgorithm;
+import com.pekall.util.tree.diff.NodeEquivalence;
+import com.pekall.util.tree.diff.NodeEvent;
+import com.pekall.util.tree.diff.NodeEventSink;
+import com.pekall.util.tree.diff.Tree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 两棵树的比较. 新树由旧树按给定比例随机移动, 新增, 删除子树得到.
+ * <p>
+ *     diffStreaming和diffStreamingContent与algorithm参数无关.
+ * </p>
+ * <p>
+ *     {@link DiffAlgorithm#LEVEL}在较大的树上耗时为平方级, 需要更大规模时用 -p size=... -p algorithm=HASH.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DiffBenchmark {
+
+    @Param({"BALANCED", "DEEP_CHAIN", "WIDE_FANOUT", "RANDOM"})
+    public TreeGenerator.Shape shape;
+
+    @Param({"1000", "10000"})
+    public int size;
+
+    @Param({"LEVEL", "HASH", "PARALLEL", "CHANGES_ONLY", "ORDERED"})
+    public DiffAlgorithm algorithm;
+
+    @Param({"0.01"})
+    public double moveRate;
+
+    @Param({"0.01"})
+    public double addRate;
+
+    @Param({"0.01"})
+    public double deleteRate;
+
+    /**
+     * key即内容, 保留的节点内容都未变化, 不产生UPDATE事件.
+     */
+    private static final NodeEquivalence<Integer> CONTENT = new NodeEquivalence<Integer>() {
+        @Override
+        public Object identity(Integer key) {
+            return key;
+        }
+
+        @Override
+        public long contentHash(Integer key) {
+            return key;
+        }
+
+        @Override
+        public boolean sameContent(Integer key, Integer otherKey) {
+            return key.equals(otherKey);
+        }
+    };
+
+    private Tree<Integer> oldTree;
+    private Tree<Integer> newTree;
+
+    @Setup
+    public void setUp() {
+        oldTree = TreeGenerator.generate(shape, size, 42L);
+        newTree = TreeGenerator.mutate(oldTree, moveRate, addRate, deleteRate, 43L);
+    }
+
+    @Benchmark
+    public Queue<NodeEvent<Integer>> diff() {
+        return oldTree.diff(newTree, algorithm);
+    }
+
+    @Benchmark
+    public void diffStreaming(final Blackhole blackhole) {
+        oldTree.diff(newTree, new NodeEventSink<Integer>() {
+            @Override
+            public void onEvent(NodeEvent<Integer> event) {
+                blackhole.consume(event);
+            }
+        });
+    }
+
+    @Benchmark
+    public void diffStreamingContent(final Blackhole blackhole) {
+        oldTree.diff(newTree, CONTENT, new NodeEventSink<Integer>() {
+            @Override
+            public void onEvent(NodeEvent<Integer> event) {
+                blackhole.consume(event);
+            }
+        });
+    }
+}
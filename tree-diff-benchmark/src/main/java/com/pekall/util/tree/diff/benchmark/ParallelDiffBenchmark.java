@@ -0,0 +1,63 @@
+package com.pekall.util.tree.diff.benchmark;
+
+import com.pekall.util.tree.diff.NodeEvent;
+import com.pekall.util.tree.diff.ParallelDiff;
+import com.pekall.util.tree.diff.Tree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Queue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 并行比较随线程数的扩展性.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelDiffBenchmark {
+
+    @Param({"BALANCED", "RANDOM"})
+    public TreeGenerator.Shape shape;
+
+    @Param({"1000000"})
+    public int size;
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int parallelism;
+
+    private Tree<Integer> oldTree;
+    private Tree<Integer> newTree;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setUp() {
+        oldTree = TreeGenerator.generate(shape, size, 42L);
+        newTree = TreeGenerator.mutate(oldTree, 0.01, 0.01, 0.01, 43L);
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public Queue<NodeEvent<Integer>> diff() {
+        return ParallelDiff.diff(oldTree, newTree, pool);
+    }
+}
@@ -0,0 +1,92 @@
+package com.pekall.util.tree.diff.benchmark;
+
+import com.pekall.util.tree.diff.DiffAlgorithm;
+import com.pekall.util.tree.diff.MyTree;
+import com.pekall.util.tree.diff.Node;
+import com.pekall.util.tree.diff.NodeEvent;
+import com.pekall.util.tree.diff.PersistentTree;
+import com.pekall.util.tree.diff.Tree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 取快照, 做若干修改后与快照比较: 复制MyTree与{@link PersistentTree}的O(1)快照的对照.
+ * <p>
+ *     每次调用添加changes个叶子节点, 比较后再删除, 树的大小保持不变.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersistentTreeBenchmark {
+
+    @Param({"BALANCED", "RANDOM"})
+    public TreeGenerator.Shape shape;
+
+    @Param({"100000"})
+    public int size;
+
+    @Param({"10", "1000"})
+    public int changes;
+
+    private MyTree<Integer> myTree;
+    private PersistentTree<Integer> persistentTree;
+    private Node<Integer>[] parents;
+    private Node<Integer>[] added;
+    private final Random random = new Random(43L);
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        int[] parentKeys = TreeGenerator.parents(shape, size, 42L);
+        myTree = TreeGenerator.build(parentKeys);
+        persistentTree = new PersistentTree<>(0);
+        parents = (Node<Integer>[]) new Node[size];
+        parents[0] = myTree.getRoot();
+        for (int i = 1; i < size; i++) {
+            parents[i] = myTree.findByKey(i);
+            persistentTree.addNode(parents[parentKeys[i]], i);
+        }
+        added = (Node<Integer>[]) new Node[changes];
+    }
+
+    @Benchmark
+    public Queue<NodeEvent<Integer>> copyAndDiff() {
+        MyTree<Integer> snapshot = myTree.copy();
+        return mutateAndDiff(myTree, snapshot);
+    }
+
+    @Benchmark
+    public Queue<NodeEvent<Integer>> snapshotAndDiff() {
+        PersistentTree<Integer> snapshot = persistentTree.snapshot();
+        return mutateAndDiff(persistentTree, snapshot);
+    }
+
+    private Queue<NodeEvent<Integer>> mutateAndDiff(Tree<Integer> tree, Tree<Integer> snapshot) {
+        for (int i = 0; i < changes; i++) {
+            //参数节点按key解析, MyTree的节点也可以作为PersistentTree的参数
+            added[i] = tree.addNode(parents[random.nextInt(size)], size + i);
+        }
+        Queue<NodeEvent<Integer>> events = tree.diff(snapshot, DiffAlgorithm.CHANGES_ONLY);
+        for (int i = 0; i < changes; i++) {
+            tree.removeNode(added[i]);
+        }
+        return events;
+    }
+}
@@ -0,0 +1,72 @@
+package com.pekall.util.tree.diff.benchmark;
+
+import com.pekall.util.tree.diff.DiffAlgorithm;
+import com.pekall.util.tree.diff.HandleEventSink;
+import com.pekall.util.tree.diff.LongTree;
+import com.pekall.util.tree.diff.MyTree;
+import com.pekall.util.tree.diff.NodeEvent;
+import com.pekall.util.tree.diff.NodeEventType;
+import com.pekall.util.tree.diff.Tree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * key为long时, {@link LongTree}与{@link MyTree}&lt;Long&gt;在相同数据上的比较. GC压力用 -prof gc 查看.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrimitiveTreeBenchmark {
+
+    @Param({"BALANCED", "RANDOM"})
+    public TreeGenerator.Shape shape;
+
+    @Param({"10000", "1000000"})
+    public int size;
+
+    private MyTree<Long> oldTree;
+    private MyTree<Long> newTree;
+    private LongTree oldLongTree;
+    private LongTree newLongTree;
+
+    @Setup
+    public void setUp() {
+        Tree<Integer> old = TreeGenerator.generate(shape, size, 42L);
+        Tree<Integer> mutated = TreeGenerator.mutate(old, 0.01, 0.01, 0.01, 43L);
+        oldTree = TreeGenerator.toLongKeys(old);
+        newTree = TreeGenerator.toLongKeys(mutated);
+        oldLongTree = TreeGenerator.toLongTree(old);
+        newLongTree = TreeGenerator.toLongTree(mutated);
+    }
+
+    @Benchmark
+    public Queue<NodeEvent<Long>> diffMyTree() {
+        return oldTree.diff(newTree, DiffAlgorithm.HASH);
+    }
+
+    @Benchmark
+    public void diffLongTree(final Blackhole blackhole) {
+        oldLongTree.diff(newLongTree, new HandleEventSink() {
+            @Override
+            public void onEvent(NodeEventType eventType, int node) {
+                blackhole.consume(node);
+            }
+        });
+    }
+}
@@ -0,0 +1,83 @@
+package com.pekall.util.tree.diff.benchmark;
+
+import com.pekall.util.tree.diff.DiffAlgorithm;
+import com.pekall.util.tree.diff.KeyCodec;
+import com.pekall.util.tree.diff.MyTree;
+import com.pekall.util.tree.diff.NodeEvent;
+import com.pekall.util.tree.diff.SnapshotTree;
+import com.pekall.util.tree.diff.Tree;
+import com.pekall.util.tree.diff.TreeSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 从快照打开旧树并与新树比较, 对照通过addNode重建旧树.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnapshotBenchmark {
+
+    @Param({"BALANCED", "RANDOM"})
+    public TreeGenerator.Shape shape;
+
+    @Param({"100000", "1000000"})
+    public int size;
+
+    private int[] parents;
+    private Tree<Integer> newTree;
+    private Path file;
+
+    @Setup
+    public void setUp() throws IOException {
+        parents = TreeGenerator.parents(shape, size, 42L);
+        MyTree<Integer> oldTree = TreeGenerator.build(parents);
+        newTree = TreeGenerator.mutate(oldTree, 0.001, 0.001, 0.001, 43L);
+        file = Files.createTempFile("tree", ".snapshot");
+        TreeSnapshot.write(oldTree, KeyCodec.INTEGER, true, file);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public MyTree<Integer> rebuild() {
+        return TreeGenerator.build(parents);
+    }
+
+    @Benchmark
+    public SnapshotTree<Integer> open() throws IOException {
+        return TreeSnapshot.open(file, KeyCodec.INTEGER);
+    }
+
+    @Benchmark
+    public Queue<NodeEvent<Integer>> rebuildAndDiff() {
+        return TreeGenerator.build(parents).diff(newTree, DiffAlgorithm.CHANGES_ONLY);
+    }
+
+    @Benchmark
+    public Queue<NodeEvent<Integer>> openAndDiff() throws IOException {
+        return TreeSnapshot.open(file, KeyCodec.INTEGER).diff(newTree, DiffAlgorithm.CHANGES_ONLY);
+    }
+}
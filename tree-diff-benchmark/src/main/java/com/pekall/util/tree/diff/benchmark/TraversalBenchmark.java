@@ -0,0 +1,189 @@
+package com.pekall.util.tree.diff.benchmark;
+
+import com.pekall.util.tree.diff.Node;
+import com.pekall.util.tree.diff.StopVisitor;
+import com.pekall.util.tree.diff.Tree;
+import com.pekall.util.tree.diff.Visitor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 树的遍历. 以递归实现的先序/后序遍历作为对照.
+ * <p>
+ *     递归实现在{@link TreeGenerator.Shape#DEEP_CHAIN}上深度过大时会栈溢出, 因此默认规模较小.
+ *     查找先序中间的节点: 迭代器和流找到后停止, Visitor只能遍历全部节点.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TraversalBenchmark {
+
+    @Param({"BALANCED", "DEEP_CHAIN", "WIDE_FANOUT", "RANDOM"})
+    public TreeGenerator.Shape shape;
+
+    @Param({"1000", "5000"})
+    public int size;
+
+    private Tree<Integer> tree;
+
+    //先序中间的节点
+    private int target;
+
+    @Setup
+    public void setUp() {
+        tree = TreeGenerator.generate(shape, size, 42L);
+        Iterator<Node<Integer>> iterator = tree.preOrderIterator(tree.getRoot());
+        for (int i = 0; i < size / 2; i++) {
+            iterator.next();
+        }
+        target = iterator.next().key;
+    }
+
+    private static Visitor<Integer> visitor(final Blackhole blackhole) {
+        return new Visitor<Integer>() {
+            @Override
+            public void visit(Node<Integer> node) {
+                blackhole.consume(node);
+            }
+        };
+    }
+
+    @Benchmark
+    public void preOrderTraverse(Blackhole blackhole) {
+        tree.preOrderTraverse(tree.getRoot(), visitor(blackhole));
+    }
+
+    @Benchmark
+    public void postOrderTraverse(Blackhole blackhole) {
+        tree.postOrderTraverse(tree.getRoot(), visitor(blackhole));
+    }
+
+    @Benchmark
+    public void levelTraverse(Blackhole blackhole) {
+        tree.levelTraverse(tree.getRoot(), visitor(blackhole));
+    }
+
+    @Benchmark
+    public void levelStopTraverse(final Blackhole blackhole) {
+        //访问一半节点后停止
+        tree.levelStopTraverse(tree.getRoot(), new StopVisitor<Integer>() {
+            private int visited;
+
+            @Override
+            public boolean stopNow() {
+                return visited >= size / 2;
+            }
+
+            @Override
+            public void visit(Node<Integer> node) {
+                visited++;
+                blackhole.consume(node);
+            }
+        });
+    }
+
+    @Benchmark
+    public void preOrderIterator(Blackhole blackhole) {
+        Iterator<Node<Integer>> iterator = tree.preOrderIterator(tree.getRoot());
+        while (iterator.hasNext()) {
+            blackhole.consume(iterator.next());
+        }
+    }
+
+    @Benchmark
+    public void postOrderIterator(Blackhole blackhole) {
+        Iterator<Node<Integer>> iterator = tree.postOrderIterator(tree.getRoot());
+        while (iterator.hasNext()) {
+            blackhole.consume(iterator.next());
+        }
+    }
+
+    @Benchmark
+    public void levelOrderIterator(Blackhole blackhole) {
+        Iterator<Node<Integer>> iterator = tree.levelOrderIterator(tree.getRoot());
+        while (iterator.hasNext()) {
+            blackhole.consume(iterator.next());
+        }
+    }
+
+    @Benchmark
+    public long stream() {
+        return tree.stream().mapToLong(node -> node.key).sum();
+    }
+
+    @Benchmark
+    public long parallelStream() {
+        return tree.parallelStream().mapToLong(node -> node.key).sum();
+    }
+
+    @Benchmark
+    public Node<Integer> findByVisitor() {
+        final int key = target;
+        final Node<Integer>[] found = newNodes();
+        tree.preOrderTraverse(tree.getRoot(), new Visitor<Integer>() {
+            @Override
+            public void visit(Node<Integer> node) {
+                if (found[0] == null && node.key == key) {
+                    found[0] = node;
+                }
+            }
+        });
+        return found[0];
+    }
+
+    @Benchmark
+    public Node<Integer> findByStream() {
+        final int key = target;
+        return tree.stream().filter(node -> node.key == key).findFirst().orElse(null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Node<Integer>[] newNodes() {
+        return (Node<Integer>[]) new Node[1];
+    }
+
+    @Benchmark
+    public void recursivePreOrderTraverse(Blackhole blackhole) {
+        recursivePreOrder(tree.getRoot(), visitor(blackhole));
+    }
+
+    @Benchmark
+    public void recursivePostOrderTraverse(Blackhole blackhole) {
+        recursivePostOrder(tree.getRoot(), visitor(blackhole));
+    }
+
+    private static void recursivePreOrder(Node<Integer> fromNode, Visitor<Integer> visitor) {
+        visitor.visit(fromNode);
+        if (fromNode.children != null) {
+            for (Node<Integer> child : fromNode.children) {
+                recursivePreOrder(child, visitor);
+            }
+        }
+    }
+
+    private static void recursivePostOrder(Node<Integer> fromNode, Visitor<Integer> visitor) {
+        if (fromNode.children != null) {
+            for (Node<Integer> child : fromNode.children) {
+                recursivePostOrder(child, visitor);
+            }
+        }
+        visitor.visit(fromNode);
+    }
+}
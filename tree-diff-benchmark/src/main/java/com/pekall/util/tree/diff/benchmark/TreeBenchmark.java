@@ -0,0 +1,129 @@
+package com.pekall.util.tree.diff.benchmark;
+
+import com.pekall.util.tree.diff.MyTree;
+import com.pekall.util.tree.diff.Node;
+import com.pekall.util.tree.diff.Tree;
+import com.pekall.util.tree.diff.TreeBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 树的构建和查询.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TreeBenchmark {
+
+    @Param({"BALANCED", "DEEP_CHAIN", "WIDE_FANOUT", "RANDOM"})
+    public TreeGenerator.Shape shape;
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private int[] parents;
+    private Tree<Integer> tree;
+
+    @Setup
+    public void setUp() {
+        parents = TreeGenerator.parents(shape, size, 42L);
+        tree = TreeGenerator.build(parents);
+    }
+
+    @Benchmark
+    public MyTree<Integer> addNode() {
+        return TreeGenerator.build(parents);
+    }
+
+    /**
+     * 调用方以key查找父节点时的逐个添加.
+     */
+    @Benchmark
+    public MyTree<Integer> addNodeByKey() {
+        MyTree<Integer> tree = new MyTree<>(0);
+        for (int i = 1; i < parents.length; i++) {
+            tree.addNode(tree.findByKey(parents[i]), i);
+        }
+        return tree;
+    }
+
+    @Benchmark
+    public MyTree<Integer> treeBuilder() {
+        TreeBuilder<Integer> builder = new TreeBuilder<>(parents.length);
+        builder.add(0, null);
+        for (int i = 1; i < parents.length; i++) {
+            builder.add(i, parents[i]);
+        }
+        return builder.build();
+    }
+
+    @Benchmark
+    public Node<Integer> findByKey() {
+        return ((MyTree<Integer>) tree).findByKey(parents.length / 2);
+    }
+
+    /**
+     * 就地删除最后添加的叶子节点再加回, 与重新构建整棵树的{@link #addNode()}对照. 之后读取最深层, 计入层索引重排的耗时.
+     */
+    @Benchmark
+    public List<Node<Integer>> removeNode() {
+        MyTree<Integer> myTree = (MyTree<Integer>) tree;
+        Node<Integer> node = myTree.findByKey(parents.length - 1);
+        myTree.removeNode(node);
+        myTree.addNode(node.parent, node.key);
+        return myTree.getByLevel(myTree.getDeep());
+    }
+
+    /**
+     * 就地将最后添加的节点移到根节点下再移回.
+     */
+    @Benchmark
+    public List<Node<Integer>> moveSubtree() {
+        MyTree<Integer> myTree = (MyTree<Integer>) tree;
+        Node<Integer> node = myTree.findByKey(parents.length - 1);
+        Node<Integer> parent = node.parent;
+        myTree.moveSubtree(node, myTree.getRoot());
+        myTree.moveSubtree(node, parent);
+        return myTree.getByLevel(myTree.getDeep());
+    }
+
+    @Benchmark
+    public Node<Integer> getRoot() {
+        return tree.getRoot();
+    }
+
+    @Benchmark
+    public int getDeep() {
+        return tree.getDeep();
+    }
+
+    @Benchmark
+    public List<Node<Integer>> getByLevel() {
+        return tree.getByLevel((tree.getDeep() + 1) / 2);
+    }
+
+    @Benchmark
+    public void levelIterator(Blackhole blackhole) {
+        Iterator<List<Node<Integer>>> levels = tree.levelIterator();
+        while (levels.hasNext()) {
+            blackhole.consume(levels.next());
+        }
+    }
+}
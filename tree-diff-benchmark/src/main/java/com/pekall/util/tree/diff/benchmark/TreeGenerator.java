@@ -0,0 +1,289 @@
+package com.pekall.util.tree.diff.benchmark;
+
+import com.pekall.util.tree.diff.CompactTree;
+import com.pekall.util.tree.diff.LongTree;
+import com.pekall.util.tree.diff.MyTree;
+import com.pekall.util.tree.diff.Node;
+import com.pekall.util.tree.diff.Tree;
+import com.pekall.util.tree.diff.Visitor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 生成基准测试用的树.
+ * <p>
+ *     树以 key -> parentKey 的形式生成, key为从0开始的整数, 0为根节点.
+ * </p>
+ */
+public final class TreeGenerator {
+
+    /**
+     * 树的形状.
+     */
+    public enum Shape {
+
+        /**
+         * 每个节点4个子节点, 按层填满.
+         */
+        BALANCED,
+
+        /**
+         * 单链, 深度等于节点数.
+         */
+        DEEP_CHAIN,
+
+        /**
+         * 两层, 根节点下约sqrt(n)个节点, 每个节点下约sqrt(n)个叶子.
+         */
+        WIDE_FANOUT,
+
+        /**
+         * 每个节点的父节点从已有节点中随机选取.
+         */
+        RANDOM
+    }
+
+    private static final int BALANCED_FANOUT = 4;
+
+    /**
+     * 转换为long key时加上的偏移, 使key超出int范围.
+     */
+    public static final long LONG_KEY_OFFSET = 1L << 40;
+
+    private TreeGenerator() {
+    }
+
+    /**
+     * 生成父节点数组, parents[i]为节点i的父节点, 根节点为-1. 父节点总是先于子节点出现.
+     *
+     * @param shape 形状
+     * @param size 节点数
+     * @param seed 随机种子, 仅用于{@link Shape#RANDOM}
+     * @return 父节点数组
+     */
+    public static int[] parents(Shape shape, int size, long seed) {
+        int[] parents = new int[size];
+        parents[0] = -1;
+        Random random = new Random(seed);
+        int fanout = Math.max(1, (int) Math.sqrt(size));
+
+        for (int i = 1; i < size; i++) {
+            switch (shape) {
+                case BALANCED:
+                    parents[i] = (i - 1) / BALANCED_FANOUT;
+                    break;
+                case DEEP_CHAIN:
+                    parents[i] = i - 1;
+                    break;
+                case WIDE_FANOUT:
+                    parents[i] = i <= fanout ? 0 : 1 + (i - fanout - 1) % fanout;
+                    break;
+                default:
+                    parents[i] = random.nextInt(i);
+            }
+        }
+        return parents;
+    }
+
+    /**
+     * 按父节点数组构建树.
+     *
+     * @param parents 父节点数组
+     * @return 树
+     */
+    public static MyTree<Integer> build(int[] parents) {
+        MyTree<Integer> tree = new MyTree<>(0);
+        List<Node<Integer>> nodes = new ArrayList<>(parents.length);
+        nodes.add(tree.getRoot());
+        for (int i = 1; i < parents.length; i++) {
+            nodes.add(tree.addNode(nodes.get(parents[i]), i));
+        }
+        return tree;
+    }
+
+    /**
+     * 按父节点数组构建{@link CompactTree}.
+     *
+     * @param parents 父节点数组
+     * @return 树
+     */
+    public static CompactTree<Integer> buildCompact(int[] parents) {
+        CompactTree<Integer> tree = new CompactTree<>(0, parents.length);
+        for (int i = 1; i < parents.length; i++) {
+            //句柄按添加顺序编号, 与key一致
+            tree.addNode(parents[i], i);
+        }
+        return tree;
+    }
+
+    /**
+     * 复制为{@link CompactTree}, 子节点顺序不变.
+     *
+     * @param tree 原树
+     * @return 紧凑树
+     */
+    public static CompactTree<Integer> toCompact(Tree<Integer> tree) {
+        final CompactTree<Integer> compact = new CompactTree<>(tree.getRoot().key);
+        final Map<Node<Integer>, Integer> handles = new HashMap<>();
+        handles.put(tree.getRoot(), CompactTree.ROOT);
+        tree.preOrderTraverse(tree.getRoot(), new Visitor<Integer>() {
+            @Override
+            public void visit(Node<Integer> node) {
+                if (node.parent != null) {
+                    handles.put(node, compact.addNode(handles.get(node.parent), node.key));
+                }
+            }
+        });
+        return compact;
+    }
+
+    /**
+     * 复制为key为Long的树, key加上{@link #LONG_KEY_OFFSET}.
+     *
+     * @param tree 原树
+     * @return 新树
+     */
+    public static MyTree<Long> toLongKeys(Tree<Integer> tree) {
+        final MyTree<Long> copy = new MyTree<>(tree.getRoot().key + LONG_KEY_OFFSET);
+        final Map<Node<Integer>, Node<Long>> copies = new HashMap<>();
+        copies.put(tree.getRoot(), copy.getRoot());
+        tree.preOrderTraverse(tree.getRoot(), new Visitor<Integer>() {
+            @Override
+            public void visit(Node<Integer> node) {
+                if (node.parent != null) {
+                    copies.put(node, copy.addNode(copies.get(node.parent), node.key + LONG_KEY_OFFSET));
+                }
+            }
+        });
+        return copy;
+    }
+
+    /**
+     * 复制为{@link LongTree}, key加上{@link #LONG_KEY_OFFSET}.
+     *
+     * @param tree 原树
+     * @return 新树
+     */
+    public static LongTree toLongTree(Tree<Integer> tree) {
+        final LongTree copy = new LongTree(tree.getRoot().key + LONG_KEY_OFFSET);
+        final Map<Node<Integer>, Integer> handles = new HashMap<>();
+        handles.put(tree.getRoot(), LongTree.ROOT);
+        tree.preOrderTraverse(tree.getRoot(), new Visitor<Integer>() {
+            @Override
+            public void visit(Node<Integer> node) {
+                if (node.parent != null) {
+                    handles.put(node, copy.addNode(handles.get(node.parent), node.key + LONG_KEY_OFFSET));
+                }
+            }
+        });
+        return copy;
+    }
+
+    public static MyTree<Integer> generate(Shape shape, int size, long seed) {
+        return build(parents(shape, size, seed));
+    }
+
+    /**
+     * 随机修改一棵树, 得到新树. 原树不变.
+     *
+     * @param tree 原树
+     * @param moveRate 子树被移动到其他父节点的比例
+     * @param addRate 新增节点数与原节点数的比例
+     * @param deleteRate 子树被删除的比例
+     * @param seed 随机种子
+     * @return 新树
+     */
+    public static MyTree<Integer> mutate(Tree<Integer> tree, double moveRate, double addRate, double deleteRate,
+                                         long seed) {
+        final Map<Integer, Integer> parents = new LinkedHashMap<>();
+        tree.preOrderTraverse(tree.getRoot(), new Visitor<Integer>() {
+            @Override
+            public void visit(Node<Integer> node) {
+                parents.put(node.key, node.parent == null ? null : node.parent.key);
+            }
+        });
+
+        Random random = new Random(seed);
+        List<Integer> keys = new ArrayList<>(parents.keySet());
+        int nextKey = 0;
+        for (Integer key : keys) {
+            nextKey = Math.max(nextKey, key + 1);
+        }
+
+        for (Integer key : keys) {
+            if (!parents.containsKey(key) || parents.get(key) == null) {
+                continue;
+            }
+            double dice = random.nextDouble();
+            if (dice < deleteRate) {
+                parents.remove(key);
+            } else if (dice < deleteRate + moveRate) {
+                Integer newParent = keys.get(random.nextInt(keys.size()));
+                if (parents.containsKey(newParent) && !isDescendant(parents, newParent, key)) {
+                    parents.put(key, newParent);
+                }
+            }
+        }
+
+        int adds = (int) (keys.size() * addRate);
+        for (int i = 0; i < adds; i++) {
+            Integer parent = keys.get(random.nextInt(keys.size()));
+            if (parents.containsKey(parent)) {
+                parents.put(nextKey++, parent);
+            }
+        }
+
+        return build(parents);
+    }
+
+    private static boolean isDescendant(Map<Integer, Integer> parents, Integer key, Integer ancestor) {
+        for (Integer k = key; k != null; k = parents.get(k)) {
+            if (k.equals(ancestor)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 按 key -> parentKey 从根节点开始构建, 父节点已被删除的节点随之删除.
+     */
+    private static MyTree<Integer> build(Map<Integer, Integer> parents) {
+        Map<Integer, List<Integer>> children = new HashMap<>();
+        Integer rootKey = null;
+        for (Map.Entry<Integer, Integer> entry : parents.entrySet()) {
+            if (entry.getValue() == null) {
+                rootKey = entry.getKey();
+                continue;
+            }
+            List<Integer> siblings = children.get(entry.getValue());
+            if (siblings == null) {
+                siblings = new ArrayList<>();
+                children.put(entry.getValue(), siblings);
+            }
+            siblings.add(entry.getKey());
+        }
+
+        MyTree<Integer> tree = new MyTree<>(rootKey);
+        List<Node<Integer>> current = new ArrayList<>();
+        current.add(tree.getRoot());
+        while (!current.isEmpty()) {
+            List<Node<Integer>> next = new ArrayList<>();
+            for (Node<Integer> node : current) {
+                List<Integer> childKeys = children.get(node.key);
+                if (childKeys != null) {
+                    for (Integer childKey : childKeys) {
+                        next.add(tree.addNode(node, childKey));
+                    }
+                }
+            }
+            current = next;
+        }
+        return tree;
+    }
+}
@@ -0,0 +1,96 @@
+package com.pekall.util.tree.diff.benchmark;
+
+import com.pekall.util.tree.diff.DiffAlgorithm;
+import com.pekall.util.tree.diff.MyTree;
+import com.pekall.util.tree.diff.Node;
+import com.pekall.util.tree.diff.TreeBuilder;
+import com.pekall.util.tree.diff.TreePatch;
+import com.pekall.util.tree.diff.Visitor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 应用比较结果与按新树的记录重新构建的对照.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TreePatchBenchmark {
+
+    @Param({"BALANCED", "RANDOM"})
+    public TreeGenerator.Shape shape;
+
+    @Param({"100000"})
+    public int size;
+
+    @Param({"0.01"})
+    public double changeRate;
+
+    private int[] oldParents;
+    private MyTree<Integer> oldTree;
+    private TreePatch<Integer> patch;
+    private List<Map.Entry<Integer, Integer>> newRecords;
+
+    //就地应用的树, 每次调用前重新构建
+    private MyTree<Integer> tree;
+
+    @Setup
+    public void setUp() {
+        oldParents = TreeGenerator.parents(shape, size, 42L);
+        oldTree = TreeGenerator.build(oldParents);
+        oldTree.levelIterator();
+        MyTree<Integer> newTree = TreeGenerator.mutate(oldTree, changeRate, changeRate, changeRate, 43L);
+        patch = new TreePatch<>(oldTree.diff(newTree, DiffAlgorithm.HASH));
+
+        final List<Map.Entry<Integer, Integer>> records = new ArrayList<>(size);
+        newTree.preOrderTraverse(newTree.getRoot(), new Visitor<Integer>() {
+            @Override
+            public void visit(Node<Integer> node) {
+                records.add(new AbstractMap.SimpleImmutableEntry<>(node.key,
+                        node.parent == null ? null : node.parent.key));
+            }
+        });
+        newRecords = records;
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpTree() {
+        tree = TreeGenerator.build(oldParents);
+        //长期使用的树层索引已有序, 不计入应用的耗时
+        tree.levelIterator();
+    }
+
+    @Benchmark
+    public MyTree<Integer> applyTo() {
+        return patch.applyTo(tree);
+    }
+
+    @Benchmark
+    public MyTree<Integer> applyCopy() {
+        return patch.applyCopy(oldTree);
+    }
+
+    @Benchmark
+    public MyTree<Integer> rebuild() {
+        return TreeBuilder.build(newRecords);
+    }
+}
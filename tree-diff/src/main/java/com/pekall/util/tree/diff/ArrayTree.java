@@ -0,0 +1,447 @@
+package com.pekall.util.tree.diff;
+
+import java.util.Arrays;
+
+/**
+ * 基于数组的树的拓扑结构, 以及按句柄进行的遍历和比较. key的存储由子类决定.
+ * <p>
+ *     拓扑结构保存在int数组中: 父节点, 第一个子节点, 最后一个子节点, 下一个兄弟节点和层号.
+ *     节点以int句柄表示, 根节点为{@link #ROOT}, 其余节点按添加顺序编号.
+ * </p>
+ * <p>
+ *     要求同一棵树内的key唯一. 非线程安全.
+ * </p>
+ *
+ * @param <S> 具体的树类型, 只能与同类型的树比较
+ */
+abstract class ArrayTree<S extends ArrayTree<S>> {
+
+    /**
+     * 根节点的句柄.
+     */
+    public static final int ROOT = 0;
+
+    /**
+     * 表示节点不存在的句柄.
+     */
+    public static final int NO_NODE = -1;
+
+    static final int DEFAULT_CAPACITY = 16;
+
+    //key表的最大槽数, 再大时数组长度溢出int
+    static final int MAX_KEY_TABLE = 1 << 30;
+
+    int[] parents;
+    int[] firstChildren;
+    int[] lastChildren;
+    int[] nextSiblings;
+    int[] levels;
+    int size;
+    int deep;
+
+    //层序遍历顺序的句柄, levelStarts[i]为第i+1层的起始位置. 添加节点后失效, 读取时重建.
+    int[] levelOrder;
+    int[] levelStarts;
+
+    /**
+     * 分配数组并添加根节点, 根节点的key由子类设置.
+     */
+    ArrayTree(int expectedSize) {
+        int capacity = Math.max(1, expectedSize);
+        parents = new int[capacity];
+        firstChildren = new int[capacity];
+        lastChildren = new int[capacity];
+        nextSiblings = new int[capacity];
+        levels = new int[capacity];
+        append(NO_NODE, 1);
+    }
+
+    /**
+     * 容量变化时, 子类扩展key数组及其他按句柄索引的数组.
+     */
+    abstract void growKeys(int capacity);
+
+    /**
+     * key的哈希值, 两棵树中相同的key哈希值必须相同.
+     */
+    abstract int keyHash(int node);
+
+    /**
+     * 本树的节点与另一棵树的节点key是否相同.
+     */
+    abstract boolean sameKey(int node, S other, int otherNode);
+
+    abstract void appendKey(StringBuilder s, int node);
+
+    /**
+     * 在父节点的子节点末尾添加节点, key由调用者设置.
+     */
+    int link(int parent) {
+        check(parent);
+        int node = append(parent, levels[parent] + 1);
+        if (lastChildren[parent] == NO_NODE) {
+            firstChildren[parent] = node;
+        } else {
+            nextSiblings[lastChildren[parent]] = node;
+        }
+        lastChildren[parent] = node;
+        levelOrder = null;
+        return node;
+    }
+
+    private int append(int parent, int level) {
+        if (size == parents.length) {
+            grow();
+        }
+        parents[size] = parent;
+        firstChildren[size] = NO_NODE;
+        lastChildren[size] = NO_NODE;
+        nextSiblings[size] = NO_NODE;
+        levels[size] = level;
+        deep = Math.max(deep, level);
+        return size++;
+    }
+
+    private void grow() {
+        int capacity = parents.length + (parents.length >> 1) + 1;
+        parents = Arrays.copyOf(parents, capacity);
+        firstChildren = Arrays.copyOf(firstChildren, capacity);
+        lastChildren = Arrays.copyOf(lastChildren, capacity);
+        nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+        levels = Arrays.copyOf(levels, capacity);
+        growKeys(capacity);
+    }
+
+    int check(int node) {
+        if (node < 0 || node >= size) {
+            throw new IllegalArgumentException("node " + node + " doesn't exist");
+        }
+        return node;
+    }
+
+    /**
+     * 节点数.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 查询树的深度.
+     */
+    public int getDeep() {
+        return deep;
+    }
+
+    /**
+     * @return 父节点句柄, 根节点返回{@link #NO_NODE}
+     */
+    public int getParent(int node) {
+        return parents[check(node)];
+    }
+
+    /**
+     * @return 第一个子节点句柄, 没有子节点时返回{@link #NO_NODE}
+     */
+    public int getFirstChild(int node) {
+        return firstChildren[check(node)];
+    }
+
+    /**
+     * @return 下一个兄弟节点句柄, 没有时返回{@link #NO_NODE}
+     */
+    public int getNextSibling(int node) {
+        return nextSiblings[check(node)];
+    }
+
+    /**
+     * @return 层号, 根节点为1
+     */
+    public int getLevel(int node) {
+        return levels[check(node)];
+    }
+
+    /**
+     * 先序遍历. 沿兄弟和父节点指针移动, 不需要额外的栈.
+     *
+     * @param fromNode 初始节点句柄
+     * @param visitor 访问器
+     */
+    public void preOrderTraverse(int fromNode, HandleVisitor visitor) {
+        check(fromNode);
+        int node = fromNode;
+        while (true) {
+            visitor.visit(node);
+            if (firstChildren[node] != NO_NODE) {
+                node = firstChildren[node];
+                continue;
+            }
+            while (node != fromNode && nextSiblings[node] == NO_NODE) {
+                node = parents[node];
+            }
+            if (node == fromNode) {
+                return;
+            }
+            node = nextSiblings[node];
+        }
+    }
+
+    /**
+     * 后序遍历. 沿兄弟和父节点指针移动, 不需要额外的栈.
+     *
+     * @param fromNode 初始节点句柄
+     * @param visitor 访问器
+     */
+    public void postOrderTraverse(int fromNode, HandleVisitor visitor) {
+        check(fromNode);
+        int node = firstLeaf(fromNode);
+        while (true) {
+            visitor.visit(node);
+            if (node == fromNode) {
+                return;
+            }
+            node = nextSiblings[node] != NO_NODE ? firstLeaf(nextSiblings[node]) : parents[node];
+        }
+    }
+
+    private int firstLeaf(int node) {
+        while (firstChildren[node] != NO_NODE) {
+            node = firstChildren[node];
+        }
+        return node;
+    }
+
+    /**
+     * 层序遍历.
+     *
+     * @param fromNode 初始节点句柄
+     * @param visitor 访问器
+     */
+    public void levelTraverse(int fromNode, HandleVisitor visitor) {
+        levelTraverse(fromNode, visitor, null);
+    }
+
+    /**
+     * 层序遍历, stopVisitor不为空时每访问一个节点前检查是否停止.
+     */
+    void levelTraverse(int fromNode, HandleVisitor visitor, StopVisitor<?> stopVisitor) {
+        check(fromNode);
+        //已入队的节点依次追加在数组中
+        int[] queue = new int[DEFAULT_CAPACITY];
+        int tail = 0;
+        queue[tail++] = fromNode;
+
+        for (int head = 0; head < tail && (stopVisitor == null || !stopVisitor.stopNow()); head++) {
+            int node = queue[head];
+            visitor.visit(node);
+            for (int child = firstChildren[node]; child != NO_NODE; child = nextSiblings[child]) {
+                if (tail == queue.length) {
+                    queue = Arrays.copyOf(queue, tail * 2);
+                }
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    /**
+     * 比较与另一棵树的不同, 结果与{@link DiffAlgorithm#LEVEL}一致.
+     * <p>
+     *     规则与{@link DiffIndex}相同, 索引为按句柄编号的int数组, 比较过程中不为节点分配对象.
+     * </p>
+     *
+     * @param other 另一棵树，新树
+     * @param sink 事件接收者
+     */
+    public void diff(final S other, final HandleEventSink sink) {
+        orderLevels();
+        other.orderLevels();
+        int minDeep = Math.min(deep, other.deep);
+
+        //旧树节点 -> 新树中相同key的节点, 以及反向的对应关系
+        final int[] matches = new int[size];
+        final int[] otherMatches = new int[other.size];
+        Arrays.fill(otherMatches, NO_NODE);
+        int[] keyTable = other.keyTable();
+        for (int node = 0; node < size; node++) {
+            int match = find(keyTable, node, other);
+            matches[node] = match;
+            if (match != NO_NODE) {
+                otherMatches[match] = node;
+            }
+        }
+
+        //删除层, 0表示节点及其祖先的层号都与新树一致. 按层序计算, 父节点先于子节点
+        final int[] removedLevels = new int[size];
+        for (int i = 0; i < size; i++) {
+            int node = levelOrder[i];
+            int parent = parents[node];
+            int level = levels[node];
+            if (parent != NO_NODE && removedLevels[parent] != 0) {
+                removedLevels[node] = removedLevels[parent];
+            } else if (level <= minDeep && (matches[node] == NO_NODE || other.levels[matches[node]] != level)) {
+                removedLevels[node] = level;
+            }
+        }
+
+        //deal with levels they both have.
+        for (int deep = 1; deep <= minDeep; deep++) {
+            for (int i = other.levelStarts[deep - 1]; i < other.levelStarts[deep]; i++) {
+                int node = other.levelOrder[i];
+                int match = otherMatches[node];
+                if (match == NO_NODE) {
+                    sink.onEvent(NodeEventType.CREATE, node);
+                    continue;
+                }
+                int removedLevel = removedLevels[match];
+                if (removedLevel != 0 && removedLevel < deep) {
+                    //之前已删除, 删除事件已转换为MOVE
+                    continue;
+                }
+                if (levels[match] != deep) {
+                    boolean moved = levels[match] > minDeep && removedLevel == 0;
+                    sink.onEvent(moved ? NodeEventType.MOVE : NodeEventType.CREATE, node);
+                }
+            }
+
+            for (int i = levelStarts[deep - 1]; i < levelStarts[deep]; i++) {
+                int node = levelOrder[i];
+                if (removedLevels[node] == 0) {
+                    sink.onEvent(NodeEventType.UPDATE, node);
+                }
+            }
+
+            final int removedLevel = deep;
+            for (int i = levelStarts[deep - 1]; i < levelStarts[deep]; i++) {
+                int node = levelOrder[i];
+                if (removedLevels[node] != removedLevel) {
+                    continue;
+                }
+                postOrderTraverse(node, new HandleVisitor() {
+                    @Override
+                    public void visit(int node) {
+                        //新树中更深的层会再次出现该节点, 此时删除事件转换为MOVE
+                        int match = matches[node];
+                        if (match != NO_NODE && other.levels[match] > removedLevel) {
+                            sink.onEvent(NodeEventType.MOVE, match);
+                        } else {
+                            sink.onEvent(NodeEventType.DELETE, node);
+                        }
+                    }
+                });
+            }
+        }
+
+        if (deep > minDeep) {
+            //deal with levels only my tree have
+            for (int i = levelStarts[minDeep]; i < levelStarts[minDeep + 1]; i++) {
+                postOrderTraverse(levelOrder[i], new HandleVisitor() {
+                    @Override
+                    public void visit(int node) {
+                        if (removedLevels[node] == 0 && matches[node] == NO_NODE) {
+                            sink.onEvent(NodeEventType.DELETE, node);
+                        }
+                    }
+                });
+            }
+        } else if (other.deep > minDeep) {
+            //deal with levels only other tree have
+            for (int i = other.levelStarts[minDeep]; i < other.levelStarts[minDeep + 1]; i++) {
+                other.preOrderTraverse(other.levelOrder[i], new HandleVisitor() {
+                    @Override
+                    public void visit(int node) {
+                        if (otherMatches[node] == NO_NODE) {
+                            sink.onEvent(NodeEventType.CREATE, node);
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * 按层序重建层索引.
+     */
+    void orderLevels() {
+        if (levelOrder != null) {
+            return;
+        }
+        int[] order = new int[size];
+        int[] starts = new int[deep + 1];
+        order[0] = ROOT;
+        int tail = 1;
+        int level = 1;
+        for (int head = 0; head < size; head++) {
+            int node = order[head];
+            if (levels[node] != level) {
+                starts[level] = head;
+                level = levels[node];
+            }
+            for (int child = firstChildren[node]; child != NO_NODE; child = nextSiblings[child]) {
+                order[tail++] = child;
+            }
+        }
+        starts[deep] = size;
+        levelOrder = order;
+        levelStarts = starts;
+    }
+
+    /**
+     * 以key为索引的开放寻址哈希表, 槽中保存句柄. 槽数是节点数的2到4倍, 最多{@link #MAX_KEY_TABLE},
+     * 且必须多于节点数, 否则探测不会终止.
+     */
+    int[] keyTable() {
+        int[] table = new int[keyTableLength(size)];
+        Arrays.fill(table, NO_NODE);
+        int mask = table.length - 1;
+        for (int node = 0; node < size; node++) {
+            int slot = keyHash(node) & mask;
+            while (table[slot] != NO_NODE) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = node;
+        }
+        return table;
+    }
+
+    static int keyTableLength(int size) {
+        if (size >= MAX_KEY_TABLE) {
+            throw new IllegalStateException("too many nodes for key table: " + size + ", max " + (MAX_KEY_TABLE - 1));
+        }
+        //先转为long再移位, size不小于2^29时int移位会溢出为负数
+        return (int) Math.min(MAX_KEY_TABLE, (long) Integer.highestOneBit(size) << 2);
+    }
+
+    /**
+     * 在另一棵树的key表中查找与本树节点key相同的节点.
+     */
+    private int find(int[] table, int node, S other) {
+        int mask = table.length - 1;
+        for (int slot = keyHash(node) & mask; table[slot] != NO_NODE; slot = (slot + 1) & mask) {
+            if (sameKey(node, other, table[slot])) {
+                return table[slot];
+            }
+        }
+        return NO_NODE;
+    }
+
+    static int spread(int hash) {
+        hash *= 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder s = new StringBuilder();
+        preOrderTraverse(ROOT, new HandleVisitor() {
+            @Override
+            public void visit(int node) {
+                for (int i = 1; i < levels[node]; i++) {
+                    s.append('\t');
+                }
+                appendKey(s, node);
+                s.append('\n');
+            }
+        });
+        return s.toString();
+    }
+}
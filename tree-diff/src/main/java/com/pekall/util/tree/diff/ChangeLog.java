@@ -0,0 +1,145 @@
+package com.pekall.util.tree.diff;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * 检查点之后的结构变化日志, 见{@link MyTree#checkpoint()}.
+ * <p>
+ *     每个key只保留一条记录, 记录检查点时的状态(是否存在, 父节点, 层号)和当前的节点,
+ *     因此日志在记录时即已压缩: 新增后删除的节点不留记录, 多次移动只保留最初和最终的位置.
+ * </p>
+ * <p>
+ *     删除和移动需要在修改树之前记录, 新增在修改树之后记录.
+ * </p>
+ */
+class ChangeLog<T> {
+
+    private final Map<T, Change<T>> changes = new LinkedHashMap<>();
+
+    /**
+     * 记录新增的节点.
+     */
+    void recordAdd(Node<T> node) {
+        Change<T> change = changes.get(node.key);
+        if (change == null) {
+            changes.put(node.key, new Change<>(null, node));
+        } else {
+            //检查点时存在, 之后被删除, 又重新添加
+            change.current = node;
+        }
+    }
+
+    /**
+     * 记录将被删除的节点, 子孙节点需要分别记录.
+     */
+    void recordRemove(Node<T> node) {
+        Change<T> change = changes.get(node.key);
+        if (change == null) {
+            change = new Change<>(node, null);
+            changes.put(node.key, change);
+        } else if (change.original == null) {
+            //检查点之后新增的节点
+            changes.remove(node.key);
+        } else {
+            change.current = null;
+        }
+    }
+
+    /**
+     * 记录将被移动到其他父节点下的节点.
+     */
+    void recordMove(Node<T> node) {
+        if (!changes.containsKey(node.key)) {
+            changes.put(node.key, new Change<>(node, node));
+        }
+    }
+
+    /**
+     * 检查点之后的变化.
+     * <p>
+     *     先按当前层号从小到大输出新增和移动, 保证父节点先于子节点存在;
+     *     再按检查点时的层号从大到小输出删除, 与后序遍历一样先删除子节点.
+     *     同一层内按第一次记录的顺序. 依次执行这些事件, 检查点时的树即变为当前的树.
+     * </p>
+     *
+     * @return 节点事件, 不包含UPDATE
+     */
+    Queue<NodeEvent<T>> getEvents() {
+        List<Change<T>> upserts = new ArrayList<>();
+        List<Change<T>> deletes = new ArrayList<>();
+        for (Change<T> change : changes.values()) {
+            if (change.current == null) {
+                deletes.add(change);
+            } else if (change.original == null || change.isMoved()) {
+                upserts.add(change);
+            }
+        }
+
+        //稳定排序, 同层保持记录顺序
+        Collections.sort(upserts, new Comparator<Change<T>>() {
+            @Override
+            public int compare(Change<T> a, Change<T> b) {
+                return Integer.compare(a.current.level, b.current.level);
+            }
+        });
+        Collections.sort(deletes, new Comparator<Change<T>>() {
+            @Override
+            public int compare(Change<T> a, Change<T> b) {
+                return Integer.compare(b.originalLevel, a.originalLevel);
+            }
+        });
+
+        LinkedList<NodeEvent<T>> nodeEvents = new LinkedList<>();
+        for (Change<T> change : upserts) {
+            NodeEventType type = change.original == null ? NodeEventType.CREATE : NodeEventType.MOVE;
+            nodeEvents.add(new NodeEvent<>(type, change.current));
+        }
+        for (Change<T> change : deletes) {
+            nodeEvents.add(new NodeEvent<>(NodeEventType.DELETE, change.original));
+        }
+        return nodeEvents;
+    }
+
+    /**
+     * 记录数, 即检查点之后结构发生变化的不同key的数量.
+     */
+    int size() {
+        return changes.size();
+    }
+
+    /**
+     * 一个key的变化.
+     */
+    private static final class Change<T> {
+
+        //检查点时的节点及其位置, 检查点之后新增的节点为null
+        private final Node<T> original;
+        private final T originalParent;
+        private final int originalLevel;
+
+        //当前的节点, 已删除为null
+        private Node<T> current;
+
+        Change(Node<T> original, Node<T> current) {
+            this.original = original;
+            this.originalParent = original == null || original.parent == null ? null : original.parent.key;
+            this.originalLevel = original == null ? 0 : original.level;
+            this.current = current;
+        }
+
+        /**
+         * 父节点与检查点时不同.
+         */
+        boolean isMoved() {
+            T parent = current.parent == null ? null : current.parent.key;
+            return parent == null ? originalParent != null : !parent.equals(originalParent);
+        }
+    }
+}
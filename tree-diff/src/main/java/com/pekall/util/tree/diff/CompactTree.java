@@ -0,0 +1,464 @@
+package com.pekall.util.tree.diff;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.RandomAccess;
+import java.util.stream.Stream;
+
+/**
+ * 基于数组的紧凑树.
+ * <p>
+ *     拓扑结构见{@link ArrayTree}, key保存在单独的数组中.
+ *     每个节点约占24字节(不含key本身), 而{@link MyTree}的每个节点还需要Node对象, 子节点链表及层索引的开销.
+ *     key为int或long时使用{@link IntTree}或{@link LongTree}, 避免装箱.
+ * </p>
+ * <p>
+ *     句柄接口, 即{@link #addNode(int, Object)}, {@link #preOrderTraverse(int, HandleVisitor)},
+ *     {@link #diff(ArrayTree, HandleEventSink)}等, 不为节点分配对象.
+ *     {@link Tree}接口通过按需创建的Node视图实现, 视图创建后缓存, 用于兼容已有代码.
+ * </p>
+ * <p>
+ *     要求同一棵树内的key唯一. 非线程安全.
+ * </p>
+ */
+public class CompactTree<T> extends ArrayTree<CompactTree<T>> implements Tree<T> {
+
+    private Object[] keys;
+
+    //通过Tree接口访问时创建的Node视图
+    private Node<T>[] nodes;
+
+    public CompactTree(T rootKey) {
+        this(rootKey, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param rootKey 根节点key
+     * @param expectedSize 预计的节点数, 用于预分配数组
+     */
+    public CompactTree(T rootKey, int expectedSize) {
+        super(expectedSize);
+        if (rootKey == null) {
+            throw new IllegalArgumentException("key can't be null");
+        }
+        keys = new Object[parents.length];
+        keys[ROOT] = rootKey;
+    }
+
+    /**
+     * 添加节点.
+     *
+     * @param parent 父节点句柄
+     * @param key 节点key
+     * @return 添加的节点句柄
+     */
+    public int addNode(int parent, T key) {
+        check(parent);
+        if (key == null) {
+            throw new IllegalArgumentException("key can't be null");
+        }
+
+        int node = link(parent);
+        keys[node] = key;
+        if (nodes != null && nodes[parent] != null) {
+            //父节点没有视图时, 祖先的视图也不可能已计算子树哈希
+            SubtreeHash.invalidate(nodes[parent]);
+        }
+        return node;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T getKey(int node) {
+        return (T) keys[check(node)];
+    }
+
+    @Override
+    void growKeys(int capacity) {
+        keys = Arrays.copyOf(keys, capacity);
+        if (nodes != null) {
+            nodes = Arrays.copyOf(nodes, capacity);
+        }
+    }
+
+    @Override
+    int keyHash(int node) {
+        return spread(keys[node].hashCode());
+    }
+
+    @Override
+    boolean sameKey(int node, CompactTree<T> other, int otherNode) {
+        return keys[node].equals(other.keys[otherNode]);
+    }
+
+    @Override
+    void appendKey(StringBuilder s, int node) {
+        s.append(keys[node]);
+    }
+
+    /**
+     * 查询节点的Node视图, 视图在第一次查询时创建.
+     *
+     * @param node 节点句柄
+     * @return Node视图
+     */
+    @SuppressWarnings("unchecked")
+    public Node<T> getNode(int node) {
+        check(node);
+        if (nodes == null) {
+            nodes = (Node<T>[]) new Node[keys.length];
+        }
+        if (nodes[node] != null) {
+            return nodes[node];
+        }
+
+        //视图的parent字段指向父节点视图, 先从上到下创建尚未创建的祖先
+        int[] path = new int[DEFAULT_CAPACITY];
+        int count = 0;
+        for (int current = node; current != NO_NODE && nodes[current] == null; current = parents[current]) {
+            if (count == path.length) {
+                path = Arrays.copyOf(path, count * 2);
+            }
+            path[count++] = current;
+        }
+        for (int i = count - 1; i >= 0; i--) {
+            int current = path[i];
+            HandleNode<T> view = new HandleNode<>(this, current);
+            view.parent = parents[current] == NO_NODE ? null : nodes[parents[current]];
+            nodes[current] = view;
+        }
+        return nodes[node];
+    }
+
+    /**
+     * 查询Node视图对应的句柄.
+     *
+     * @param node 本树的Node视图
+     * @return 节点句柄
+     */
+    public int getHandle(Node<T> node) {
+        if (node instanceof HandleNode && ((HandleNode<?>) node).tree == this) {
+            return ((HandleNode<?>) node).handle;
+        }
+        throw new IllegalArgumentException("node " + node + " doesn't belong to this tree");
+    }
+
+    @Override
+    public Node<T> getRoot() {
+        return getNode(ROOT);
+    }
+
+    @Override
+    public List<Node<T>> getByLevel(int level) {
+        if (level < 1 || level > deep) {
+            return Collections.emptyList();
+        }
+        orderLevels();
+        return new LevelList<>(this, levelOrder, levelStarts[level - 1], levelStarts[level]);
+    }
+
+    @Override
+    public Iterator<List<Node<T>>> levelIterator() {
+        orderLevels();
+        final int[] order = levelOrder;
+        final int[] starts = levelStarts;
+        return new Iterator<List<Node<T>>>() {
+            private int level = 1;
+
+            @Override
+            public boolean hasNext() {
+                return level < starts.length;
+            }
+
+            @Override
+            public List<Node<T>> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                level++;
+                return new LevelList<>(CompactTree.this, order, starts[level - 2], starts[level - 1]);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public Node<T> addNode(Node<T> parent, T key) {
+        if (parent == null) {
+            throw new IllegalArgumentException("parent can't be null");
+        }
+        return getNode(addNode(getHandle(parent), key));
+    }
+
+    /**
+     * 不支持, 紧凑树的句柄按添加顺序连续编号, 只能追加节点.
+     */
+    @Override
+    public void removeNode(Node<T> node) {
+        throw new UnsupportedOperationException("compact tree is append-only");
+    }
+
+    /**
+     * 不支持, 同{@link #removeNode(Node)}.
+     */
+    @Override
+    public void removeSubtree(Node<T> node) {
+        throw new UnsupportedOperationException("compact tree is append-only");
+    }
+
+    /**
+     * 不支持, 同{@link #removeNode(Node)}.
+     */
+    @Override
+    public void moveSubtree(Node<T> node, Node<T> newParent) {
+        throw new UnsupportedOperationException("compact tree is append-only");
+    }
+
+    @Override
+    public void preOrderTraverse(Node<T> fromNode, Visitor<T> visitor) {
+        if (fromNode != null) {
+            preOrderTraverse(getHandle(fromNode), nodeVisitor(visitor));
+        }
+    }
+
+    @Override
+    public void postOrderTraverse(Node<T> fromNode, Visitor<T> visitor) {
+        if (fromNode != null) {
+            postOrderTraverse(getHandle(fromNode), nodeVisitor(visitor));
+        }
+    }
+
+    @Override
+    public void levelTraverse(Node<T> fromNode, Visitor<T> visitor) {
+        if (fromNode != null) {
+            levelTraverse(getHandle(fromNode), nodeVisitor(visitor));
+        }
+    }
+
+    @Override
+    public void levelStopTraverse(Node<T> fromNode, StopVisitor<T> visitor) {
+        if (fromNode != null) {
+            levelTraverse(getHandle(fromNode), nodeVisitor(visitor), visitor);
+        }
+    }
+
+    private HandleVisitor nodeVisitor(final Visitor<T> visitor) {
+        return new HandleVisitor() {
+            @Override
+            public void visit(int node) {
+                visitor.visit(getNode(node));
+            }
+        };
+    }
+
+    /**
+     * 视图的创建不是线程安全的, 先在当前线程创建全部视图, 各线程只读取已创建的视图.
+     */
+    @Override
+    public Stream<Node<T>> parallelStream() {
+        for (int node = 0; node < size(); node++) {
+            getNode(node);
+        }
+        return Tree.super.parallelStream();
+    }
+
+    @Override
+    public Queue<NodeEvent<T>> diff(Tree<T> other) {
+        return diff(other, DiffAlgorithm.LEVEL);
+    }
+
+    /**
+     * 使用指定算法比较与另一棵树的不同.
+     * <p>
+     *     {@link DiffAlgorithm#CHANGES_ONLY}和{@link DiffAlgorithm#ORDERED}基于Node视图比较; 其余算法的结果相同,
+     *     都由{@link #diff(Tree, NodeEventSink)}在当前线程完成.
+     * </p>
+     */
+    @Override
+    public Queue<NodeEvent<T>> diff(Tree<T> other, DiffAlgorithm algorithm) {
+        if (algorithm == DiffAlgorithm.CHANGES_ONLY) {
+            return new MerkleDiff<>(this, other).diff();
+        }
+        if (algorithm == DiffAlgorithm.ORDERED) {
+            return new OrderedDiff<>(this, other).diff();
+        }
+        final LinkedList<NodeEvent<T>> nodeEvents = new LinkedList<>();
+        diff(other, new NodeEventSink<T>() {
+            @Override
+            public void onEvent(NodeEvent<T> event) {
+                nodeEvents.add(event);
+            }
+        });
+        return nodeEvents;
+    }
+
+    /**
+     * 流式比较. 另一棵树也是紧凑树时使用{@link #diff(ArrayTree, HandleEventSink)}, 只为事件中的节点创建视图.
+     */
+    @Override
+    public void diff(Tree<T> other, final NodeEventSink<T> sink) {
+        if (!(other instanceof CompactTree)) {
+            new StreamingDiff<>(this, other).diff(sink);
+            return;
+        }
+        final CompactTree<T> compactOther = (CompactTree<T>) other;
+        diff(compactOther, new HandleEventSink() {
+            @Override
+            public void onEvent(NodeEventType eventType, int node) {
+                boolean inOther = eventType == NodeEventType.CREATE || eventType == NodeEventType.MOVE;
+                sink.onEvent(new NodeEvent<>(eventType, inOther ? compactOther.getNode(node) : getNode(node)));
+            }
+        });
+    }
+
+    /**
+     * 按标识和内容比较, 总是基于Node视图由{@link StreamingDiff}完成.
+     */
+    @Override
+    public void diff(Tree<T> other, NodeEquivalence<? super T> equivalence, NodeEventSink<T> sink) {
+        new StreamingDiff<>(this, other, equivalence).diff(sink);
+    }
+
+    /**
+     * 节点的Node视图. 子节点列表直接读取树的数组, 因此始终与树一致.
+     */
+    private static final class HandleNode<T> extends Node<T> {
+
+        private final CompactTree<T> tree;
+        private final int handle;
+
+        HandleNode(CompactTree<T> tree, int handle) {
+            super(tree.getKey(handle));
+            this.tree = tree;
+            this.handle = handle;
+            this.level = tree.levels[handle];
+            this.children = new ChildList<>(tree, handle);
+        }
+    }
+
+    /**
+     * 只读的子节点列表, 支持随机访问.
+     * <p>
+     *     子节点通过兄弟指针相连, 列表把已找到的子节点句柄按顺序保存在数组中, 下标超出已找到的部分时才沿兄弟指针继续查找.
+     *     紧凑树只能追加节点, 已找到的部分不会变化, 因此按下标遍历全部子节点的总耗时与子节点数成正比.
+     * </p>
+     */
+    private static final class ChildList<T> extends AbstractList<Node<T>> implements RandomAccess {
+
+        private static final int[] NO_HANDLES = new int[0];
+
+        private final CompactTree<T> tree;
+        private final int parent;
+
+        //已找到的子节点句柄
+        private int[] handles = NO_HANDLES;
+        private int found;
+
+        ChildList(CompactTree<T> tree, int parent) {
+            this.tree = tree;
+            this.parent = parent;
+        }
+
+        /**
+         * 沿兄弟指针继续查找, 直到找到第index个子节点或没有更多子节点.
+         */
+        private void find(int index) {
+            int child = found == 0 ? tree.firstChildren[parent] : tree.nextSiblings[handles[found - 1]];
+            for (; found <= index && child != NO_NODE; child = tree.nextSiblings[child]) {
+                if (found == handles.length) {
+                    handles = Arrays.copyOf(handles, Math.max(DEFAULT_CAPACITY, found * 2));
+                }
+                handles[found++] = child;
+            }
+        }
+
+        @Override
+        public Node<T> get(int index) {
+            if (index >= found) {
+                find(index);
+            }
+            if (index < 0 || index >= found) {
+                throw new IndexOutOfBoundsException("index: " + index);
+            }
+            return tree.getNode(handles[index]);
+        }
+
+        @Override
+        public int size() {
+            find(Integer.MAX_VALUE);
+            return found;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return tree.firstChildren[parent] == NO_NODE;
+        }
+
+        @Override
+        public Iterator<Node<T>> iterator() {
+            return new Iterator<Node<T>>() {
+                private int next = tree.firstChildren[parent];
+
+                @Override
+                public boolean hasNext() {
+                    return next != NO_NODE;
+                }
+
+                @Override
+                public Node<T> next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    Node<T> node = tree.getNode(next);
+                    next = tree.nextSiblings[next];
+                    return node;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+
+    /**
+     * 一层节点的只读视图, 对应层序遍历数组的[from, to)区间.
+     */
+    private static final class LevelList<T> extends AbstractList<Node<T>> implements RandomAccess {
+
+        private final CompactTree<T> tree;
+        private final int[] order;
+        private final int from;
+        private final int to;
+
+        LevelList(CompactTree<T> tree, int[] order, int from, int to) {
+            this.tree = tree;
+            this.order = order;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public Node<T> get(int index) {
+            if (index < 0 || index >= to - from) {
+                throw new IndexOutOfBoundsException("index: " + index);
+            }
+            return tree.getNode(order[from + index]);
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+}
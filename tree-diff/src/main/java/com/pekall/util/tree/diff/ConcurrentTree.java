@@ -0,0 +1,394 @@
+package com.pekall.util.tree.diff;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 线程安全的树, 多个线程可以同时修改和读取.
+ * <p>
+ *     修改在锁内作用于一棵可写的{@link MyTree}, 同时按key追加到修改日志, 锁内只做O(1)的工作(删除和移动另需更新子树).
+ *     读取不加锁, 作用于最近发布的不可变快照: 快照过期时, 只有一个线程在锁内取出新增的日志, 在锁外复制上一个快照并重放日志,
+ *     整理层索引, 补算失效的子树哈希后发布, 同时过期的其他读线程等待这个快照. 复制耗时与节点数成正比,
+ *     重放和补算哈希与修改数成正比. 因此读线程看到的总是某一时刻完整的树, 遍历和比较期间不阻塞写线程.
+ *     日志超过节点数时, 写线程在锁外构建快照或等待正在构建的快照, 日志长度因此受节点数限制. 锁内从不复制树.
+ * </p>
+ * <p>
+ *     {@link Tree}接口的每次读取各自取最新的快照, 需要多次读取同一棵树时先调用{@link #snapshot()}. 快照是只读的.
+ *     作为另一棵树{@link Tree#diff(Tree)}的参数时也应传入快照. 修改的参数节点按key解析, 可以来自任意快照.
+ * </p>
+ */
+public class ConcurrentTree<T> implements Tree<T> {
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    //可写的树和快照之后的修改日志, 由lock保护. journal的第一条修改的版本号为journalStart + 1
+    private final MyTree<T> tree;
+    private final List<Mutation<T>> journal = new ArrayList<>();
+    private long journalStart;
+
+    //正在构建的快照, 由lock保护. 同一时刻最多一个
+    private Build<T> building;
+
+    //已执行的修改数, 只在锁内增加
+    private volatile long version;
+
+    private final AtomicReference<Snapshot<T>> published;
+
+    public ConcurrentTree(T rootKey) {
+        tree = new MyTree<>(rootKey);
+        published = new AtomicReference<>(new Snapshot<>(freeze(tree.copy()), 0));
+    }
+
+    /**
+     * 最新的快照, 快照未过期时不加锁. 快照是只读的, 修改快照抛出UnsupportedOperationException.
+     *
+     * @return 包含此前全部修改的树
+     */
+    public Tree<T> snapshot() {
+        long wanted = version;
+        Snapshot<T> current = published.get();
+        if (current.version >= wanted) {
+            return current.tree;
+        }
+        return refresh(wanted).tree;
+    }
+
+    /**
+     * 得到版本不低于wanted的快照. 同一时刻只有一个线程构建快照, 其他线程等待它完成, 仍不够新时再构建下一个.
+     */
+    private Snapshot<T> refresh(long wanted) {
+        while (true) {
+            Build<T> build;
+            boolean owner;
+            lock.lock();
+            try {
+                Snapshot<T> current = published.get();
+                if (current.version >= wanted) {
+                    return current;
+                }
+                owner = building == null;
+                if (owner) {
+                    //日志只截断到已发布的版本, 所需的修改都在日志中
+                    building = new Build<>(current, version,
+                            new ArrayList<>(journal.subList((int) (current.version - journalStart), journal.size())));
+                }
+                build = building;
+            } finally {
+                lock.unlock();
+            }
+
+            Snapshot<T> snapshot = owner ? run(build) : build.result.join();
+            if (snapshot.version >= wanted) {
+                return snapshot;
+            }
+        }
+    }
+
+    /**
+     * 在锁外复制上一个快照并重放日志, 发布后截断日志.
+     */
+    private Snapshot<T> run(Build<T> build) {
+        Snapshot<T> snapshot;
+        try {
+            MyTree<T> copy = build.base.tree.copy();
+            for (Mutation<T> mutation : build.pending) {
+                mutation.replay(copy);
+            }
+            snapshot = new Snapshot<>(freeze(copy), build.version);
+        } catch (RuntimeException | Error e) {
+            lock.lock();
+            try {
+                building = null;
+            } finally {
+                lock.unlock();
+            }
+            build.result.completeExceptionally(e);
+            throw e;
+        }
+
+        lock.lock();
+        try {
+            published.set(snapshot);
+            journal.subList(0, (int) (snapshot.version - journalStart)).clear();
+            journalStart = snapshot.version;
+            building = null;
+        } finally {
+            lock.unlock();
+        }
+        build.result.complete(snapshot);
+        return snapshot;
+    }
+
+    /**
+     * 整理层索引并补算失效的子树哈希后标记为只读, 发布后读线程对快照的读取不再写入任何字段.
+     * 复制保留了上一个快照的哈希, 重放只使修改路径上的哈希失效.
+     */
+    private static <T> MyTree<T> freeze(MyTree<T> tree) {
+        tree.levelIterator();
+        SubtreeHash.of(tree.getRoot());
+        tree.freeze();
+        return tree;
+    }
+
+    /**
+     * 记录修改, 调用时持有锁.
+     *
+     * @return 日志已超过节点数, 调用方应在锁外调用{@link #compact()}
+     */
+    private boolean record(Mutation<T> mutation) {
+        journal.add(mutation);
+        version++;
+        return journal.size() > tree.size();
+    }
+
+    /**
+     * 长期没有读取时由写线程构建快照以截断日志, 已有快照在构建时等待它完成.
+     * 重放的代价与修改本身相当, 日志不受限制时读线程可能永远追不上写线程.
+     */
+    private void compact() {
+        refresh(published.get().version + 1);
+    }
+
+    /**
+     * 可写的树中与参数节点key相同的节点, 调用时持有锁.
+     */
+    private Node<T> resolve(Node<T> node) {
+        if (node == null) {
+            throw new IllegalArgumentException("node can't be null");
+        }
+        Node<T> resolved = tree.findByKey(node.key);
+        if (resolved == null) {
+            throw new IllegalArgumentException("node " + node.key + " doesn't exist");
+        }
+        return resolved;
+    }
+
+    @Override
+    public Node<T> getRoot() {
+        return snapshot().getRoot();
+    }
+
+    @Override
+    public int getDeep() {
+        return snapshot().getDeep();
+    }
+
+    @Override
+    public int size() {
+        return snapshot().size();
+    }
+
+    @Override
+    public List<Node<T>> getByLevel(int level) {
+        return snapshot().getByLevel(level);
+    }
+
+    @Override
+    public Iterator<List<Node<T>>> levelIterator() {
+        return snapshot().levelIterator();
+    }
+
+    /**
+     * 添加节点.
+     *
+     * @param parent 父节点, 按key解析
+     * @param key 节点key
+     * @return 只含key的节点, 不属于任何快照, 只能作为之后修改的参数按key解析. 需要读取时从快照中查找
+     */
+    @Override
+    public Node<T> addNode(Node<T> parent, T key) {
+        if (parent == null) {
+            throw new IllegalArgumentException("parent can't be null");
+        }
+        boolean journalFull;
+        lock.lock();
+        try {
+            tree.addNode(resolve(parent), key);
+            journalFull = record(new Mutation<>(NodeEventType.CREATE, key, parent.key));
+        } finally {
+            lock.unlock();
+        }
+        if (journalFull) {
+            compact();
+        }
+        return new Node<>(key);
+    }
+
+    @Override
+    public void removeNode(Node<T> node) {
+        boolean journalFull;
+        lock.lock();
+        try {
+            tree.removeNode(resolve(node));
+            journalFull = record(new Mutation<T>(NodeEventType.DELETE, node.key, null));
+        } finally {
+            lock.unlock();
+        }
+        if (journalFull) {
+            compact();
+        }
+    }
+
+    @Override
+    public void removeSubtree(Node<T> node) {
+        boolean journalFull;
+        lock.lock();
+        try {
+            tree.removeSubtree(resolve(node));
+            journalFull = record(new Mutation<T>(NodeEventType.DELETE_SUBTREE, node.key, null));
+        } finally {
+            lock.unlock();
+        }
+        if (journalFull) {
+            compact();
+        }
+    }
+
+    @Override
+    public void moveSubtree(Node<T> node, Node<T> newParent) {
+        if (newParent == null) {
+            throw new IllegalArgumentException("parent can't be null");
+        }
+        boolean journalFull;
+        lock.lock();
+        try {
+            tree.moveSubtree(resolve(node), resolve(newParent));
+            journalFull = record(new Mutation<>(NodeEventType.MOVE, node.key, newParent.key));
+        } finally {
+            lock.unlock();
+        }
+        if (journalFull) {
+            compact();
+        }
+    }
+
+    /**
+     * 遍历起始节点所在的快照.
+     */
+    @Override
+    public void preOrderTraverse(Node<T> fromNode, Visitor<T> visitor) {
+        snapshot().preOrderTraverse(fromNode, visitor);
+    }
+
+    @Override
+    public void postOrderTraverse(Node<T> fromNode, Visitor<T> visitor) {
+        snapshot().postOrderTraverse(fromNode, visitor);
+    }
+
+    @Override
+    public void levelTraverse(Node<T> fromNode, Visitor<T> visitor) {
+        snapshot().levelTraverse(fromNode, visitor);
+    }
+
+    @Override
+    public void levelStopTraverse(Node<T> fromNode, StopVisitor<T> visitor) {
+        snapshot().levelStopTraverse(fromNode, visitor);
+    }
+
+    /**
+     * 最新快照的Spliterator, 遍历期间不受写线程影响.
+     */
+    @Override
+    public Spliterator<Node<T>> spliterator() {
+        return snapshot().spliterator();
+    }
+
+    @Override
+    public Queue<NodeEvent<T>> diff(Tree<T> other) {
+        return snapshot().diff(snapshotOf(other));
+    }
+
+    @Override
+    public Queue<NodeEvent<T>> diff(Tree<T> other, DiffAlgorithm algorithm) {
+        return snapshot().diff(snapshotOf(other), algorithm);
+    }
+
+    @Override
+    public void diff(Tree<T> other, NodeEventSink<T> sink) {
+        snapshot().diff(snapshotOf(other), sink);
+    }
+
+    @Override
+    public void diff(Tree<T> other, NodeEquivalence<? super T> equivalence, NodeEventSink<T> sink) {
+        snapshot().diff(snapshotOf(other), equivalence, sink);
+    }
+
+    private static <T> Tree<T> snapshotOf(Tree<T> tree) {
+        return tree instanceof ConcurrentTree ? ((ConcurrentTree<T>) tree).snapshot() : tree;
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    /**
+     * 已发布的快照及其包含的修改数.
+     */
+    private static final class Snapshot<T> {
+
+        private final MyTree<T> tree;
+        private final long version;
+
+        Snapshot(MyTree<T> tree, long version) {
+            this.tree = tree;
+            this.version = version;
+        }
+    }
+
+    /**
+     * 正在构建的快照: 在base上重放pending得到version. 构建的线程完成result, 其他线程等待result.
+     */
+    private static final class Build<T> {
+
+        private final Snapshot<T> base;
+        private final long version;
+        private final List<Mutation<T>> pending;
+        private final CompletableFuture<Snapshot<T>> result = new CompletableFuture<>();
+
+        Build(Snapshot<T> base, long version, List<Mutation<T>> pending) {
+            this.base = base;
+            this.version = version;
+            this.pending = pending;
+        }
+    }
+
+    /**
+     * 按key记录的一次修改, 不引用可写的树中的节点.
+     */
+    private static final class Mutation<T> {
+
+        private final NodeEventType type;
+        private final T key;
+        private final T parent;
+
+        Mutation(NodeEventType type, T key, T parent) {
+            this.type = type;
+            this.key = key;
+            this.parent = parent;
+        }
+
+        void replay(MyTree<T> tree) {
+            switch (type) {
+                case CREATE:
+                    tree.addNode(tree.findByKey(parent), key);
+                    break;
+                case DELETE:
+                    tree.removeNode(tree.findByKey(key));
+                    break;
+                case DELETE_SUBTREE:
+                    tree.removeSubtree(tree.findByKey(key));
+                    break;
+                case MOVE:
+                default:
+                    tree.moveSubtree(tree.findByKey(key), tree.findByKey(parent));
+            }
+        }
+    }
+}
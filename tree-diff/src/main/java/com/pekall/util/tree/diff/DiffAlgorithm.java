@@ -0,0 +1,37 @@
+package com.pekall.util.tree.diff;
+
+/**
+ * 比较算法. 各算法都按key的equals和hashCode匹配节点, 不支持{@link NodeEquivalence}.
+ */
+public enum DiffAlgorithm {
+
+    /**
+     * 逐层比较, 即{@link MyTree#diff(Tree)}的原始实现.
+     */
+    LEVEL,
+
+    /**
+     * 基于key索引的单遍比较, 结果与{@link #LEVEL}一致, 时间复杂度O(n).
+     */
+    HASH,
+
+    /**
+     * 基于ForkJoinPool的并行比较, 结果与{@link #LEVEL}一致. 见{@link ParallelDiff}.
+     */
+    PARALLEL,
+
+    /**
+     * 两棵树的节点总数达到{@link ParallelDiff#PARALLEL_THRESHOLD}时使用{@link #PARALLEL}, 否则使用{@link #HASH}.
+     */
+    AUTO,
+
+    /**
+     * 只输出变化: 利用子树哈希跳过两棵树中未变化的子树, 不为其中的节点生成UPDATE事件. 其他事件与{@link #LEVEL}一致.
+     */
+    CHANGES_ONLY,
+
+    /**
+     * 考虑子节点顺序: 在{@link #HASH}的结果之后追加{@link NodeEventType#REORDER}事件. 见{@link OrderedDiff}.
+     */
+    ORDERED
+}
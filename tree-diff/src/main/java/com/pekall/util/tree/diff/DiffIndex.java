@@ -0,0 +1,219 @@
+package com.pekall.util.tree.diff;
+
+import java.util.Map;
+
+/**
+ * 逐层比较所需的索引, 以及由索引直接确定最终事件的规则.
+ * <p>
+ *     逐层比较中, 一个旧树节点是否已删除只取决于它和祖先中第一个层号与新树不一致的节点, 该节点所在层称为删除层.
+ *     建立两棵树的 key -> 层号 索引和旧树节点的删除层后, 每一层的新增, 更新, 删除事件,
+ *     以及它们是否会在之后被转换为MOVE, 都可以在生成时确定, 不需要保留待转换的事件.
+ *     结果与{@link DiffAlgorithm#LEVEL}一致.
+ * </p>
+ * <p>
+ *     节点按{@link NodeEquivalence}的标识匹配, 索引以标识为key. 要求同一棵树内的标识唯一.
+ *     以key为标识时, {@link MyTree}直接使用其维护的key索引和节点的层号, 不另建层索引, 同{@link HashDiff}.
+ *     索引的线程安全性由传入的Map决定.
+ * </p>
+ */
+class DiffIndex<T> {
+
+    private final Tree<T> myTree;
+    private final Tree<T> otherTree;
+    private final int minDeep;
+    private final NodeEquivalence<? super T> equivalence;
+
+    private final Map<Object, Integer> myLevelIndex;
+    private final Map<Object, Integer> otherLevelIndex;
+    private final Map<Object, Node<T>> otherNodeIndex;
+
+    //MyTree的key索引, 代替上面的索引; 不能使用时为null
+    private final Map<T, Node<T>> myKeyIndex;
+    private final Map<T, Node<T>> otherKeyIndex;
+
+    //标识 -> 删除层. 节点及其祖先的层号都与新树一致时不在其中.
+    private final Map<Object, Integer> removedLevels;
+
+    DiffIndex(Tree<T> myTree, Tree<T> otherTree, int minDeep, NodeEquivalence<? super T> equivalence,
+              Map<Object, Integer> myLevelIndex, Map<Object, Integer> otherLevelIndex,
+              Map<Object, Node<T>> otherNodeIndex, Map<Object, Integer> removedLevels) {
+        this.myTree = myTree;
+        this.otherTree = otherTree;
+        this.minDeep = minDeep;
+        this.equivalence = equivalence;
+        this.myLevelIndex = myLevelIndex;
+        this.otherLevelIndex = otherLevelIndex;
+        this.otherNodeIndex = otherNodeIndex;
+        this.removedLevels = removedLevels;
+        this.myKeyIndex = keyIndex(myTree, equivalence);
+        this.otherKeyIndex = keyIndex(otherTree, equivalence);
+    }
+
+    private static <T> Map<T, Node<T>> keyIndex(Tree<T> tree, NodeEquivalence<? super T> equivalence) {
+        return tree instanceof MyTree && equivalence == NodeEquivalence.KEY ? ((MyTree<T>) tree).keyIndex() : null;
+    }
+
+    /**
+     * 是否需要通过{@link #indexMy(Node, Integer)}建立旧树的层索引.
+     */
+    boolean indexesMy() {
+        return myKeyIndex == null;
+    }
+
+    /**
+     * 是否需要通过{@link #indexOther(Node, Integer)}建立新树的层索引.
+     */
+    boolean indexesOther() {
+        return otherKeyIndex == null;
+    }
+
+    /**
+     * @return 旧树中该标识的节点的层号, 不存在时为0
+     */
+    private int myLevel(Object id) {
+        if (myKeyIndex != null) {
+            Node<T> node = myKeyIndex.get(id);
+            return node == null ? 0 : node.level;
+        }
+        Integer level = myLevelIndex.get(id);
+        return level == null ? 0 : level;
+    }
+
+    /**
+     * @return 新树中该标识的节点的层号, 不存在时为0
+     */
+    private int otherLevel(Object id) {
+        if (otherKeyIndex != null) {
+            Node<T> node = otherKeyIndex.get(id);
+            return node == null ? 0 : node.level;
+        }
+        Integer level = otherLevelIndex.get(id);
+        return level == null ? 0 : level;
+    }
+
+    private Node<T> otherNode(Object id) {
+        return otherKeyIndex != null ? otherKeyIndex.get(id) : otherNodeIndex.get(id);
+    }
+
+    private Object id(Node<T> node) {
+        return equivalence.identity(node.key);
+    }
+
+    void indexMy(Node<T> node, Integer level) {
+        if (myKeyIndex != null) {
+            return;
+        }
+        myLevelIndex.put(id(node), level);
+    }
+
+    void indexOther(Node<T> node, Integer level) {
+        if (otherKeyIndex != null) {
+            return;
+        }
+        Object id = id(node);
+        otherLevelIndex.put(id, level);
+        otherNodeIndex.put(id, node);
+    }
+
+    /**
+     * 计算旧树节点的删除层. 需要在两棵树的层索引建立后, 按层从上到下调用.
+     */
+    void indexRemoved(Node<T> node, Integer level) {
+        Integer parentRemoved = node.parent == null ? null : removedLevels.get(id(node.parent));
+        if (parentRemoved != null) {
+            removedLevels.put(id(node), parentRemoved);
+        } else if (level <= minDeep && level != otherLevel(id(node))) {
+            removedLevels.put(id(node), level);
+        }
+    }
+
+    /**
+     * 共有层中新树节点的新增事件.
+     */
+    void create(Node<T> node, int deep, NodeEventSink<T> sink) {
+        Object id = id(node);
+        int myLevel = myLevel(id);
+        if (myLevel == 0) {
+            sink.onEvent(new NodeEvent<>(NodeEventType.CREATE, node));
+            return;
+        }
+
+        Integer removedLevel = removedLevels.get(id);
+        if (removedLevel != null && removedLevel < deep) {
+            //之前已删除, 删除事件已转换为MOVE
+            return;
+        }
+        if (myLevel != deep) {
+            //旧树中该节点只在更深的层, 且不会被删除, 之后删除时新增事件转换为MOVE
+            boolean moved = myLevel > minDeep && removedLevel == null;
+            sink.onEvent(new NodeEvent<>(moved ? NodeEventType.MOVE : NodeEventType.CREATE, node));
+        }
+    }
+
+    /**
+     * 共有层中旧树节点的更新事件, 内容未变化时不产生.
+     */
+    void update(Node<T> node, NodeEventSink<T> sink) {
+        Object id = id(node);
+        if (!removedLevels.containsKey(id) && !sameContent(node, otherNode(id))) {
+            sink.onEvent(new NodeEvent<>(NodeEventType.UPDATE, node));
+        }
+    }
+
+    private boolean sameContent(Node<T> node, Node<T> otherNode) {
+        return equivalence.contentHash(node.key) == equivalence.contentHash(otherNode.key)
+                && equivalence.sameContent(node.key, otherNode.key);
+    }
+
+    /**
+     * 共有层中旧树节点的删除事件, 按后序遍历删除整棵子树.
+     */
+    void delete(Node<T> node, final int deep, final NodeEventSink<T> sink) {
+        if (!Integer.valueOf(deep).equals(removedLevels.get(id(node)))) {
+            return;
+        }
+        myTree.postOrderTraverse(node, new Visitor<T>() {
+            @Override
+            public void visit(Node<T> node) {
+                //新树中更深的层会再次出现该节点, 此时删除事件转换为MOVE
+                Object id = id(node);
+                if (otherLevel(id) > deep) {
+                    sink.onEvent(new NodeEvent<>(NodeEventType.MOVE, otherNode(id)));
+                } else {
+                    sink.onEvent(new NodeEvent<>(NodeEventType.DELETE, node));
+                }
+            }
+        });
+    }
+
+    /**
+     * 旧树较深时, 共有层+1层的旧树节点.
+     */
+    void onlyMy(Node<T> node, final NodeEventSink<T> sink) {
+        myTree.postOrderTraverse(node, new Visitor<T>() {
+            @Override
+            public void visit(Node<T> node) {
+                //已删除的节点跳过; 新树中存在的节点, 其新增事件已转换为MOVE
+                Object id = id(node);
+                if (!removedLevels.containsKey(id) && otherLevel(id) == 0) {
+                    sink.onEvent(new NodeEvent<>(NodeEventType.DELETE, node));
+                }
+            }
+        });
+    }
+
+    /**
+     * 新树较深时, 共有层+1层的新树节点.
+     */
+    void onlyOther(Node<T> node, final NodeEventSink<T> sink) {
+        otherTree.preOrderTraverse(node, new Visitor<T>() {
+            @Override
+            public void visit(Node<T> node) {
+                //旧树中存在的节点都已删除, 其删除事件已转换为MOVE
+                if (myLevel(id(node)) == 0) {
+                    sink.onEvent(new NodeEvent<>(NodeEventType.CREATE, node));
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,137 @@
+package com.pekall.util.tree.diff;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * 合并整棵子树的新增和删除事件.
+ * <p>
+ *     旧树中一个节点及其全部子孙都被删除时, 它们的DELETE事件合并为该节点的一个{@link NodeEventType#DELETE_SUBTREE}事件;
+ *     新树中一个节点及其全部子孙都是新增的时, 它们的CREATE事件合并为该节点的一个{@link NodeEventType#CREATE_SUBTREE}事件.
+ *     子树中只要有一个节点是移动的(MOVE), 就不合并, 逐个保留事件, 因此合并后的事件与原事件效果相同.
+ * </p>
+ * <p>
+ *     合并的事件位于子树根节点原来的位置. 子孙节点不复制, 需要时通过事件节点的children按需访问,
+ *     或用{@link #expand(NodeEvent, Visitor)}逐个访问.
+ * </p>
+ */
+public final class EventCoalescer {
+
+    private EventCoalescer() {
+    }
+
+    /**
+     * 合并事件, 耗时与事件数成线性关系.
+     *
+     * @param nodeEvents 比较得到的事件, 不会被修改
+     * @return 合并后的事件
+     */
+    public static <T> Queue<NodeEvent<T>> coalesce(Queue<NodeEvent<T>> nodeEvents) {
+        List<NodeEvent<T>> events = new ArrayList<>(nodeEvents);
+
+        //整棵子树都删除的节点. 删除按后序产生, 子节点的事件在父节点之前
+        Set<T> deletedSubtrees = new HashSet<>();
+        for (NodeEvent<T> event : events) {
+            if (event.getEventType() == NodeEventType.DELETE && allIn(event.getNode(), deletedSubtrees)) {
+                deletedSubtrees.add(event.getNode().key);
+            }
+        }
+
+        //整棵子树都新增的节点. 新增按先序或层序产生, 倒序处理使子节点先于父节点
+        Set<T> createdSubtrees = new HashSet<>();
+        for (int i = events.size() - 1; i >= 0; i--) {
+            NodeEvent<T> event = events.get(i);
+            if (event.getEventType() == NodeEventType.CREATE && allIn(event.getNode(), createdSubtrees)) {
+                createdSubtrees.add(event.getNode().key);
+            }
+        }
+
+        LinkedList<NodeEvent<T>> coalesced = new LinkedList<>();
+        for (NodeEvent<T> event : events) {
+            NodeEvent<T> result = event;
+            if (event.getEventType() == NodeEventType.DELETE) {
+                result = coalesce(event, deletedSubtrees, NodeEventType.DELETE_SUBTREE);
+            } else if (event.getEventType() == NodeEventType.CREATE) {
+                result = coalesce(event, createdSubtrees, NodeEventType.CREATE_SUBTREE);
+            }
+            if (result != null) {
+                coalesced.add(result);
+            }
+        }
+        return coalesced;
+    }
+
+    /**
+     * 合并后的事件, 父节点的子树事件已包含该节点时为null.
+     */
+    private static <T> NodeEvent<T> coalesce(NodeEvent<T> event, Set<T> subtrees, NodeEventType subtreeType) {
+        Node<T> node = event.getNode();
+        if (node.parent != null && subtrees.contains(node.parent.key)) {
+            return null;
+        }
+        if (node.hasChildren() && subtrees.contains(node.key)) {
+            return new NodeEvent<>(subtreeType, node);
+        }
+        return event;
+    }
+
+    private static <T> boolean allIn(Node<T> node, Set<T> keys) {
+        if (node.children != null) {
+            for (int i = 0; i < node.children.size(); i++) {
+                if (!keys.contains(node.children.get(i).key)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 逐个访问事件包含的节点: {@link NodeEventType#DELETE_SUBTREE}按后序, 子节点先于父节点;
+     * {@link NodeEventType#CREATE_SUBTREE}按先序, 父节点先于子节点. 其他事件只访问事件节点.
+     *
+     * @param event 事件
+     * @param visitor 访问者
+     */
+    public static <T> void expand(NodeEvent<T> event, Visitor<T> visitor) {
+        Node<T> root = event.getNode();
+        if (event.getEventType() == NodeEventType.CREATE_SUBTREE) {
+            Deque<Node<T>> stack = new ArrayDeque<>();
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                Node<T> node = stack.pop();
+                visitor.visit(node);
+                if (node.children != null) {
+                    for (int i = node.children.size() - 1; i >= 0; i--) {
+                        stack.push(node.children.get(i));
+                    }
+                }
+            }
+        } else if (event.getEventType() == NodeEventType.DELETE_SUBTREE) {
+            //逆先序(先右子节点)的倒序即后序
+            Deque<Node<T>> stack = new ArrayDeque<>();
+            Deque<Node<T>> reversed = new ArrayDeque<>();
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                Node<T> node = stack.pop();
+                reversed.push(node);
+                if (node.children != null) {
+                    for (int i = 0; i < node.children.size(); i++) {
+                        stack.push(node.children.get(i));
+                    }
+                }
+            }
+            while (!reversed.isEmpty()) {
+                visitor.visit(reversed.pop());
+            }
+        } else {
+            visitor.visit(root);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.pekall.util.tree.diff;
+
+/**
+ * {@link CompactTree}比较结果的接收者, 节点以句柄表示.
+ */
+public interface HandleEventSink {
+
+    /**
+     * 接收一个事件. 事件的含义和顺序与{@link NodeEventSink}一致.
+     *
+     * @param eventType 事件类型
+     * @param node 节点句柄. CREATE和MOVE为新树中的节点, UPDATE和DELETE为旧树中的节点
+     */
+    void onEvent(NodeEventType eventType, int node);
+}
@@ -0,0 +1,9 @@
+package com.pekall.util.tree.diff;
+
+/**
+ * {@link CompactTree}的节点访问器, 节点以句柄表示.
+ */
+public interface HandleVisitor {
+
+    void visit(int node);
+}
@@ -0,0 +1,172 @@
+package com.pekall.util.tree.diff;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * 基于key索引的树比较.
+ * <p>
+ *     通过两棵树的层索引建立 key -> 层号 的索引, 之后按{@link Tree#diff(Tree)}描述的规则逐层生成事件.
+ *     层内的集合运算和事件的查找都通过索引完成, 整体时间复杂度为O(n). {@link MyTree}直接使用其维护的key索引.
+ * </p>
+ * <p>
+ *     要求同一棵树内的key唯一.
+ * </p>
+ */
+class HashDiff<T> {
+
+    private final Tree<T> myTree;
+    private final Tree<T> otherTree;
+
+    //节点事件队列, 按节点和事件类型索引
+    private final NodeEventJournal<T> nodeEvents = new NodeEventJournal<>();
+
+    //已删除和已新增节点的key
+    private final Set<T> removedKeys = new HashSet<>();
+    private final Set<T> createdKeys = new HashSet<>();
+
+    HashDiff(Tree<T> myTree, Tree<T> otherTree) {
+        this.myTree = myTree;
+        this.otherTree = otherTree;
+    }
+
+    Queue<NodeEvent<T>> diff() {
+        LevelIndex<T> myLevelIndex = levelIndex(myTree);
+        LevelIndex<T> otherLevelIndex = levelIndex(otherTree);
+
+        int myDeep = myTree.getDeep();
+        int otherDeep = otherTree.getDeep();
+        int minDeep = Math.min(myDeep, otherDeep);
+
+        Iterator<List<Node<T>>> myLevels = myTree.levelIterator();
+        Iterator<List<Node<T>>> otherLevels = otherTree.levelIterator();
+
+        //deal with levels they both have.
+        for (int deep = 1; deep <= minDeep; deep++) {
+            List<Node<T>> myNodes = myLevels.next();
+            List<Node<T>> otherNodes = otherLevels.next();
+
+            for (Node<T> node : otherNodes) {
+                if (myLevelIndex.level(node.key) != deep || removedKeys.contains(node.key)) {
+                    processCreateNode(node);
+                    createdKeys.add(node.key);
+                }
+            }
+
+            List<Node<T>> deleteNodes = new ArrayList<>();
+            for (Node<T> node : myNodes) {
+                if (removedKeys.contains(node.key)) {
+                    continue;
+                }
+                if (otherLevelIndex.level(node.key) == deep) {
+                    nodeEvents.add(NodeEventType.UPDATE, node);
+                } else {
+                    deleteNodes.add(node);
+                }
+            }
+
+            for (Node<T> node : deleteNodes) {
+                myTree.postOrderTraverse(node, new Visitor<T>() {
+                    @Override
+                    public void visit(Node<T> node) {
+                        nodeEvents.add(NodeEventType.DELETE, node);
+                        removedKeys.add(node.key);
+                    }
+                });
+            }
+        }
+
+        if (myDeep > otherDeep) {
+            //deal with levels only my tree have
+            for (Node<T> node : myLevels.next()) {
+                myTree.postOrderTraverse(node, new Visitor<T>() {
+                    @Override
+                    public void visit(Node<T> node) {
+                        if (removedKeys.contains(node.key)) {
+                            return;
+                        }
+                        if (createdKeys.contains(node.key)) {
+                            //现在要删除，说明之前是一个move
+                            NodeEvent<T> preCreated = nodeEvents.find(NodeEventType.CREATE, node);
+                            if (preCreated != null) {
+                                nodeEvents.changeType(preCreated, NodeEventType.MOVE);
+                            }
+                        } else {
+                            nodeEvents.add(NodeEventType.DELETE, node);
+                        }
+                    }
+                });
+            }
+        } else if (otherDeep > myDeep) {
+            //deal with levels only other tree have
+            for (Node<T> node : otherLevels.next()) {
+                otherTree.preOrderTraverse(node, new Visitor<T>() {
+                    @Override
+                    public void visit(Node<T> node) {
+                        processCreateNode(node);
+                    }
+                });
+            }
+        }
+
+        return nodeEvents.getEvents();
+    }
+
+    private void processCreateNode(Node<T> node) {
+        if (removedKeys.contains(node.key)) {
+            NodeEvent<T> preDeleted = nodeEvents.find(NodeEventType.DELETE, node);
+            if (preDeleted != null) {
+                nodeEvents.changeType(preDeleted, NodeEventType.MOVE);
+                preDeleted.setNode(node);
+            }
+        } else {
+            nodeEvents.add(NodeEventType.CREATE, node);
+        }
+    }
+
+    private static <T> LevelIndex<T> levelIndex(Tree<T> tree) {
+        if (tree instanceof MyTree) {
+            final Map<T, Node<T>> keyIndex = ((MyTree<T>) tree).keyIndex();
+            return new LevelIndex<T>() {
+                @Override
+                int level(T key) {
+                    Node<T> node = keyIndex.get(key);
+                    return node == null ? 0 : node.level;
+                }
+            };
+        }
+
+        final Map<T, Integer> index = new HashMap<>();
+        Iterator<List<Node<T>>> levels = tree.levelIterator();
+        for (int level = 1; levels.hasNext(); level++) {
+            Integer boxedLevel = level;
+            for (Node<T> node : levels.next()) {
+                index.put(node.key, boxedLevel);
+            }
+        }
+        return new LevelIndex<T>() {
+            @Override
+            int level(T key) {
+                Integer level = index.get(key);
+                return level == null ? 0 : level;
+            }
+        };
+    }
+
+    /**
+     * key -> 层号.
+     */
+    private abstract static class LevelIndex<T> {
+
+        /**
+         * @return 层号, 不存在时为0
+         */
+        abstract int level(T key);
+    }
+}
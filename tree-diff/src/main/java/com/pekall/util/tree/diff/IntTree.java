@@ -0,0 +1,68 @@
+package com.pekall.util.tree.diff;
+
+import java.util.Arrays;
+
+/**
+ * key为int的紧凑树, 结构与{@link CompactTree}相同, key保存在int数组中, 不装箱.
+ * <p>
+ *     只提供句柄接口. 比较时key表为开放寻址的句柄数组, 直接比较int值, 不分配key对象和Node对象.
+ * </p>
+ * <p>
+ *     要求同一棵树内的key唯一. 非线程安全.
+ * </p>
+ */
+public class IntTree extends ArrayTree<IntTree> {
+
+    private int[] keys;
+
+    public IntTree(int rootKey) {
+        this(rootKey, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param rootKey 根节点key
+     * @param expectedSize 预计的节点数, 用于预分配数组
+     */
+    public IntTree(int rootKey, int expectedSize) {
+        super(expectedSize);
+        keys = new int[parents.length];
+        keys[ROOT] = rootKey;
+    }
+
+    /**
+     * 添加节点.
+     *
+     * @param parent 父节点句柄
+     * @param key 节点key
+     * @return 添加的节点句柄
+     */
+    public int addNode(int parent, int key) {
+        int node = link(parent);
+        keys[node] = key;
+        return node;
+    }
+
+    public int getKey(int node) {
+        return keys[check(node)];
+    }
+
+    @Override
+    void growKeys(int capacity) {
+        keys = Arrays.copyOf(keys, capacity);
+    }
+
+    @Override
+    int keyHash(int node) {
+        return spread(keys[node]);
+    }
+
+    @Override
+    boolean sameKey(int node, IntTree other, int otherNode) {
+        return keys[node] == other.keys[otherNode];
+    }
+
+    @Override
+    void appendKey(StringBuilder s, int node) {
+        s.append(keys[node]);
+    }
+}
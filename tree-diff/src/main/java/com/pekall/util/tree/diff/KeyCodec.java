@@ -0,0 +1,73 @@
+package com.pekall.util.tree.diff;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * 快照中key的编码方式, 见{@link TreeSnapshot}.
+ */
+public interface KeyCodec<T> {
+
+    /**
+     * 将key编码为字节.
+     *
+     * @param key 节点key
+     * @return 编码后的字节
+     */
+    byte[] encode(T key);
+
+    /**
+     * 从缓冲区的指定位置解码key. 只能使用绝对位置读取, 不能修改缓冲区的position.
+     *
+     * @param buffer 快照映射的缓冲区
+     * @param offset key的起始位置
+     * @param length key的字节数
+     * @return 节点key
+     */
+    T decode(ByteBuffer buffer, int offset, int length);
+
+    KeyCodec<Integer> INTEGER = new KeyCodec<Integer>() {
+        @Override
+        public byte[] encode(Integer key) {
+            return ByteBuffer.allocate(4).putInt(key).array();
+        }
+
+        @Override
+        public Integer decode(ByteBuffer buffer, int offset, int length) {
+            return buffer.getInt(offset);
+        }
+    };
+
+    KeyCodec<Long> LONG = new KeyCodec<Long>() {
+        @Override
+        public byte[] encode(Long key) {
+            return ByteBuffer.allocate(8).putLong(key).array();
+        }
+
+        @Override
+        public Long decode(ByteBuffer buffer, int offset, int length) {
+            return buffer.getLong(offset);
+        }
+    };
+
+    /**
+     * UTF-8编码的字符串.
+     */
+    KeyCodec<String> STRING = new KeyCodec<String>() {
+        private final Charset utf8 = Charset.forName("UTF-8");
+
+        @Override
+        public byte[] encode(String key) {
+            return key.getBytes(utf8);
+        }
+
+        @Override
+        public String decode(ByteBuffer buffer, int offset, int length) {
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = buffer.get(offset + i);
+            }
+            return new String(bytes, utf8);
+        }
+    };
+}
@@ -0,0 +1,174 @@
+package com.pekall.util.tree.diff;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * 只输出变化的树比较, 利用子树哈希跳过未变化的子树.
+ * <p>
+ *     从两个根节点开始, 父节点已配对时, 子节点按key与对方父节点的子节点配对.
+ *     配对的两个节点子树哈希相同时, 再逐个比较两棵子树的key确认未变化(哈希只由key的hashCode()计算, 可能碰撞).
+ *     未变化的子树中的节点在逐层比较中只会产生UPDATE事件, 也不会被其他节点的事件引用, 因此直接跳过, 不建立索引.
+ *     其余节点按{@link DiffIndex}的规则生成事件.
+ * </p>
+ * <p>
+ *     结果等于{@link DiffAlgorithm#LEVEL}的结果去掉未变化子树中节点的UPDATE事件, 其他事件及顺序不变.
+ *     建立索引和生成事件的代价与变化的节点数(及其兄弟节点数)成正比; 确认未变化的子树需要遍历一次, 只比较key.
+ *     {@link PersistentTree}的两个版本共享的子树直接按引用判定为未变化.
+ * </p>
+ */
+class MerkleDiff<T> {
+
+    private final Tree<T> myTree;
+    private final Tree<T> otherTree;
+
+    //已配对, 但子树有变化的节点: 旧树节点 -> 新树节点
+    private final Map<Node<T>, Node<T>> partners = new IdentityHashMap<>();
+
+    //新树中未变化子树的根节点
+    private final Set<Node<T>> unchangedOthers = Collections.newSetFromMap(new IdentityHashMap<Node<T>, Boolean>());
+
+    MerkleDiff(Tree<T> myTree, Tree<T> otherTree) {
+        this.myTree = myTree;
+        this.otherTree = otherTree;
+    }
+
+    Queue<NodeEvent<T>> diff() {
+        final LinkedList<NodeEvent<T>> nodeEvents = new LinkedList<>();
+        NodeEventSink<T> sink = new NodeEventSink<T>() {
+            @Override
+            public void onEvent(NodeEvent<T> event) {
+                nodeEvents.add(event);
+            }
+        };
+
+        Node<T> myRoot = myTree.getRoot();
+        Node<T> otherRoot = otherTree.getRoot();
+        if (myRoot.key.equals(otherRoot.key)) {
+            partners.put(myRoot, otherRoot);
+        }
+
+        List<List<Node<T>>> myLevels = changedLevels(myRoot, true);
+        List<List<Node<T>>> otherLevels = changedLevels(otherRoot, false);
+
+        int myDeep = myTree.getDeep();
+        int otherDeep = otherTree.getDeep();
+        int minDeep = Math.min(myDeep, otherDeep);
+
+        DiffIndex<T> index = new DiffIndex<>(myTree, otherTree, minDeep, NodeEquivalence.KEY,
+                new HashMap<Object, Integer>(), new HashMap<Object, Integer>(), new HashMap<Object, Node<T>>(),
+                new HashMap<Object, Integer>());
+        for (int deep = 1; deep <= myLevels.size(); deep++) {
+            for (Node<T> node : myLevels.get(deep - 1)) {
+                index.indexMy(node, deep);
+            }
+        }
+        for (int deep = 1; deep <= otherLevels.size(); deep++) {
+            for (Node<T> node : otherLevels.get(deep - 1)) {
+                index.indexOther(node, deep);
+            }
+        }
+        for (int deep = 1; deep <= myLevels.size(); deep++) {
+            for (Node<T> node : myLevels.get(deep - 1)) {
+                index.indexRemoved(node, deep);
+            }
+        }
+
+        //deal with levels they both have.
+        for (int deep = 1; deep <= minDeep; deep++) {
+            for (Node<T> node : level(otherLevels, deep)) {
+                index.create(node, deep, sink);
+            }
+            List<Node<T>> myNodes = level(myLevels, deep);
+            for (Node<T> node : myNodes) {
+                index.update(node, sink);
+            }
+            for (Node<T> node : myNodes) {
+                index.delete(node, deep, sink);
+            }
+        }
+
+        //共有层+1层的节点在另一棵树中没有同层节点, 不会被配对, 因此都在变化的节点中
+        if (myDeep > minDeep) {
+            for (Node<T> node : level(myLevels, minDeep + 1)) {
+                index.onlyMy(node, sink);
+            }
+        } else if (otherDeep > minDeep) {
+            for (Node<T> node : level(otherLevels, minDeep + 1)) {
+                index.onlyOther(node, sink);
+            }
+        }
+
+        return nodeEvents;
+    }
+
+    private static <T> List<Node<T>> level(List<List<Node<T>>> levels, int deep) {
+        return deep <= levels.size() ? levels.get(deep - 1) : Collections.<Node<T>>emptyList();
+    }
+
+    /**
+     * 层序遍历, 不进入未变化的子树, 得到各层变化的节点. 相对顺序与完整的层序遍历一致.
+     * <p>
+     *     遍历旧树时完成配对, 因此旧树必须先于新树遍历.
+     * </p>
+     */
+    private List<List<Node<T>>> changedLevels(Node<T> root, boolean mine) {
+        List<List<Node<T>>> levels = new ArrayList<>();
+        List<Node<T>> current = Collections.singletonList(root);
+        while (!current.isEmpty()) {
+            List<Node<T>> changed = new ArrayList<>();
+            List<Node<T>> next = new ArrayList<>();
+            for (Node<T> node : current) {
+                if (mine ? isUnchanged(node) : unchangedOthers.contains(node)) {
+                    continue;
+                }
+                changed.add(node);
+                if (node.children != null) {
+                    if (mine) {
+                        pairChildren(node);
+                    }
+                    next.addAll(node.children);
+                }
+            }
+            if (!changed.isEmpty()) {
+                levels.add(changed);
+            }
+            current = next;
+        }
+        return levels;
+    }
+
+    private boolean isUnchanged(Node<T> node) {
+        Node<T> partner = partners.get(node);
+        if (partner != null && SubtreeHash.equal(node, partner)) {
+            partners.remove(node);
+            unchangedOthers.add(partner);
+            return true;
+        }
+        return false;
+    }
+
+    private void pairChildren(Node<T> node) {
+        Node<T> partner = partners.get(node);
+        if (partner == null || partner.children == null) {
+            return;
+        }
+        Map<T, Node<T>> partnerChildren = new HashMap<>();
+        for (Node<T> child : partner.children) {
+            partnerChildren.put(child.key, child);
+        }
+        for (Node<T> child : node.children) {
+            Node<T> childPartner = partnerChildren.get(child.key);
+            if (childPartner != null) {
+                partners.put(child, childPartner);
+            }
+        }
+    }
+}
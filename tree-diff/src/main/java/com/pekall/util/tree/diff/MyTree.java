@@ -3,16 +3,42 @@ package com.pekall.util.tree.diff;
 import org.apache.commons.lang3.StringUtils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
 
 public class MyTree<T> implements Tree<T>{
     private Node<T> root;
 
+    //层索引, levels.get(i)为第i+1层的节点, 随addNode增量维护, 删除和移动节点后在读取时重排. 层数即树的深度.
+    private final List<List<Node<T>>> levels = new ArrayList<>();
+
+    //前orderedLevels层的节点顺序与层序遍历一致, 更深的层在读取时重排
+    private int orderedLevels;
+
+    //各层的节点数. 删除和移动节点后, 未重排的层中可能残留已离开该层的节点, 节点数以此为准
+    private int[] levelSizes = new int[16];
+
+    //层索引中残留的已删除节点数, 超过树的节点数时重排全部层
+    private int staleNodes;
+
+    //检查点之后的变化日志, 未开启跟踪时为null
+    private ChangeLog<T> changeLog;
+
+    //key -> 节点, 随节点的添加和删除维护
+    private final Map<T, Node<T>> keyIndex;
+
+    //只读的树拒绝一切修改, 用于{@link ConcurrentTree}发布的快照
+    private boolean readOnly;
+
     public MyTree(T rootData) {
         this(new Node<T>(rootData));
     }
@@ -22,6 +48,31 @@ public class MyTree<T> implements Tree<T>{
             throw new IllegalArgumentException("key can't be null");
         }
         this.root = root;
+        keyIndex = new HashMap<>();
+        keyIndex.put(root.key, root);
+        addToLevel(root);
+    }
+
+    /**
+     * 由{@link TreeBuilder}使用, 各层节点已按层序排列, level和children均已设置.
+     */
+    MyTree(List<List<Node<T>>> levelIndex) {
+        this.root = levelIndex.get(0).get(0);
+        int size = 0;
+        for(List<Node<T>> levelNodes : levelIndex){
+            size += levelNodes.size();
+        }
+        keyIndex = new HashMap<>(size * 4 / 3 + 1);
+        for(List<Node<T>> levelNodes : levelIndex){
+            for(int i = 0; i < levelNodes.size(); i++){
+                Node<T> node = levelNodes.get(i);
+                node.position = i;
+                keyIndex.put(node.key, node);
+            }
+            levels.add(levelNodes);
+            countLevel(levels.size(), levelNodes.size());
+        }
+        orderedLevels = levels.size();
     }
 
     public Node<T> getRoot() {
@@ -30,143 +81,578 @@ public class MyTree<T> implements Tree<T>{
 
     @Override
     public Node<T> addNode(Node<T> parent, T key) {
+        checkWritable();
         if(parent == null){
             throw new IllegalArgumentException("parent can't be null");
         }
         if(key == null){
             throw new IllegalArgumentException("key can't be null");
         }
+        if(keyIndex.containsKey(key)){
+            throw new IllegalArgumentException("duplicate key " + key);
+        }
 
         Node<T> node = new Node<T>();
         node.key = key;
         node.parent = parent;
+        node.level = parent.level + 1;
+        addToLevel(node);
+        keyIndex.put(key, node);
 
         if(parent.children == null){
-            parent.children = new LinkedList<>();
+            parent.children = new NodeChildren<>();
         }
         parent.children.add(node);
+        SubtreeHash.invalidate(parent);
+        if(changeLog != null){
+            changeLog.recordAdd(node);
+        }
 
         return node;
     }
 
-    public void preOrderTraverse(Node<T> fromNode, Visitor<T> visitor) {
-
-        visitor.visit(fromNode);
+    /**
+     * 删除节点, 子节点按原顺序移到其父节点下, 子孙节点的层号减1.
+     * <p>
+     *     耗时与该节点的子树大小及兄弟节点数成正比. 被删除的节点保留parent, 不再有子节点.
+     * </p>
+     *
+     * @param node 要删除的节点
+     * @throws IllegalArgumentException 节点不在树中, 或者是根节点
+     */
+    @Override
+    public void removeNode(Node<T> node) {
+        checkWritable();
+        Node<T> parent = checkRemovable(node);
+        List<Node<T>> children = node.children;
+        if(changeLog != null){
+            changeLog.recordRemove(node);
+            if(children != null){
+                for(int i = 0; i < children.size(); i++){
+                    changeLog.recordMove(children.get(i));
+                }
+            }
+        }
 
-        if(fromNode.children != null){
-            for(Node<T> child : fromNode.children){
-                preOrderTraverse(child, visitor);
+        int index = parent.children.indexOf(node);
+        parent.children.remove(index);
+        if(children != null){
+            for(int i = 0; i < children.size(); i++){
+                Node<T> child = children.get(i);
+                child.parent = parent;
+                parent.children.add(index + i, child);
+                relevel(child, -1);
             }
+            node.children = null;
         }
+        keyIndex.remove(node.key);
+        countLevel(node.level, -1);
+        staleNodes++;
+
+        SubtreeHash.invalidate(parent);
+        levelsChanged(node.level);
     }
 
+    /**
+     * 删除节点及其全部子孙, 耗时与子树大小及兄弟节点数成正比. 被删除的子树保持原样, 根节点保留parent.
+     *
+     * @param node 子树的根节点
+     * @throws IllegalArgumentException 节点不在树中, 或者是根节点
+     */
     @Override
-    public void postOrderTraverse(Node<T> fromNode, Visitor<T> visitor) {
+    public void removeSubtree(Node<T> node) {
+        checkWritable();
+        Node<T> parent = checkRemovable(node);
+        postOrderTraverse(node, new Visitor<T>() {
+            @Override
+            public void visit(Node<T> node) {
+                if(changeLog != null){
+                    changeLog.recordRemove(node);
+                }
+                keyIndex.remove(node.key);
+                countLevel(node.level, -1);
+                staleNodes++;
+            }
+        });
 
-        if(fromNode.children != null){
-            for(Node<T> child : fromNode.children){
-                postOrderTraverse(child, visitor);
+        parent.children.remove(parent.children.indexOf(node));
+        SubtreeHash.invalidate(parent);
+        levelsChanged(node.level);
+    }
+
+    /**
+     * 将子树移到新的父节点下.
+     * <p>
+     *     层号不变时耗时与新父节点的深度及原兄弟节点数成正比, 与子树大小无关; 层号变化时还需更新子树中每个节点的层号.
+     * </p>
+     *
+     * @param node 子树的根节点
+     * @param newParent 新的父节点
+     * @throws IllegalArgumentException 节点不在树中, 或新的父节点是该节点或其子孙
+     */
+    @Override
+    public void moveSubtree(Node<T> node, Node<T> newParent) {
+        checkWritable();
+        if(newParent == null){
+            throw new IllegalArgumentException("parent can't be null");
+        }
+        checkMember(node);
+        checkMember(newParent);
+        for(Node<T> ancestor = newParent; ancestor != null; ancestor = ancestor.parent){
+            if(ancestor == node){
+                throw new IllegalArgumentException("cycle at " + node.key);
             }
         }
+        if(changeLog != null){
+            changeLog.recordMove(node);
+        }
 
-        visitor.visit(fromNode);
+        Node<T> oldParent = node.parent;
+        oldParent.children.remove(oldParent.children.indexOf(node));
+        SubtreeHash.invalidate(oldParent);
+        node.parent = newParent;
+        if(newParent.children == null){
+            newParent.children = new NodeChildren<>();
+        }
+        newParent.children.add(node);
+        SubtreeHash.invalidate(newParent);
+
+        int oldLevel = node.level;
+        relevel(node, newParent.level + 1 - oldLevel);
+        levelsChanged(Math.min(oldLevel, node.level));
+    }
+
+    /**
+     * 标记为只读, 之后的修改都抛出UnsupportedOperationException. 不能撤销.
+     */
+    void freeze(){
+        readOnly = true;
+    }
+
+    /**
+     * @throws UnsupportedOperationException 树是只读的
+     */
+    void checkWritable(){
+        if(readOnly){
+            throw new UnsupportedOperationException("snapshot is read-only");
+        }
+    }
+
+    private void checkMember(Node<T> node){
+        if(node == null){
+            throw new IllegalArgumentException("node can't be null");
+        }
+        if(keyIndex.get(node.key) != node){
+            throw new IllegalArgumentException("node " + node.key + " doesn't exist");
+        }
+    }
+
+    /**
+     * 检查节点可以删除, 返回其父节点.
+     */
+    private Node<T> checkRemovable(Node<T> node){
+        checkMember(node);
+        if(node == root){
+            throw new IllegalArgumentException("can't remove root");
+        }
+        return node.parent;
     }
 
+    /**
+     * 按key查找节点, 耗时O(1).
+     *
+     * @param key 节点key
+     * @return 节点, 不存在时为null
+     */
+    public Node<T> findByKey(T key) {
+        return keyIndex.get(key);
+    }
+
+    /**
+     * 是否存在指定key的节点, 耗时O(1).
+     *
+     * @param key 节点key
+     * @return 是否存在
+     */
+    public boolean contains(T key) {
+        return keyIndex.containsKey(key);
+    }
+
+    /**
+     * 节点数.
+     */
     @Override
-    public void levelTraverse(Node<T> fromNode, Visitor<T> visitor) {
+    public int size() {
+        return keyIndex.size();
+    }
+
+    /**
+     * 由{@link TreePatch}等使用的key索引, 修改时需要与树的结构保持一致.
+     */
+    Map<T, Node<T>> keyIndex() {
+        return keyIndex;
+    }
+
+    @Override
+    public void preOrderTraverse(Node<T> fromNode, Visitor<T> visitor) {
         if(fromNode == null){
             return;
         }
 
-        Queue<Node<T>> queue = new LinkedList<>();
-        queue.offer(fromNode);
+        //显式栈代替递归, 避免深树栈溢出. 栈中保存各层的节点和下一个要访问的子节点下标.
+        TraversalStack<T> stack = new TraversalStack<>();
+        visitor.visit(fromNode);
+        stack.push(fromNode);
 
-        while (!queue.isEmpty()){
+        while (!stack.isEmpty()){
 
-            Node<T> currentNode = queue.poll();
+            Node<T> parent = stack.peek();
+            int index = stack.nextChild();
+            if(parent.children == null || index >= parent.children.size()){
+                stack.pop();
+                continue;
+            }
+
+            Node<T> currentNode = parent.children.get(index);
             visitor.visit(currentNode);
+            stack.push(currentNode);
+        }
+    }
 
-            if(currentNode.children != null){
-                queue.addAll(currentNode.children);
+    @Override
+    public void postOrderTraverse(Node<T> fromNode, Visitor<T> visitor) {
+        if(fromNode == null){
+            return;
+        }
+
+        //显式栈代替递归. 子节点全部访问后再访问该节点.
+        TraversalStack<T> stack = new TraversalStack<>();
+        stack.push(fromNode);
+
+        while (!stack.isEmpty()){
+
+            Node<T> parent = stack.peek();
+            int index = stack.nextChild();
+            if(parent.children != null && index < parent.children.size()){
+                stack.push(parent.children.get(index));
+            }else{
+                visitor.visit(stack.pop());
             }
         }
     }
 
     @Override
-    public void levelStopTraverse(Node<T> fromNode, StopVisitor<T> visitor) {
+    public void levelTraverse(Node<T> fromNode, Visitor<T> visitor) {
         if(fromNode == null){
             return;
         }
 
-        Queue<Node<T>> queue = new LinkedList<>();
-        queue.offer(fromNode);
+        //复用当前线程的环形队列, 稳定状态下不产生垃圾
+        NodeQueue<T> queue = NodeQueue.acquire();
+        try {
+            queue.offer(fromNode);
+            while (!queue.isEmpty()){
+
+                Node<T> currentNode = queue.poll();
+                visitor.visit(currentNode);
+                queue.offerChildren(currentNode);
+            }
+        } finally {
+            queue.release();
+        }
+    }
 
-        while (!queue.isEmpty() && !visitor.stopNow()){
+    @Override
+    public void levelStopTraverse(Node<T> fromNode, StopVisitor<T> visitor) {
+        if(fromNode == null){
+            return;
+        }
 
-            Node<T> currentNode = queue.poll();
-            visitor.visit(currentNode);
+        NodeQueue<T> queue = NodeQueue.acquire();
+        try {
+            queue.offer(fromNode);
+            while (!queue.isEmpty() && !visitor.stopNow()){
 
-            if(currentNode.children != null){
-                queue.addAll(currentNode.children);
+                Node<T> currentNode = queue.poll();
+                visitor.visit(currentNode);
+                queue.offerChildren(currentNode);
             }
+        } finally {
+            queue.release();
         }
     }
 
     @Override
     public int getDeep() {
-        final AtomicInteger deep = new AtomicInteger(0);
-        postOrderTraverse(root, new Visitor<T>() {
+        return levels.size();
+    }
+
+    @Override
+    public List<Node<T>> getByLevel(int level) {
+        if(level < 1 || level > levels.size()){
+            return Collections.emptyList();
+        }
+        orderLevels(level);
+        return Collections.unmodifiableList(levels.get(level - 1));
+    }
+
+    @Override
+    public Iterator<List<Node<T>>> levelIterator() {
+        orderLevels(levels.size());
+        return new Iterator<List<Node<T>>>() {
+            private int level = 1;
+
+            @Override
+            public boolean hasNext() {
+                return level <= levels.size();
+            }
+
+            @Override
+            public List<Node<T>> next() {
+                if(!hasNext()){
+                    throw new NoSuchElementException();
+                }
+                return Collections.unmodifiableList(levels.get(level++ - 1));
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * 将节点加入层索引.
+     * <p>
+     *     节点追加到所在层的末尾. 若父节点在上一层中位于该层末尾节点的父节点之前, 说明该层顺序与层序遍历不一致,
+     *     标记为需要重排.
+     * </p>
+     */
+    private void addToLevel(Node<T> node){
+        if(node.level > levels.size()){
+            levels.add(new ArrayList<Node<T>>());
+            if(orderedLevels == node.level - 1){
+                orderedLevels = node.level;
+            }
+        }
+
+        List<Node<T>> levelNodes = levels.get(node.level - 1);
+        if(node.level <= orderedLevels && !levelNodes.isEmpty()){
+            Node<T> last = levelNodes.get(levelNodes.size() - 1);
+            if(node.parent.position < last.parent.position){
+                orderedLevels = node.level - 1;
+            }
+        }
+        node.position = levelNodes.size();
+        levelNodes.add(node);
+        countLevel(node.level, 1);
+    }
+
+    private void countLevel(int level, int delta){
+        if(level > levelSizes.length){
+            levelSizes = Arrays.copyOf(levelSizes, Math.max(level, levelSizes.length * 2));
+        }
+        levelSizes[level - 1] += delta;
+    }
 
+    /**
+     * 子树中每个节点的层号加上delta. 节点不移入新层的列表, 所在的层由{@link #levelsChanged(int)}标记为需要重排.
+     */
+    private void relevel(Node<T> node, final int delta){
+        if(delta == 0){
+            return;
+        }
+        preOrderTraverse(node, new Visitor<T>() {
             @Override
             public void visit(Node<T> node) {
-                List<T> path = node.getPath();
-                if(deep.get() < path.size()){
-                    deep.set(path.size());
+                countLevel(node.level, -1);
+                node.level += delta;
+                countLevel(node.level, 1);
+                while(levels.size() < node.level){
+                    levels.add(new ArrayList<Node<T>>());
                 }
-                node.getPath();
             }
         });
+    }
 
-        return deep.get();
+    /**
+     * 删除或移动节点后, 第level层及更深的层标记为需要重排, 并去掉已没有节点的层.
+     * 已删除的节点残留过多时立即重排, 释放对它们的引用.
+     */
+    private void levelsChanged(int level){
+        orderedLevels = Math.min(orderedLevels, level - 1);
+        while(levelSizes[levels.size() - 1] == 0){
+            levels.remove(levels.size() - 1);
+        }
+        if(staleNodes > keyIndex.size()){
+            orderLevels(levels.size());
+        }
     }
 
-    @Override
-    public List<Node<T>> getByLevel(final int level) {
-        final List<Node<T>> levelNodes = new LinkedList<>();
+    /**
+     * 按上一层的顺序重排各层, 直到第toLevel层.
+     */
+    private void orderLevels(int toLevel){
+        for(int level = orderedLevels + 1; level <= toLevel; level++){
+            List<Node<T>> ordered = new ArrayList<>(levelSizes[level - 1]);
+            for(Node<T> parent : levels.get(level - 2)){
+                if(parent.children != null){
+                    for(int i = 0; i < parent.children.size(); i++){
+                        Node<T> child = parent.children.get(i);
+                        child.position = ordered.size();
+                        ordered.add(child);
+                    }
+                }
+            }
+            levels.set(level - 1, ordered);
+        }
+        //已有序时不写入任何字段, ConcurrentTree发布的快照可以被多个线程同时读取
+        if(toLevel > orderedLevels){
+            orderedLevels = toLevel;
+            if(orderedLevels == levels.size()){
+                staleNodes = 0;
+            }
+        }
+    }
 
-        levelStopTraverse(root, new StopVisitor<T>() {
-            private boolean stopNow;
+    /**
+     * 复制树的结构和已计算的子树哈希, 耗时与节点数成正比. 不复制变化日志.
+     */
+    public MyTree<T> copy(){
+        orderLevels(levels.size());
+        List<List<Node<T>>> copies = new ArrayList<>(levels.size());
+        List<Node<T>> parents = new ArrayList<>(1);
+        parents.add(copyOf(root));
+        copies.add(parents);
+        for(int level = 1; level < levels.size(); level++){
+            List<Node<T>> sources = levels.get(level - 1);
+            List<Node<T>> children = new ArrayList<>(levelSizes[level]);
+            for(int i = 0; i < sources.size(); i++){
+                List<Node<T>> sourceChildren = sources.get(i).children;
+                if(sourceChildren == null){
+                    continue;
+                }
+                Node<T> parent = parents.get(i);
+                parent.children = new NodeChildren<>(sourceChildren.size());
+                for(int j = 0; j < sourceChildren.size(); j++){
+                    Node<T> child = copyOf(sourceChildren.get(j));
+                    child.parent = parent;
+                    child.level = level + 1;
+                    parent.children.add(child);
+                    children.add(child);
+                }
+            }
+            copies.add(children);
+            parents = children;
+        }
+        return new MyTree<>(copies);
+    }
 
-            @Override
-            public boolean stopNow() {
-                return stopNow;
+    private static <T> Node<T> copyOf(Node<T> source){
+        Node<T> node = new Node<>(source.key);
+        node.subtreeHash = source.subtreeHash;
+        node.subtreeHashValid = source.subtreeHashValid;
+        return node;
+    }
+
+    /**
+     * 由{@link TreePatch}使用: 节点的父子关系和key索引已直接修改, 增量维护层号和层索引.
+     * <p>
+     *     删除的节点同{@link #removeSubtree(Node)}留在层索引中待重排, 换了父节点的节点同{@link #moveSubtree(Node, Node)}
+     *     更新子树的层号, 新增的节点同{@link #addNode(Node, Object)}加入层索引. 耗时与这些节点的深度及层号变化的子树大小成正比,
+     *     变化的层在读取时重排.
+     * </p>
+     *
+     * @param newRoot 新的根节点
+     * @param removed 删除的节点
+     * @param relocated 换了父节点的节点和新增的节点
+     * @param created 新增的节点, 尚未加入层索引
+     * @param reordered 子节点顺序变化的父节点
+     */
+    void patched(Node<T> newRoot, Collection<Node<T>> removed, Collection<Node<T>> relocated,
+                 final Set<Node<T>> created, Collection<Node<T>> reordered){
+        int changedLevel = Integer.MAX_VALUE;
+        for(Node<T> node : removed){
+            countLevel(node.level, -1);
+            staleNodes++;
+            changedLevel = Math.min(changedLevel, node.level);
+        }
+
+        //祖先先于子孙确定层号: 每次处理最上层的待定节点, 其祖先的层号都已确定
+        final Set<Node<T>> pending = new HashSet<>(relocated);
+        for(Node<T> node : relocated){
+            while(pending.contains(node)){
+                Node<T> top = node;
+                for(Node<T> ancestor = node.parent; ancestor != null; ancestor = ancestor.parent){
+                    if(pending.contains(ancestor)){
+                        top = ancestor;
+                    }
+                }
+                changedLevel = Math.min(changedLevel, settle(top, pending, created));
             }
+        }
+        for(Node<T> parent : reordered){
+            changedLevel = Math.min(changedLevel, parent.level + 1);
+        }
+
+        if(newRoot != root){
+            root = newRoot;
+            List<Node<T>> rootLevel = new ArrayList<>(1);
+            newRoot.position = 0;
+            rootLevel.add(newRoot);
+            levels.set(0, rootLevel);
+        }
+        if(changedLevel != Integer.MAX_VALUE){
+            levelsChanged(Math.max(2, changedLevel));
+        }
+    }
 
+    /**
+     * 确定待定节点的层号, 层号变化或新增时更新整棵子树, 子树中的待定节点一并确定. 返回位置变化的最浅层.
+     */
+    private int settle(Node<T> top, final Set<Node<T>> pending, final Set<Node<T>> created){
+        int level = top.parent == null ? 1 : top.parent.level + 1;
+        if(!created.contains(top) && top.level == level){
+            pending.remove(top);
+            return level;
+        }
+        //子树中可能有从较浅的层移入的节点, 取所有节点原来和新的层号中最浅的
+        final int[] changedLevel = {level};
+        preOrderTraverse(top, new Visitor<T>() {
             @Override
             public void visit(Node<T> node) {
-                int currentLevel = node.getLevel();
-                if(currentLevel == level){
-                    levelNodes.add(node);
-                }else if(currentLevel > level){
-                    stopNow = true;
+                pending.remove(node);
+                int level = node.parent == null ? 1 : node.parent.level + 1;
+                if(created.contains(node)){
+                    node.level = level;
+                    if(node.parent == null){
+                        countLevel(1, 1);
+                    }else{
+                        addToLevel(node);
+                    }
+                }else if(node.level != level){
+                    changedLevel[0] = Math.min(changedLevel[0], node.level);
+                    countLevel(node.level, -1);
+                    node.level = level;
+                    countLevel(level, 1);
+                    while(levels.size() < level){
+                        levels.add(new ArrayList<Node<T>>());
+                    }
                 }
             }
         });
-        return levelNodes;
+        return changedLevel[0];
     }
 
     @Override
     public Queue<NodeEvent<T>> diff(final Tree<T> other) {
-        //节点事件队列
-        final LinkedList<NodeEvent<T>> nodeEvents = new LinkedList<>();
-
-        //已删除的节点集合，用于标记被删除的节点以及它的子孙节点
-        final Set<Node<T>> removedNodes = new HashSet<>();
-        final Set<Node<T>> createdNodes = new HashSet<>();
+        //节点事件队列, 按节点和事件类型索引
+        final NodeEventJournal<T> nodeEvents = new NodeEventJournal<>();
 
-        //标记事件。用于删除'假的'删除事件。
-        final NodeEvent<T> DELETE_NODE_EVENT = new NodeEvent<>(NodeEventType.DELETE, null);
-        final NodeEvent<T> ADD_NODE_EVENT = new NodeEvent<>(NodeEventType.CREATE, null);
+        //已删除和已新增节点的key，用于标记被删除的节点以及它的子孙节点
+        final Set<T> removedKeys = new HashSet<>();
+        final Set<T> createdKeys = new HashSet<>();
 
         int myDeep = getDeep();
         int otherDeep = other.getDeep();
@@ -179,32 +665,37 @@ public class MyTree<T> implements Tree<T>{
             //deal with levels they both have.
             if(deep <= minDeep){
                 List<Node<T>> myNodes = getByLevel(deep);
-                myNodes.removeAll(removedNodes);
-
                 List<Node<T>> otherNodes = other.getByLevel(deep);
+                Set<T> otherKeys = levelKeys(other, otherNodes);
 
-                List<Node<T>> addNodes = new ArrayList<>(otherNodes);
-                addNodes.removeAll(myNodes);
-
-                for(Node<T> node : addNodes){
-                    processCreateNode(nodeEvents, node, DELETE_NODE_EVENT, removedNodes);
-                    createdNodes.add(node);
+                //通过key索引判断节点是否在对方的同一层, 代替列表之间的集合运算
+                for(Node<T> node : otherNodes){
+                    Node<T> myNode = keyIndex.get(node.key);
+                    if(myNode == null || myNode.level != deep || removedKeys.contains(node.key)){
+                        processCreateNode(nodeEvents, node, removedKeys);
+                        createdKeys.add(node.key);
+                    }
                 }
 
                 //update nodes
-                List<Node<T>> updateNodes = new ArrayList<>(myNodes);
-                updateNodes.retainAll(otherNodes);
-                for(Node<T> node : updateNodes){
-                    nodeEvents.add(new NodeEvent<T>(NodeEventType.UPDATE, node));
+                List<Node<T>> deleteNodes = new ArrayList<>();
+                for(Node<T> node : myNodes){
+                    if(removedKeys.contains(node.key)){
+                        continue;
+                    }
+                    if(atLevel(other, otherKeys, node.key, deep)){
+                        nodeEvents.add(NodeEventType.UPDATE, node);
+                    }else{
+                        deleteNodes.add(node);
+                    }
                 }
 
-                myNodes.removeAll(otherNodes);
-                for(Node<T> node : myNodes){
+                for(Node<T> node : deleteNodes){
                     postOrderTraverse(node, new Visitor<T>() {
                         @Override
                         public void visit(Node<T> node) {
-                            nodeEvents.add(new NodeEvent<T>(NodeEventType.DELETE, node));
-                            removedNodes.add(node);
+                            nodeEvents.add(NodeEventType.DELETE, node);
+                            removedKeys.add(node.key);
                         }
                     });
                 }
@@ -221,16 +712,15 @@ public class MyTree<T> implements Tree<T>{
                         @Override
                         public void visit(Node<T> node) {
                             //之前未删除
-                            if(!removedNodes.contains(node)){
+                            if(!removedKeys.contains(node.key)){
                                 //之前新增
-                                if(createdNodes.contains(node)){//现在要删除，说明之前是一个move
-                                    ADD_NODE_EVENT.setNode(node);
-                                    NodeEvent<T> preCreatedEvent = findEvent(nodeEvents, ADD_NODE_EVENT);
+                                if(createdKeys.contains(node.key)){//现在要删除，说明之前是一个move
+                                    NodeEvent<T> preCreatedEvent = nodeEvents.find(NodeEventType.CREATE, node);
                                     if(preCreatedEvent != null){
-                                        preCreatedEvent.setEventType(NodeEventType.MOVE);
+                                        nodeEvents.changeType(preCreatedEvent, NodeEventType.MOVE);
                                     }
                                 }else{
-                                    nodeEvents.add(new NodeEvent<T>(NodeEventType.DELETE, node));
+                                    nodeEvents.add(NodeEventType.DELETE, node);
                                 }
                             }
                         }
@@ -245,38 +735,121 @@ public class MyTree<T> implements Tree<T>{
                     preOrderTraverse(node, new Visitor<T>() {
                         @Override
                         public void visit(Node<T> node) {
-                            processCreateNode(nodeEvents, node, DELETE_NODE_EVENT, removedNodes);
+                            processCreateNode(nodeEvents, node, removedKeys);
                         }
                     });
                 }
             }
         }
 
-        return nodeEvents;
+        return nodeEvents.getEvents();
     }
 
-    private NodeEvent<T> findEvent(Queue<NodeEvent<T>> queue, NodeEvent<T> event){
-        for(NodeEvent<T> nodeEvent : queue){
-            if(nodeEvent.equals(event)){
-                return nodeEvent;
-            }
+    @Override
+    public Queue<NodeEvent<T>> diff(Tree<T> other, DiffAlgorithm algorithm) {
+        switch (algorithm){
+            case HASH:
+                return new HashDiff<>(this, other).diff();
+            case PARALLEL:
+                return ParallelDiff.diff(this, other);
+            case AUTO:
+                if(ParallelDiff.isLarge(this, other)){
+                    return ParallelDiff.diff(this, other);
+                }
+                return new HashDiff<>(this, other).diff();
+            case CHANGES_ONLY:
+                return new MerkleDiff<>(this, other).diff();
+            case ORDERED:
+                return new OrderedDiff<>(this, other).diff();
+            case LEVEL:
+            default:
+                return diff(other);
+        }
+    }
+
+    @Override
+    public void diff(Tree<T> other, NodeEventSink<T> sink) {
+        new StreamingDiff<>(this, other).diff(sink);
+    }
+
+    @Override
+    public void diff(Tree<T> other, NodeEquivalence<? super T> equivalence, NodeEventSink<T> sink) {
+        new StreamingDiff<>(this, other, equivalence).diff(sink);
+    }
+
+    /**
+     * 设置检查点, 开始记录之后的结构变化. 已有检查点时清空之前记录的变化.
+     */
+    public void checkpoint() {
+        checkWritable();
+        changeLog = new ChangeLog<>();
+    }
+
+    /**
+     * 停止记录结构变化并丢弃日志.
+     */
+    public void stopTracking() {
+        changeLog = null;
+    }
+
+    /**
+     * 检查点之后的变化, 耗时与变化的节点数成正比, 与树的大小无关.
+     * <p>
+     *     只包含CREATE, MOVE和DELETE事件, 对检查点时的树依次执行这些事件即得到当前的树.
+     *     与检查点时的树比较的{@link #diff(Tree)}结果还包含UPDATE事件, 且层号变化的子孙节点也会产生事件,
+     *     因此两者的事件列表不同, 效果相同.
+     * </p>
+     *
+     * @return 节点事件
+     * @throws IllegalStateException 未设置检查点
+     */
+    public Queue<NodeEvent<T>> getChanges() {
+        if(changeLog == null){
+            throw new IllegalStateException("no checkpoint");
+        }
+        return changeLog.getEvents();
+    }
+
+    /**
+     * 检查点之后的变化日志, 未开启跟踪时为null.
+     */
+    ChangeLog<T> getChangeLog() {
+        return changeLog;
+    }
+
+    /**
+     * 另一棵树第deep层的key集合. 另一棵树是MyTree时直接查询其key索引, 返回null.
+     */
+    private static <T> Set<T> levelKeys(Tree<T> tree, List<Node<T>> levelNodes){
+        if(tree instanceof MyTree){
+            return null;
+        }
+        Set<T> keys = new HashSet<>(levelNodes.size() * 4 / 3 + 1);
+        for(Node<T> node : levelNodes){
+            keys.add(node.key);
+        }
+        return keys;
+    }
+
+    private static <T> boolean atLevel(Tree<T> tree, Set<T> levelKeys, T key, int deep){
+        if(levelKeys != null){
+            return levelKeys.contains(key);
         }
-        return null;
+        Node<T> node = ((MyTree<T>) tree).keyIndex.get(key);
+        return node != null && node.level == deep;
     }
 
-    private void processCreateNode(Queue<NodeEvent<T>> queue, Node<T> node, NodeEvent<T> delFlagNode,
-                                   Set<Node<T>> removedNodes){
-        if(removedNodes.contains(node)){
-            delFlagNode.setNode(node);
-            NodeEvent<T> preDeleted = findEvent(queue, delFlagNode);
+    private void processCreateNode(NodeEventJournal<T> journal, Node<T> node, Set<T> removedKeys){
+        if(removedKeys.contains(node.key)){
+            NodeEvent<T> preDeleted = journal.find(NodeEventType.DELETE, node);
             if(preDeleted != null){
                 //Since the nodes which was deleted by post order, there is no need to deal with its descendants when
                 // dealing with current node.
-                preDeleted.setEventType(NodeEventType.MOVE);
+                journal.changeType(preDeleted, NodeEventType.MOVE);
                 preDeleted.setNode(node);
             }
         }else{
-            queue.add(new NodeEvent<T>(NodeEventType.CREATE, node));
+            journal.add(NodeEventType.CREATE, node);
         }
     }
 
@@ -20,6 +20,22 @@ public class Node<T> {
      */
     public List<Node<T>> children;
 
+    /**
+     * 层号, 根节点为1. 由{@link Tree#addNode(Node, Object)}维护.
+     */
+    int level = 1;
+
+    /**
+     * 在所在层中的位置, 由{@link MyTree}的层索引维护.
+     */
+    int position;
+
+    /**
+     * 子树哈希, 由{@link SubtreeHash}在比较时计算, 子树变化后失效.
+     */
+    long subtreeHash;
+    boolean subtreeHashValid;
+
     Node() {
     }
 
@@ -54,12 +70,6 @@ public class Node<T> {
     }
 
     public int getLevel(){
-        int level = 1;
-        Node<T> nodeParent = parent;
-        while (nodeParent != null){
-            level++;
-            nodeParent = nodeParent.parent;
-        }
         return level;
     }
 
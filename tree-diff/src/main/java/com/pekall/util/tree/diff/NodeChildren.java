@@ -0,0 +1,111 @@
+package com.pekall.util.tree.diff;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * {@link MyTree}节点的子节点列表.
+ * <p>
+ *     叶子节点没有列表(children为null). 只有一个子节点时直接保存在列表中, 不分配数组;
+ *     第二个子节点加入时改为可增长的数组. 支持随机访问, 遍历时按下标读取, 不需要创建迭代器.
+ * </p>
+ */
+final class NodeChildren<T> extends AbstractList<Node<T>> implements RandomAccess {
+
+    private static final int MIN_CAPACITY = 4;
+
+    //数组未分配时唯一的子节点
+    private Node<T> single;
+    private Node<T>[] elements;
+    private int size;
+
+    NodeChildren() {
+    }
+
+    /**
+     * @param capacity 预计的子节点数, 大于1时直接分配数组
+     */
+    @SuppressWarnings("unchecked")
+    NodeChildren(int capacity) {
+        if (capacity > 1) {
+            elements = (Node<T>[]) new Node[capacity];
+        }
+    }
+
+    @Override
+    public Node<T> get(int index) {
+        checkIndex(index, size);
+        return elements == null ? single : elements[index];
+    }
+
+    @Override
+    public Node<T> set(int index, Node<T> node) {
+        checkIndex(index, size);
+        Node<T> old;
+        if (elements == null) {
+            old = single;
+            single = node;
+        } else {
+            old = elements[index];
+            elements[index] = node;
+        }
+        return old;
+    }
+
+    @Override
+    public void add(int index, Node<T> node) {
+        checkIndex(index, size + 1);
+        if (elements == null && size == 0) {
+            single = node;
+        } else {
+            grow();
+            System.arraycopy(elements, index, elements, index + 1, size - index);
+            elements[index] = node;
+        }
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public Node<T> remove(int index) {
+        checkIndex(index, size);
+        Node<T> old;
+        if (elements == null) {
+            old = single;
+            single = null;
+        } else {
+            old = elements[index];
+            System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+            elements[size - 1] = null;
+        }
+        size--;
+        modCount++;
+        return old;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 保证数组还能再放一个子节点.
+     */
+    @SuppressWarnings("unchecked")
+    private void grow() {
+        if (elements == null) {
+            elements = (Node<T>[]) new Node[MIN_CAPACITY];
+            elements[0] = single;
+            single = null;
+        } else if (size == elements.length) {
+            elements = Arrays.copyOf(elements, size + (size >> 1));
+        }
+    }
+
+    private static void checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound) {
+            throw new IndexOutOfBoundsException("index: " + index);
+        }
+    }
+}
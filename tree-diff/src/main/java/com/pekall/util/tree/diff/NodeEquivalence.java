@@ -0,0 +1,59 @@
+package com.pekall.util.tree.diff;
+
+/**
+ * 比较时节点的标识和内容, 见{@link Tree#diff(Tree, NodeEquivalence, NodeEventSink)}.
+ * <p>
+ *     标识决定两棵树中哪两个节点是同一个节点, 标识的equals和hashCode代替key的equals和hashCode用于匹配;
+ *     内容决定同一个节点是否发生了变化, 只有内容不同的节点才产生UPDATE事件.
+ *     key可以同时携带标识和负载, 由实现分别取出.
+ *     只有流式比较使用节点等价, {@link Tree#diff(Tree, DiffAlgorithm)}的各算法始终按key的equals比较.
+ * </p>
+ */
+public interface NodeEquivalence<T> {
+
+    /**
+     * 节点的标识. 同一棵树内的标识必须唯一.
+     *
+     * @param key 节点key
+     * @return 标识
+     */
+    Object identity(T key);
+
+    /**
+     * 内容哈希, 内容相同的key的哈希必须相同. 哈希不同时直接认为内容已变化, 不再调用{@link #sameContent(Object, Object)},
+     * 因此实现可以返回预先计算并保存在key中的值以减少比较.
+     *
+     * @param key 节点key
+     * @return 内容哈希
+     */
+    long contentHash(T key);
+
+    /**
+     * 标识相同的两个节点内容是否相同.
+     *
+     * @param key 旧树节点的key
+     * @param otherKey 新树节点的key
+     * @return 内容相同返回true
+     */
+    boolean sameContent(T key, T otherKey);
+
+    /**
+     * 以key本身为标识, 不比较内容, 每个保留的节点都产生UPDATE事件, 与{@link Tree#diff(Tree)}一致.
+     */
+    NodeEquivalence<Object> KEY = new NodeEquivalence<Object>() {
+        @Override
+        public Object identity(Object key) {
+            return key;
+        }
+
+        @Override
+        public long contentHash(Object key) {
+            return 0;
+        }
+
+        @Override
+        public boolean sameContent(Object key, Object otherKey) {
+            return false;
+        }
+    };
+}
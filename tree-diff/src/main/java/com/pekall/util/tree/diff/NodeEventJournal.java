@@ -0,0 +1,86 @@
+package com.pekall.util.tree.diff;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * 带索引的节点事件队列.
+ * <p>
+ *     事件按添加顺序保存在队列中, 同时按 事件类型 + 节点key 建立索引,
+ *     因此查找某个节点的删除/新增事件并将其转换为MOVE事件的代价为O(1), 不需要遍历整个队列.
+ * </p>
+ * <p>
+ *     对于同一类型同一key的多个事件, 索引只记录最早的一个, 与按队列顺序查找的结果一致.
+ * </p>
+ */
+class NodeEventJournal<T> {
+
+    private final LinkedList<NodeEvent<T>> events = new LinkedList<>();
+
+    private final Map<NodeEventType, Map<T, NodeEvent<T>>> index = new EnumMap<>(NodeEventType.class);
+
+    NodeEventJournal() {
+        for (NodeEventType eventType : NodeEventType.values()) {
+            index.put(eventType, new HashMap<T, NodeEvent<T>>());
+        }
+    }
+
+    /**
+     * 在队尾添加事件.
+     *
+     * @param eventType 事件类型
+     * @param node 节点
+     * @return 添加的事件
+     */
+    NodeEvent<T> add(NodeEventType eventType, Node<T> node) {
+        NodeEvent<T> event = new NodeEvent<>(eventType, node);
+        events.add(event);
+        indexEvent(event);
+        return event;
+    }
+
+    /**
+     * 查找节点的指定类型事件.
+     *
+     * @param eventType 事件类型
+     * @param node 节点, 按key匹配
+     * @return 最早的匹配事件, 不存在时返回null
+     */
+    NodeEvent<T> find(NodeEventType eventType, Node<T> node) {
+        return index.get(eventType).get(node.key);
+    }
+
+    /**
+     * 修改事件的类型, 并同步索引.
+     *
+     * @param event 队列中的事件
+     * @param eventType 新的事件类型
+     */
+    void changeType(NodeEvent<T> event, NodeEventType eventType) {
+        T key = event.getNode().key;
+        Map<T, NodeEvent<T>> typeIndex = index.get(event.getEventType());
+        if (typeIndex.get(key) == event) {
+            typeIndex.remove(key);
+        }
+        event.setEventType(eventType);
+        indexEvent(event);
+    }
+
+    /**
+     * @return 全部事件, 按添加顺序排列
+     */
+    Queue<NodeEvent<T>> getEvents() {
+        return events;
+    }
+
+    private void indexEvent(NodeEvent<T> event) {
+        Map<T, NodeEvent<T>> typeIndex = index.get(event.getEventType());
+        T key = event.getNode().key;
+        if (!typeIndex.containsKey(key)) {
+            typeIndex.put(key, event);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.pekall.util.tree.diff;
+
+/**
+ * 节点事件的接收者, 用于流式比较.
+ */
+public interface NodeEventSink<T> {
+
+    /**
+     * 接收一个事件. 事件在发出时已经是最终结果, 之后不会再被修改.
+     *
+     * @param event 节点事件
+     */
+    void onEvent(NodeEvent<T> event);
+}
@@ -8,5 +8,20 @@ public enum NodeEventType {
 
     DELETE,
 
-    MOVE
+    MOVE,
+
+    /**
+     * 同一父节点下保留的兄弟节点顺序变化, 只由{@link DiffAlgorithm#ORDERED}产生. 见{@link OrderedDiff}.
+     */
+    REORDER,
+
+    /**
+     * 新增整棵子树, 子树中的节点都是新增的. 只由{@link EventCoalescer}产生, 节点为新树中子树的根.
+     */
+    CREATE_SUBTREE,
+
+    /**
+     * 删除整棵子树, 子树中的节点都被删除. 只由{@link EventCoalescer}产生, 节点为旧树中子树的根.
+     */
+    DELETE_SUBTREE
 }
@@ -0,0 +1,133 @@
+package com.pekall.util.tree.diff;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 按需前进的先序, 后序和层序迭代器, 只依赖{@link Node#children}, 适用于所有{@link Tree}的实现.
+ * <p>
+ *     迭代器每次只访问下一个节点, 调用方可以随时停止; 深度优先迭代器只保存从起始节点到当前节点的路径.
+ *     子节点列表不支持随机访问时使用其迭代器, 见{@link TraversalStack#nextChildNode()}. 迭代期间不能修改树.
+ * </p>
+ */
+final class NodeIterators {
+
+    private NodeIterators() {
+    }
+
+    static <T> Iterator<Node<T>> preOrder(Node<T> fromNode) {
+        if (fromNode == null) {
+            return Collections.emptyIterator();
+        }
+        return new PreOrderIterator<>(fromNode);
+    }
+
+    static <T> Iterator<Node<T>> postOrder(Node<T> fromNode) {
+        if (fromNode == null) {
+            return Collections.emptyIterator();
+        }
+        return new PostOrderIterator<>(fromNode);
+    }
+
+    static <T> Iterator<Node<T>> levelOrder(Node<T> fromNode) {
+        if (fromNode == null) {
+            return Collections.emptyIterator();
+        }
+        return new LevelOrderIterator<>(fromNode);
+    }
+
+    /**
+     * 先序迭代器. 下一个节点是栈顶节点的下一个子节点, 没有时出栈, 直到找到或栈空.
+     */
+    private static final class PreOrderIterator<T> implements Iterator<Node<T>> {
+
+        private final TraversalStack<T> stack = new TraversalStack<>();
+        private Node<T> next;
+
+        PreOrderIterator(Node<T> fromNode) {
+            next = fromNode;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Node<T> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Node<T> current = next;
+            stack.push(current);
+            next = null;
+            while (!stack.isEmpty()) {
+                next = stack.nextChildNode();
+                if (next != null) {
+                    break;
+                }
+                stack.pop();
+            }
+            return current;
+        }
+    }
+
+    /**
+     * 后序迭代器. 从栈顶节点沿下一个子节点下降到叶子, 子节点全部访问后出栈并返回该节点.
+     */
+    private static final class PostOrderIterator<T> implements Iterator<Node<T>> {
+
+        private final TraversalStack<T> stack = new TraversalStack<>();
+
+        PostOrderIterator(Node<T> fromNode) {
+            stack.push(fromNode);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public Node<T> next() {
+            if (stack.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            while (true) {
+                Node<T> child = stack.nextChildNode();
+                if (child == null) {
+                    return stack.pop();
+                }
+                stack.push(child);
+            }
+        }
+    }
+
+    /**
+     * 层序迭代器. 迭代器可能不被用完, 因此不复用线程缓存的队列.
+     */
+    private static final class LevelOrderIterator<T> implements Iterator<Node<T>> {
+
+        private final NodeQueue<T> queue = new NodeQueue<>();
+
+        LevelOrderIterator(Node<T> fromNode) {
+            queue.offer(fromNode);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public Node<T> next() {
+            if (queue.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            Node<T> current = queue.poll();
+            queue.offerChildren(current);
+            return current;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.pekall.util.tree.diff;
+
+import java.util.RandomAccess;
+
+/**
+ * 层序遍历使用的环形数组队列, 按线程复用.
+ * <p>
+ *     {@link #acquire()}取出当前线程缓存的队列, 没有缓存或缓存正在使用(如在访问者中嵌套遍历)时新建;
+ *     {@link #release()}清空后放回缓存. 因此稳定状态下层序遍历不产生垃圾.
+ *     容量超过{@link #MAX_CACHED_CAPACITY}的队列不缓存, 避免线程长期持有过大的数组.
+ * </p>
+ */
+final class NodeQueue<T> {
+
+    private static final int MIN_CAPACITY = 16;
+    static final int MAX_CACHED_CAPACITY = 1 << 20;
+
+    private static final ThreadLocal<NodeQueue<?>> CACHED = new ThreadLocal<>();
+
+    //容量为2的幂, 队首在head, 共size个元素
+    private Object[] elements = new Object[MIN_CAPACITY];
+    private int head;
+    private int size;
+
+    /**
+     * 取出当前线程缓存的空队列.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> NodeQueue<T> acquire() {
+        NodeQueue<?> queue = CACHED.get();
+        if (queue == null) {
+            return new NodeQueue<>();
+        }
+        CACHED.set(null);
+        return (NodeQueue<T>) queue;
+    }
+
+    /**
+     * 清空并放回当前线程的缓存, 之后不能再使用.
+     */
+    void release() {
+        clear();
+        if (elements.length <= MAX_CACHED_CAPACITY) {
+            CACHED.set(this);
+        }
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void offer(Node<T> node) {
+        if (size == elements.length) {
+            grow();
+        }
+        elements[(head + size) & (elements.length - 1)] = node;
+        size++;
+    }
+
+    /**
+     * 按下标将子节点加入队列, 不创建迭代器. 子节点列表不支持随机访问时使用其迭代器.
+     */
+    void offerChildren(Node<T> node) {
+        if (node.children == null) {
+            return;
+        }
+        if (node.children instanceof RandomAccess) {
+            for (int i = 0, count = node.children.size(); i < count; i++) {
+                offer(node.children.get(i));
+            }
+        } else {
+            for (Node<T> child : node.children) {
+                offer(child);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    Node<T> poll() {
+        Node<T> node = (Node<T>) elements[head];
+        elements[head] = null;
+        head = (head + 1) & (elements.length - 1);
+        size--;
+        return node;
+    }
+
+    /**
+     * 清空队列, 释放对节点的引用.
+     */
+    void clear() {
+        for (; size > 0; size--) {
+            elements[head] = null;
+            head = (head + 1) & (elements.length - 1);
+        }
+        head = 0;
+    }
+
+    private void grow() {
+        Object[] grown = new Object[elements.length * 2];
+        int first = elements.length - head;
+        System.arraycopy(elements, head, grown, 0, first);
+        System.arraycopy(elements, 0, grown, first, head);
+        elements = grown;
+        head = 0;
+    }
+}
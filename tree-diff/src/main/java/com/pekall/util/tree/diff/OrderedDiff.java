@@ -0,0 +1,145 @@
+package com.pekall.util.tree.diff;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * 考虑子节点顺序的树比较.
+ * <p>
+ *     先按{@link HashDiff}得到与{@link DiffAlgorithm#LEVEL}一致的事件, 再对两棵树中都存在的每个父节点,
+ *     取其在两棵树中都是该父节点子节点的节点(保留的子节点), 按新树中的顺序排列它们在旧树中的下标,
+ *     求最长递增子序列. 子序列中的节点相对顺序不变, 其余节点各产生一个{@link NodeEventType#REORDER}事件,
+ *     事件数即最少的兄弟移动次数. 每个父节点耗时O(k log k), k为保留的子节点数.
+ * </p>
+ * <p>
+ *     REORDER事件在所有其他事件之后, 按新树的层序排列, 节点为新树中的节点. 依次将每个REORDER节点移动到
+ *     新树中它之前最近的保留兄弟之后(没有时移到保留兄弟的最前), 保留的子节点即与新树的顺序一致.
+ *     新增和移入的子节点的位置由消费者按新树中的位置确定.
+ * </p>
+ */
+class OrderedDiff<T> {
+
+    private final Tree<T> myTree;
+    private final Tree<T> otherTree;
+
+    //旧树 key -> 节点, key -> 在父节点子节点中的下标
+    private final Map<T, Node<T>> myNodes = new HashMap<>();
+    private final Map<T, Integer> mySiblingIndexes = new HashMap<>();
+
+    //LIS的工作数组, 按最大的子节点数复用
+    private int[] oldIndexes = new int[16];
+    private int[] tails = new int[16];
+    private int[] predecessors = new int[16];
+    private boolean[] kept = new boolean[16];
+
+    OrderedDiff(Tree<T> myTree, Tree<T> otherTree) {
+        this.myTree = myTree;
+        this.otherTree = otherTree;
+    }
+
+    Queue<NodeEvent<T>> diff() {
+        Queue<NodeEvent<T>> nodeEvents = new HashDiff<>(myTree, otherTree).diff();
+
+        Iterator<List<Node<T>>> levels = myTree.levelIterator();
+        while (levels.hasNext()) {
+            for (Node<T> node : levels.next()) {
+                myNodes.put(node.key, node);
+                if (node.children != null) {
+                    for (int i = 0; i < node.children.size(); i++) {
+                        mySiblingIndexes.put(node.children.get(i).key, i);
+                    }
+                }
+            }
+        }
+
+        levels = otherTree.levelIterator();
+        while (levels.hasNext()) {
+            for (Node<T> node : levels.next()) {
+                if (node.children != null && node.children.size() > 1) {
+                    reorder(node, nodeEvents);
+                }
+            }
+        }
+        return nodeEvents;
+    }
+
+    /**
+     * 为新树中一个父节点的保留子节点生成REORDER事件.
+     */
+    private void reorder(Node<T> otherParent, Queue<NodeEvent<T>> nodeEvents) {
+        Node<T> myParent = myNodes.get(otherParent.key);
+        if (myParent == null || myParent.children == null || myParent.children.size() < 2) {
+            return;
+        }
+
+        List<Node<T>> children = otherParent.children;
+        ensureCapacity(children.size());
+
+        //保留的子节点在旧树中的下标, 不是保留的子节点为-1
+        int count = 0;
+        for (int i = 0; i < children.size(); i++) {
+            Node<T> myChild = myNodes.get(children.get(i).key);
+            boolean retained = myChild != null && myChild.parent != null && myChild.parent.key.equals(myParent.key);
+            oldIndexes[i] = retained ? mySiblingIndexes.get(myChild.key) : -1;
+            if (retained) {
+                count++;
+            }
+        }
+        if (count < 2) {
+            return;
+        }
+
+        markLongestIncreasing(children.size());
+        for (int i = 0; i < children.size(); i++) {
+            if (oldIndexes[i] >= 0 && !kept[i]) {
+                nodeEvents.add(new NodeEvent<>(NodeEventType.REORDER, children.get(i)));
+            }
+        }
+    }
+
+    /**
+     * 标记oldIndexes[0, size)中非负元素的一个最长递增子序列. tails[j]为长度j+1的递增子序列中末尾元素最小者的位置.
+     */
+    private void markLongestIncreasing(int size) {
+        int length = 0;
+        for (int i = 0; i < size; i++) {
+            kept[i] = false;
+            int value = oldIndexes[i];
+            if (value < 0) {
+                continue;
+            }
+            //二分查找第一个末尾不小于value的长度
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (oldIndexes[tails[middle]] < value) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            predecessors[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+        for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = predecessors[i]) {
+            kept[i] = true;
+        }
+    }
+
+    private void ensureCapacity(int size) {
+        if (oldIndexes.length < size) {
+            int capacity = Math.max(size, oldIndexes.length * 2);
+            oldIndexes = new int[capacity];
+            tails = new int[capacity];
+            predecessors = new int[capacity];
+            kept = new boolean[capacity];
+        }
+    }
+}
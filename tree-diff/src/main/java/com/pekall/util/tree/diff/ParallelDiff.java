@@ -0,0 +1,264 @@
+package com.pekall.util.tree.diff;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * 基于ForkJoinPool的并行树比较, 结果与{@link DiffAlgorithm#LEVEL}完全一致.
+ * <p>
+ *     先并行建立{@link DiffIndex}: 两棵树的 key -> 层号 索引, 以及按层自上而下计算的旧树节点删除层.
+ *     之后每一层的新增, 更新, 删除事件都可以独立确定.
+ *     各层按节点区间切分为子任务, 子任务的事件列表最后按层号和区间顺序拼接.
+ * </p>
+ * <p>
+ *     要求同一棵树内的key唯一. 比较期间两棵树都不能被修改.
+ * </p>
+ */
+public class ParallelDiff<T> {
+
+    /**
+     * {@link DiffAlgorithm#AUTO}下启用并行比较的节点总数.
+     */
+    public static final int PARALLEL_THRESHOLD = 100000;
+
+    //叶子任务处理的最大节点数
+    private static final int SEQUENTIAL_THRESHOLD = 1024;
+
+    /**
+     * 子任务对节点执行的操作.
+     */
+    private enum Phase {
+        INDEX_MY, INDEX_OTHER, REMOVED_LEVEL, CREATE, UPDATE, DELETE, ONLY_MY, ONLY_OTHER
+    }
+
+    private final Tree<T> myTree;
+    private final Tree<T> otherTree;
+    private final ForkJoinPool pool;
+    private final int sequentialThreshold;
+
+    private List<List<Node<T>>> myLevels;
+    private List<List<Node<T>>> otherLevels;
+    private int minDeep;
+
+    private DiffIndex<T> index;
+
+    ParallelDiff(Tree<T> myTree, Tree<T> otherTree, ForkJoinPool pool, int sequentialThreshold) {
+        this.myTree = myTree;
+        this.otherTree = otherTree;
+        this.pool = pool;
+        this.sequentialThreshold = sequentialThreshold;
+    }
+
+    /**
+     * 使用{@link ForkJoinPool#commonPool()}比较两棵树.
+     *
+     * @param myTree 旧树
+     * @param otherTree 新树
+     * @return 节点事件
+     */
+    public static <T> Queue<NodeEvent<T>> diff(Tree<T> myTree, Tree<T> otherTree) {
+        return diff(myTree, otherTree, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 使用指定的ForkJoinPool比较两棵树.
+     *
+     * @param myTree 旧树
+     * @param otherTree 新树
+     * @param pool 执行比较的线程池
+     * @return 节点事件
+     */
+    public static <T> Queue<NodeEvent<T>> diff(Tree<T> myTree, Tree<T> otherTree, ForkJoinPool pool) {
+        return new ParallelDiff<>(myTree, otherTree, pool, SEQUENTIAL_THRESHOLD).diff();
+    }
+
+    /**
+     * 两棵树的节点总数是否达到{@link #PARALLEL_THRESHOLD}.
+     */
+    static <T> boolean isLarge(Tree<T> myTree, Tree<T> otherTree) {
+        return size(myTree) + size(otherTree) >= PARALLEL_THRESHOLD;
+    }
+
+    private static <T> long size(Tree<T> tree) {
+        long size = 0;
+        Iterator<List<Node<T>>> levels = tree.levelIterator();
+        while (levels.hasNext()) {
+            size += levels.next().size();
+        }
+        return size;
+    }
+
+    Queue<NodeEvent<T>> diff() {
+        myLevels = levels(myTree);
+        otherLevels = levels(otherTree);
+        minDeep = Math.min(myLevels.size(), otherLevels.size());
+
+        index = new DiffIndex<>(myTree, otherTree, minDeep, NodeEquivalence.KEY,
+                new ConcurrentHashMap<Object, Integer>(), new ConcurrentHashMap<Object, Integer>(),
+                new ConcurrentHashMap<Object, Node<T>>(), new ConcurrentHashMap<Object, Integer>());
+
+        //MyTree直接使用其key索引, 不需要建立层索引
+        List<LevelTask<T>> indexTasks = new ArrayList<>();
+        for (int deep = 1; index.indexesMy() && deep <= myLevels.size(); deep++) {
+            indexTasks.add(task(Phase.INDEX_MY, deep, myLevels.get(deep - 1)));
+        }
+        for (int deep = 1; index.indexesOther() && deep <= otherLevels.size(); deep++) {
+            indexTasks.add(task(Phase.INDEX_OTHER, deep, otherLevels.get(deep - 1)));
+        }
+        if (!indexTasks.isEmpty()) {
+            runAll(indexTasks);
+        }
+
+        //删除层依赖父节点的结果, 按层依次计算. 较小的层直接在当前线程计算.
+        for (int deep = 1; deep <= myLevels.size(); deep++) {
+            LevelTask<T> task = task(Phase.REMOVED_LEVEL, deep, myLevels.get(deep - 1));
+            if (myLevels.get(deep - 1).size() > sequentialThreshold) {
+                runAll(Collections.singletonList(task));
+            } else {
+                task.compute();
+            }
+        }
+
+        List<LevelTask<T>> eventTasks = new ArrayList<>();
+        for (int deep = 1; deep <= minDeep; deep++) {
+            eventTasks.add(task(Phase.CREATE, deep, otherLevels.get(deep - 1)));
+            eventTasks.add(task(Phase.UPDATE, deep, myLevels.get(deep - 1)));
+            eventTasks.add(task(Phase.DELETE, deep, myLevels.get(deep - 1)));
+        }
+        if (myLevels.size() > minDeep) {
+            eventTasks.add(task(Phase.ONLY_MY, minDeep + 1, myLevels.get(minDeep)));
+        } else if (otherLevels.size() > minDeep) {
+            eventTasks.add(task(Phase.ONLY_OTHER, minDeep + 1, otherLevels.get(minDeep)));
+        }
+
+        LinkedList<NodeEvent<T>> nodeEvents = new LinkedList<>();
+        for (List<NodeEvent<T>> segment : runAll(eventTasks)) {
+            nodeEvents.addAll(segment);
+        }
+        return nodeEvents;
+    }
+
+    private LevelTask<T> task(Phase phase, int deep, List<Node<T>> nodes) {
+        return new LevelTask<>(index, sequentialThreshold, phase, deep, nodes, 0, nodes.size());
+    }
+
+    /**
+     * 并行执行任务, 按任务顺序返回所有事件片段.
+     */
+    private List<List<NodeEvent<T>>> runAll(final List<LevelTask<T>> tasks) {
+        return pool.invoke(new RecursiveTask<List<List<NodeEvent<T>>>>() {
+            @Override
+            protected List<List<NodeEvent<T>>> compute() {
+                invokeAll(tasks);
+                List<List<NodeEvent<T>>> segments = new ArrayList<>();
+                for (LevelTask<T> task : tasks) {
+                    segments.addAll(task.join());
+                }
+                return segments;
+            }
+        });
+    }
+
+    private static <T> List<List<Node<T>>> levels(Tree<T> tree) {
+        List<List<Node<T>>> levels = new ArrayList<>();
+        Iterator<List<Node<T>>> iterator = tree.levelIterator();
+        while (iterator.hasNext()) {
+            List<Node<T>> level = iterator.next();
+            levels.add(level instanceof RandomAccess ? level : new ArrayList<>(level));
+        }
+        return levels;
+    }
+
+    /**
+     * 处理一层中[from, to)区间的节点, 区间过大时对半拆分.
+     */
+    @SuppressWarnings("serial")
+    private static final class LevelTask<T> extends RecursiveTask<List<List<NodeEvent<T>>>> {
+
+        private final DiffIndex<T> index;
+        private final int sequentialThreshold;
+        private final Phase phase;
+        private final int deep;
+        private final List<Node<T>> nodes;
+        private final int from;
+        private final int to;
+
+        LevelTask(DiffIndex<T> index, int sequentialThreshold, Phase phase, int deep, List<Node<T>> nodes,
+                  int from, int to) {
+            this.index = index;
+            this.sequentialThreshold = sequentialThreshold;
+            this.phase = phase;
+            this.deep = deep;
+            this.nodes = nodes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<List<NodeEvent<T>>> compute() {
+            if (to - from > sequentialThreshold) {
+                int middle = (from + to) >>> 1;
+                LevelTask<T> left = new LevelTask<>(index, sequentialThreshold, phase, deep, nodes, from, middle);
+                LevelTask<T> right = new LevelTask<>(index, sequentialThreshold, phase, deep, nodes, middle, to);
+                left.fork();
+                List<List<NodeEvent<T>>> rightSegments = right.compute();
+                List<List<NodeEvent<T>>> segments = left.join();
+                segments.addAll(rightSegments);
+                return segments;
+            }
+
+            final List<NodeEvent<T>> events = new ArrayList<>();
+            NodeEventSink<T> sink = new NodeEventSink<T>() {
+                @Override
+                public void onEvent(NodeEvent<T> event) {
+                    events.add(event);
+                }
+            };
+            for (int i = from; i < to; i++) {
+                process(nodes.get(i), sink);
+            }
+            List<List<NodeEvent<T>>> segments = new ArrayList<>();
+            segments.add(events);
+            return segments;
+        }
+
+        private void process(Node<T> node, NodeEventSink<T> sink) {
+            switch (phase) {
+                case INDEX_MY:
+                    index.indexMy(node, deep);
+                    break;
+                case INDEX_OTHER:
+                    index.indexOther(node, deep);
+                    break;
+                case REMOVED_LEVEL:
+                    index.indexRemoved(node, deep);
+                    break;
+                case CREATE:
+                    index.create(node, deep, sink);
+                    break;
+                case UPDATE:
+                    index.update(node, sink);
+                    break;
+                case DELETE:
+                    index.delete(node, deep, sink);
+                    break;
+                case ONLY_MY:
+                    index.onlyMy(node, sink);
+                    break;
+                case ONLY_OTHER:
+                    index.onlyOther(node, sink);
+                    break;
+                default:
+                    throw new IllegalStateException("unknown phase " + phase);
+            }
+        }
+    }
+}
@@ -0,0 +1,605 @@
+package com.pekall.util.tree.diff;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.RandomAccess;
+import java.util.stream.Stream;
+
+/**
+ * 持久化的树, 修改不影响已有的版本, {@link #snapshot()}耗时O(1).
+ * <p>
+ *     每个版本由不可变的条目组成, 条目只保存key, 子节点数组, 子树的节点数, 高度和哈希, 不保存父节点和层号.
+ *     修改时只复制从被修改的节点到根节点路径上的条目, 其余子树在版本之间共享,
+ *     耗时与深度和路径上各节点的子节点数成正比: 移动子树不需要更新子孙, 删除子树另需从key索引中移除子孙.
+ * </p>
+ * <p>
+ *     {@link Tree}接口需要的Node视图在第一次访问时按版本创建, parent和level即该版本中的父节点和层号,
+ *     子树哈希取自条目, 不需要计算, 但与其他树一样只作为提示. 两个版本的{@link DiffAlgorithm#CHANGES_ONLY}比较
+ *     直接跳过共享同一条目的子树, 代价与变化成正比; 哈希相同而不共享的子树仍逐个比较key确认. 其余算法与{@link SnapshotTree}相同.
+ * </p>
+ * <p>
+ *     快照不能修改. 非线程安全, 视图的创建也不是线程安全的.
+ * </p>
+ */
+public class PersistentTree<T> implements Tree<T> {
+
+    private Version<T> version;
+
+    //当前版本的 key -> 父节点key, 根节点的父节点为null. 快照为null
+    private final Map<T, T> parentKeys;
+
+    public PersistentTree(T rootKey) {
+        if (rootKey == null) {
+            throw new IllegalArgumentException("key can't be null");
+        }
+        version = new Version<>(new Entry<>(rootKey, Entry.<T>none()));
+        parentKeys = new HashMap<>();
+        parentKeys.put(rootKey, null);
+    }
+
+    private PersistentTree(Version<T> version) {
+        this.version = version;
+        this.parentKeys = null;
+    }
+
+    /**
+     * 当前版本的只读快照, 与当前版本共享全部条目.
+     *
+     * @return 快照
+     */
+    public PersistentTree<T> snapshot() {
+        return new PersistentTree<>(version);
+    }
+
+    /**
+     * 节点数.
+     */
+    @Override
+    public int size() {
+        return version.root.size;
+    }
+
+    /**
+     * 两个节点是否为共享同一条目的视图, 即两个版本中完全相同的子树.
+     */
+    static boolean shared(Node<?> node, Node<?> other) {
+        return node instanceof View && other instanceof View && ((View<?>) node).entry == ((View<?>) other).entry;
+    }
+
+    @Override
+    public Node<T> getRoot() {
+        return version.root();
+    }
+
+    @Override
+    public int getDeep() {
+        return version.root.height;
+    }
+
+    @Override
+    public List<Node<T>> getByLevel(int level) {
+        if (level < 1 || level > getDeep()) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(version.levels().get(level - 1));
+    }
+
+    @Override
+    public Iterator<List<Node<T>>> levelIterator() {
+        final List<List<Node<T>>> levels = version.levels();
+        return new Iterator<List<Node<T>>>() {
+            private int level = 1;
+
+            @Override
+            public boolean hasNext() {
+                return level <= levels.size();
+            }
+
+            @Override
+            public List<Node<T>> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return Collections.unmodifiableList(levels.get(level++ - 1));
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * 添加节点.
+     *
+     * @param parent 父节点, 按key解析, 可以来自任意版本
+     * @param key 节点key
+     * @return 新版本中添加的节点
+     */
+    @Override
+    public Node<T> addNode(Node<T> parent, T key) {
+        if (parent == null) {
+            throw new IllegalArgumentException("parent can't be null");
+        }
+        T parentKey = resolve(parent);
+        if (key == null) {
+            throw new IllegalArgumentException("key can't be null");
+        }
+        if (parentKeys.containsKey(key)) {
+            throw new IllegalArgumentException("duplicate key " + key);
+        }
+
+        Path<T> path = path(parentKey);
+        Entry<T> target = path.target();
+        commit(path.replace(path.length() - 1,
+                target.splice(target.children.length, 0, Entry.one(new Entry<>(key, Entry.<T>none())))));
+        parentKeys.put(key, parentKey);
+        return version.find(path(key));
+    }
+
+    /**
+     * 删除节点, 子节点按原顺序移到其父节点下. 子节点的条目直接共享, 不需要复制.
+     */
+    @Override
+    public void removeNode(Node<T> node) {
+        T key = checkRemovable(node);
+        Path<T> path = path(key);
+        int last = path.length() - 1;
+        Entry<T> target = path.target();
+        commit(path.replace(last - 1, path.entries[last - 1].splice(path.indexes[last], 1, target.children)));
+
+        T parentKey = parentKeys.remove(key);
+        for (Entry<T> child : target.children) {
+            parentKeys.put(child.key, parentKey);
+        }
+    }
+
+    /**
+     * 删除节点及其全部子孙, 耗时另需与子树大小成正比, 用于维护key索引.
+     */
+    @Override
+    public void removeSubtree(Node<T> node) {
+        T key = checkRemovable(node);
+        Path<T> path = path(key);
+        int last = path.length() - 1;
+        commit(path.replace(last - 1, path.entries[last - 1].splice(path.indexes[last], 1, Entry.<T>none())));
+
+        Deque<Entry<T>> stack = new ArrayDeque<>();
+        stack.push(path.target());
+        while (!stack.isEmpty()) {
+            Entry<T> entry = stack.pop();
+            parentKeys.remove(entry.key);
+            for (Entry<T> child : entry.children) {
+                stack.push(child);
+            }
+        }
+    }
+
+    /**
+     * 将子树移到新的父节点下, 作为最后一个子节点. 子树的条目直接共享, 耗时与子树大小无关.
+     */
+    @Override
+    public void moveSubtree(Node<T> node, Node<T> newParent) {
+        if (newParent == null) {
+            throw new IllegalArgumentException("parent can't be null");
+        }
+        T key = resolve(node);
+        T parentKey = resolve(newParent);
+        for (T ancestor = parentKey; ancestor != null; ancestor = parentKeys.get(ancestor)) {
+            if (ancestor.equals(key)) {
+                throw new IllegalArgumentException("cycle at " + key);
+            }
+        }
+
+        Path<T> path = path(key);
+        int last = path.length() - 1;
+        Entry<T> target = path.target();
+        commit(path.replace(last - 1, path.entries[last - 1].splice(path.indexes[last], 1, Entry.<T>none())));
+        parentKeys.put(key, parentKey);
+
+        Path<T> parentPath = path(parentKey);
+        Entry<T> parent = parentPath.target();
+        commit(parentPath.replace(parentPath.length() - 1,
+                parent.splice(parent.children.length, 0, Entry.one(target))));
+    }
+
+    private void commit(Entry<T> root) {
+        version = new Version<>(root);
+    }
+
+    /**
+     * 参数节点的key, 可以来自任意版本, 但必须在当前版本中存在.
+     */
+    private T resolve(Node<T> node) {
+        if (parentKeys == null) {
+            throw new UnsupportedOperationException("snapshot is read-only");
+        }
+        if (node == null) {
+            throw new IllegalArgumentException("node can't be null");
+        }
+        if (!parentKeys.containsKey(node.key)) {
+            throw new IllegalArgumentException("node " + node.key + " doesn't exist");
+        }
+        return node.key;
+    }
+
+    private T checkRemovable(Node<T> node) {
+        T key = resolve(node);
+        if (parentKeys.get(key) == null) {
+            throw new IllegalArgumentException("can't remove root");
+        }
+        return key;
+    }
+
+    /**
+     * 当前版本中从根节点到key所在节点的路径.
+     */
+    @SuppressWarnings("unchecked")
+    private Path<T> path(T key) {
+        List<T> keys = new ArrayList<>();
+        for (T current = key; current != null; current = parentKeys.get(current)) {
+            keys.add(current);
+        }
+        Entry<T>[] entries = (Entry<T>[]) new Entry[keys.size()];
+        int[] indexes = new int[keys.size()];
+        entries[0] = version.root;
+        for (int i = 1; i < entries.length; i++) {
+            Entry<T> parent = entries[i - 1];
+            indexes[i] = parent.indexOf(keys.get(keys.size() - 1 - i));
+            entries[i] = parent.children[indexes[i]];
+        }
+        return new Path<>(entries, indexes);
+    }
+
+    @Override
+    public void preOrderTraverse(Node<T> fromNode, Visitor<T> visitor) {
+        if (fromNode == null) {
+            return;
+        }
+        Deque<Node<T>> stack = new ArrayDeque<>();
+        stack.push(fromNode);
+        while (!stack.isEmpty()) {
+            Node<T> node = stack.pop();
+            visitor.visit(node);
+            if (node.children != null) {
+                for (int i = node.children.size() - 1; i >= 0; i--) {
+                    stack.push(node.children.get(i));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void postOrderTraverse(Node<T> fromNode, Visitor<T> visitor) {
+        if (fromNode == null) {
+            return;
+        }
+        //逆先序(先右子节点)的倒序即后序
+        Deque<Node<T>> stack = new ArrayDeque<>();
+        Deque<Node<T>> reversed = new ArrayDeque<>();
+        stack.push(fromNode);
+        while (!stack.isEmpty()) {
+            Node<T> node = stack.pop();
+            reversed.push(node);
+            if (node.children != null) {
+                for (int i = 0; i < node.children.size(); i++) {
+                    stack.push(node.children.get(i));
+                }
+            }
+        }
+        while (!reversed.isEmpty()) {
+            visitor.visit(reversed.pop());
+        }
+    }
+
+    @Override
+    public void levelTraverse(Node<T> fromNode, Visitor<T> visitor) {
+        if (fromNode == null) {
+            return;
+        }
+        Deque<Node<T>> queue = new ArrayDeque<>();
+        queue.offer(fromNode);
+        while (!queue.isEmpty()) {
+            Node<T> node = queue.poll();
+            visitor.visit(node);
+            if (node.children != null) {
+                queue.addAll(node.children);
+            }
+        }
+    }
+
+    @Override
+    public void levelStopTraverse(Node<T> fromNode, StopVisitor<T> visitor) {
+        if (fromNode == null) {
+            return;
+        }
+        Deque<Node<T>> queue = new ArrayDeque<>();
+        queue.offer(fromNode);
+        while (!queue.isEmpty() && !visitor.stopNow()) {
+            Node<T> node = queue.poll();
+            visitor.visit(node);
+            if (node.children != null) {
+                queue.addAll(node.children);
+            }
+        }
+    }
+
+    /**
+     * 视图的创建不是线程安全的, 先在当前线程创建全部视图, 各线程只读取已创建的视图.
+     */
+    @Override
+    public Stream<Node<T>> parallelStream() {
+        version.levels();
+        return Tree.super.parallelStream();
+    }
+
+    @Override
+    public Queue<NodeEvent<T>> diff(Tree<T> other) {
+        return diff(other, DiffAlgorithm.LEVEL);
+    }
+
+    /**
+     * 使用指定算法比较与另一棵树的不同.
+     * <p>
+     *     {@link DiffAlgorithm#CHANGES_ONLY}跳过未变化的子树, 与同一棵树的其他版本比较时按引用判定共享的子树;
+     *     {@link DiffAlgorithm#ORDERED}追加顺序变化; 其余算法的结果相同, 都由{@link #diff(Tree, NodeEventSink)}在当前线程完成.
+     * </p>
+     */
+    @Override
+    public Queue<NodeEvent<T>> diff(Tree<T> other, DiffAlgorithm algorithm) {
+        if (algorithm == DiffAlgorithm.CHANGES_ONLY) {
+            return new MerkleDiff<>(this, other).diff();
+        }
+        if (algorithm == DiffAlgorithm.ORDERED) {
+            return new OrderedDiff<>(this, other).diff();
+        }
+        final LinkedList<NodeEvent<T>> nodeEvents = new LinkedList<>();
+        diff(other, new NodeEventSink<T>() {
+            @Override
+            public void onEvent(NodeEvent<T> event) {
+                nodeEvents.add(event);
+            }
+        });
+        return nodeEvents;
+    }
+
+    @Override
+    public void diff(Tree<T> other, NodeEventSink<T> sink) {
+        new StreamingDiff<>(this, other).diff(sink);
+    }
+
+    @Override
+    public void diff(Tree<T> other, NodeEquivalence<? super T> equivalence, NodeEventSink<T> sink) {
+        new StreamingDiff<>(this, other, equivalence).diff(sink);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder s = new StringBuilder();
+        preOrderTraverse(getRoot(), new Visitor<T>() {
+            @Override
+            public void visit(Node<T> node) {
+                for (int i = 1; i < node.level; i++) {
+                    s.append('\t');
+                }
+                s.append(node.key).append('\n');
+            }
+        });
+        return s.toString();
+    }
+
+    /**
+     * 不可变的条目, 可以被多个版本共享.
+     */
+    private static final class Entry<T> {
+
+        private static final Entry<?>[] NONE = new Entry<?>[0];
+
+        private final T key;
+        private final Entry<T>[] children;
+        private final int size;
+        private final int height;
+        private final long hash;
+
+        Entry(T key, Entry<T>[] children) {
+            this.key = key;
+            this.children = children;
+            int size = 1;
+            int height = 0;
+            long hash = SubtreeHash.leaf(key);
+            for (Entry<T> child : children) {
+                size += child.size;
+                height = Math.max(height, child.height);
+                hash = SubtreeHash.combine(hash, child.hash);
+            }
+            this.size = size;
+            this.height = height + 1;
+            this.hash = hash;
+        }
+
+        @SuppressWarnings("unchecked")
+        static <T> Entry<T>[] none() {
+            return (Entry<T>[]) NONE;
+        }
+
+        @SuppressWarnings("unchecked")
+        static <T> Entry<T>[] one(Entry<T> entry) {
+            Entry<T>[] entries = (Entry<T>[]) new Entry[1];
+            entries[0] = entry;
+            return entries;
+        }
+
+        int indexOf(T key) {
+            for (int i = 0; i < children.length; i++) {
+                if (children[i].key.equals(key)) {
+                    return i;
+                }
+            }
+            throw new IllegalStateException("child " + key + " of " + this.key + " doesn't exist");
+        }
+
+        /**
+         * 复制条目, 子节点从index开始的removed个替换为inserted.
+         */
+        @SuppressWarnings("unchecked")
+        Entry<T> splice(int index, int removed, Entry<T>[] inserted) {
+            Entry<T>[] spliced = (Entry<T>[]) new Entry[children.length - removed + inserted.length];
+            System.arraycopy(children, 0, spliced, 0, index);
+            System.arraycopy(inserted, 0, spliced, index, inserted.length);
+            System.arraycopy(children, index + removed, spliced, index + inserted.length,
+                    children.length - index - removed);
+            return new Entry<>(key, spliced);
+        }
+    }
+
+    /**
+     * 从根节点开始的条目路径, indexes[i]为entries[i]在entries[i - 1]中的下标.
+     */
+    private static final class Path<T> {
+
+        private final Entry<T>[] entries;
+        private final int[] indexes;
+
+        Path(Entry<T>[] entries, int[] indexes) {
+            this.entries = entries;
+            this.indexes = indexes;
+        }
+
+        int length() {
+            return entries.length;
+        }
+
+        Entry<T> target() {
+            return entries[entries.length - 1];
+        }
+
+        /**
+         * 以replacement替换第depth个条目, 复制其祖先, 返回新的根条目.
+         */
+        Entry<T> replace(int depth, Entry<T> replacement) {
+            Entry<T> entry = replacement;
+            for (int i = depth; i > 0; i--) {
+                entry = entries[i - 1].splice(indexes[i], 1, one(entry));
+            }
+            return entry;
+        }
+
+        private static <T> Entry<T>[] one(Entry<T> entry) {
+            return Entry.one(entry);
+        }
+    }
+
+    /**
+     * 一个版本的根条目, 以及按需创建的视图和层.
+     */
+    private static final class Version<T> {
+
+        private final Entry<T> root;
+        private View<T> rootView;
+        private List<List<Node<T>>> levels;
+
+        Version(Entry<T> root) {
+            this.root = root;
+        }
+
+        View<T> root() {
+            if (rootView == null) {
+                rootView = new View<>(root, null);
+            }
+            return rootView;
+        }
+
+        /**
+         * 路径末端条目的视图, 只创建路径上的视图.
+         */
+        Node<T> find(Path<T> path) {
+            Node<T> node = root();
+            for (int i = 1; i < path.length(); i++) {
+                node = node.children.get(path.indexes[i]);
+            }
+            return node;
+        }
+
+        List<List<Node<T>>> levels() {
+            if (levels == null) {
+                List<List<Node<T>>> result = new ArrayList<>(root.height);
+                List<Node<T>> level = new ArrayList<>(1);
+                level.add(root());
+                while (!level.isEmpty()) {
+                    result.add(level);
+                    List<Node<T>> next = new ArrayList<>();
+                    for (Node<T> node : level) {
+                        if (node.children != null) {
+                            next.addAll(node.children);
+                        }
+                    }
+                    level = next;
+                }
+                levels = result;
+            }
+            return levels;
+        }
+    }
+
+    /**
+     * 条目在一个版本中的Node视图.
+     */
+    private static final class View<T> extends Node<T> {
+
+        private final Entry<T> entry;
+
+        View(Entry<T> entry, View<T> parent) {
+            super(entry.key);
+            this.entry = entry;
+            this.parent = parent;
+            this.level = parent == null ? 1 : parent.level + 1;
+            this.subtreeHash = entry.hash;
+            this.subtreeHashValid = true;
+            if (entry.children.length > 0) {
+                this.children = new ViewChildren<>(this);
+            }
+        }
+    }
+
+    /**
+     * 子节点视图列表, 视图在第一次访问时创建.
+     */
+    private static final class ViewChildren<T> extends AbstractList<Node<T>> implements RandomAccess {
+
+        private final View<T> owner;
+        private final View<T>[] views;
+
+        @SuppressWarnings("unchecked")
+        ViewChildren(View<T> owner) {
+            this.owner = owner;
+            this.views = (View<T>[]) new View[owner.entry.children.length];
+        }
+
+        @Override
+        public Node<T> get(int index) {
+            if (index < 0 || index >= views.length) {
+                throw new IndexOutOfBoundsException("index: " + index);
+            }
+            if (views[index] == null) {
+                views[index] = new View<>(owner.entry.children[index], owner);
+            }
+            return views[index];
+        }
+
+        @Override
+        public int size() {
+            return views.length;
+        }
+    }
+}
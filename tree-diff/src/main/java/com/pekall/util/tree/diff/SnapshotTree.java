@@ -0,0 +1,577 @@
+package com.pekall.util.tree.diff;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.RandomAccess;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 直接读取快照映射的只读树, 格式见{@link TreeSnapshot}.
+ * <p>
+ *     拓扑和key都从映射中按需读取. {@link Tree}接口需要的Node视图在访问时创建, 由父节点视图的子节点列表缓存,
+ *     树只弱引用根节点视图: 调用方不再持有任何视图后, 全部视图都可以被回收, 下次访问时重新创建.
+ *     按句柄查询视图需要从根节点逐层找到它, 耗时与层号成正比; 遍历沿视图的父子关系移动, 不需要查询.
+ * </p>
+ * <p>
+ *     快照带有子树哈希列时视图的哈希直接取自该列. {@link DiffAlgorithm#CHANGES_ONLY}确认子树未变化时按句柄遍历,
+ *     与另一个使用同一{@link KeyCodec}的快照比较时直接比较映射中key的字节, 都不创建视图,
+ *     因此只为变化的节点及其子节点创建视图. 没有哈希列时计算哈希仍需为每个节点创建视图.
+ * </p>
+ * <p>
+ *     不能添加节点. 视图的创建不是线程安全的.
+ * </p>
+ */
+public class SnapshotTree<T> implements Tree<T> {
+
+    private static final int NO_NODE = -1;
+
+    private final ByteBuffer buffer;
+    private final KeyCodec<T> codec;
+    private final int size;
+    private final int deep;
+
+    //各段在映射中的起始位置
+    private final int levelStarts;
+    private final int parents;
+    private final int firstChildren;
+    private final int childCounts;
+    private final int keyOffsets;
+    private final int subtreeHashes;
+    private final int keys;
+
+    //根节点视图. 视图引用父节点视图, 因此调用方持有任一视图时根节点视图不会被回收
+    private WeakReference<SnapshotNode<T>> root = new WeakReference<>(null);
+
+    SnapshotTree(ByteBuffer buffer, KeyCodec<T> codec) throws IOException {
+        this.buffer = buffer;
+        this.codec = codec;
+        if (buffer.capacity() < TreeSnapshot.HEADER_BYTES || buffer.getInt(0) != TreeSnapshot.MAGIC) {
+            throw new IOException("not a tree snapshot");
+        }
+        if (buffer.getInt(4) != TreeSnapshot.VERSION) {
+            throw new IOException("unsupported snapshot version " + buffer.getInt(4));
+        }
+        int flags = buffer.getInt(8);
+        size = buffer.getInt(12);
+        deep = buffer.getInt(16);
+        int keyBytes = buffer.getInt(20);
+
+        levelStarts = TreeSnapshot.HEADER_BYTES;
+        parents = levelStarts + 4 * (deep + 1);
+        firstChildren = parents + 4 * size;
+        childCounts = firstChildren + 4 * size;
+        keyOffsets = childCounts + 4 * size;
+        boolean hashes = (flags & TreeSnapshot.FLAG_SUBTREE_HASHES) != 0;
+        subtreeHashes = hashes ? keyOffsets + 4 * (size + 1) : NO_NODE;
+        keys = keyOffsets + 4 * (size + 1) + (hashes ? 8 * size : 0);
+        if (size < 1 || keys + (long) keyBytes != buffer.capacity()) {
+            throw new IOException("corrupted tree snapshot");
+        }
+    }
+
+    /**
+     * 节点数.
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 是否带有子树哈希列.
+     */
+    public boolean hasSubtreeHashes() {
+        return subtreeHashes != NO_NODE;
+    }
+
+    private int levelStart(int index) {
+        return buffer.getInt(levelStarts + 4 * index);
+    }
+
+    private int parent(int node) {
+        return buffer.getInt(parents + 4 * node);
+    }
+
+    private int firstChild(int node) {
+        return buffer.getInt(firstChildren + 4 * node);
+    }
+
+    private int childCount(int node) {
+        return buffer.getInt(childCounts + 4 * node);
+    }
+
+    private int nextSibling(int node) {
+        int parent = parent(node);
+        if (parent == NO_NODE || node + 1 >= firstChild(parent) + childCount(parent)) {
+            return NO_NODE;
+        }
+        return node + 1;
+    }
+
+    private int keyOffset(int node) {
+        return buffer.getInt(keyOffsets + 4 * node);
+    }
+
+    private T key(int node) {
+        int offset = keyOffset(node);
+        return codec.decode(buffer, keys + offset, keyOffset(node + 1) - offset);
+    }
+
+    /**
+     * 本快照的节点与另一个快照的节点key是否相同. 编码方式相同时直接比较映射中的字节, 不解码.
+     */
+    private boolean sameKey(int node, SnapshotTree<T> other, int otherNode) {
+        if (codec != other.codec) {
+            return key(node).equals(other.key(otherNode));
+        }
+        int offset = keys + keyOffset(node);
+        int length = keys + keyOffset(node + 1) - offset;
+        int otherOffset = other.keys + other.keyOffset(otherNode);
+        if (other.keys + other.keyOffset(otherNode + 1) - otherOffset != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(offset + i) != other.buffer.get(otherOffset + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 查询节点的Node视图. 从根节点视图逐层查找, 耗时与层号成正比, 未创建的视图在查找时创建.
+     *
+     * @param node 节点编号, 即层序遍历中的位置
+     * @return Node视图
+     */
+    public Node<T> getNode(int node) {
+        if (node < 0 || node >= size) {
+            throw new IllegalArgumentException("node " + node + " doesn't exist");
+        }
+        int[] path = new int[16];
+        int count = 0;
+        for (int current = node; parent(current) != NO_NODE; current = parent(current)) {
+            if (count == path.length) {
+                path = Arrays.copyOf(path, count * 2);
+            }
+            path[count++] = current;
+        }
+        SnapshotNode<T> view = root();
+        for (int i = count - 1; i >= 0; i--) {
+            view = view.child(path[i] - firstChild(view.handle));
+        }
+        return view;
+    }
+
+    private SnapshotNode<T> root() {
+        SnapshotNode<T> view = root.get();
+        if (view == null) {
+            view = new SnapshotNode<>(this, 0, null);
+            root = new WeakReference<>(view);
+        }
+        return view;
+    }
+
+    @SuppressWarnings("unchecked")
+    private SnapshotNode<T> view(Node<T> node) {
+        if (node instanceof SnapshotNode && ((SnapshotNode<?>) node).tree == this) {
+            return (SnapshotNode<T>) node;
+        }
+        throw new IllegalArgumentException("node " + node + " doesn't belong to this tree");
+    }
+
+    @Override
+    public Node<T> getRoot() {
+        return root();
+    }
+
+    @Override
+    public int getDeep() {
+        return deep;
+    }
+
+    @Override
+    public List<Node<T>> getByLevel(int level) {
+        if (level < 1 || level > deep) {
+            return Collections.emptyList();
+        }
+        return new NodeRange<>(this, levelStart(level - 1), levelStart(level));
+    }
+
+    @Override
+    public Iterator<List<Node<T>>> levelIterator() {
+        return new Iterator<List<Node<T>>>() {
+            private int level = 1;
+
+            @Override
+            public boolean hasNext() {
+                return level <= deep;
+            }
+
+            @Override
+            public List<Node<T>> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return getByLevel(level++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public Node<T> addNode(Node<T> parent, T key) {
+        throw new UnsupportedOperationException("snapshot is read-only");
+    }
+
+    @Override
+    public void removeNode(Node<T> node) {
+        throw new UnsupportedOperationException("snapshot is read-only");
+    }
+
+    @Override
+    public void removeSubtree(Node<T> node) {
+        throw new UnsupportedOperationException("snapshot is read-only");
+    }
+
+    @Override
+    public void moveSubtree(Node<T> node, Node<T> newParent) {
+        throw new UnsupportedOperationException("snapshot is read-only");
+    }
+
+    @Override
+    public void preOrderTraverse(Node<T> fromNode, Visitor<T> visitor) {
+        if (fromNode == null) {
+            return;
+        }
+        SnapshotNode<T> from = view(fromNode);
+        SnapshotNode<T> node = from;
+        while (true) {
+            visitor.visit(node);
+            if (childCount(node.handle) > 0) {
+                node = node.child(0);
+                continue;
+            }
+            while (node != from && nextSibling(node.handle) == NO_NODE) {
+                node = (SnapshotNode<T>) node.parent;
+            }
+            if (node == from) {
+                return;
+            }
+            node = nextSibling(node);
+        }
+    }
+
+    @Override
+    public void postOrderTraverse(Node<T> fromNode, Visitor<T> visitor) {
+        if (fromNode == null) {
+            return;
+        }
+        SnapshotNode<T> from = view(fromNode);
+        SnapshotNode<T> node = firstLeaf(from);
+        while (true) {
+            visitor.visit(node);
+            if (node == from) {
+                return;
+            }
+            node = nextSibling(node.handle) != NO_NODE ? firstLeaf(nextSibling(node)) : (SnapshotNode<T>) node.parent;
+        }
+    }
+
+    private SnapshotNode<T> firstLeaf(SnapshotNode<T> node) {
+        while (childCount(node.handle) > 0) {
+            node = node.child(0);
+        }
+        return node;
+    }
+
+    private SnapshotNode<T> nextSibling(SnapshotNode<T> node) {
+        SnapshotNode<T> parent = (SnapshotNode<T>) node.parent;
+        return parent.child(node.handle + 1 - firstChild(parent.handle));
+    }
+
+    @Override
+    public void levelTraverse(Node<T> fromNode, Visitor<T> visitor) {
+        levelTraverse(fromNode, visitor, null);
+    }
+
+    @Override
+    public void levelStopTraverse(Node<T> fromNode, StopVisitor<T> visitor) {
+        levelTraverse(fromNode, visitor, visitor);
+    }
+
+    private void levelTraverse(Node<T> fromNode, Visitor<T> visitor, StopVisitor<T> stopVisitor) {
+        if (fromNode == null) {
+            return;
+        }
+        Deque<SnapshotNode<T>> queue = new ArrayDeque<>();
+        queue.add(view(fromNode));
+        while (!queue.isEmpty()) {
+            if (stopVisitor != null && stopVisitor.stopNow()) {
+                return;
+            }
+            SnapshotNode<T> node = queue.poll();
+            visitor.visit(node);
+            for (int i = 0; i < childCount(node.handle); i++) {
+                queue.add(node.child(i));
+            }
+        }
+    }
+
+    /**
+     * 视图的创建不是线程安全的, 先在当前线程创建全部视图, 各线程只读取已创建的视图. 流持有根节点视图, 遍历期间视图不会被回收.
+     */
+    @Override
+    public Stream<Node<T>> parallelStream() {
+        SnapshotNode<T> root = root();
+        preOrderTraverse(root, new Visitor<T>() {
+            @Override
+            public void visit(Node<T> node) {
+            }
+        });
+        return StreamSupport.stream(new SubtreeSpliterator<>(root, size), true);
+    }
+
+    @Override
+    public Queue<NodeEvent<T>> diff(Tree<T> other) {
+        return diff(other, DiffAlgorithm.LEVEL);
+    }
+
+    /**
+     * 使用指定算法比较与另一棵树的不同.
+     * <p>
+     *     {@link DiffAlgorithm#CHANGES_ONLY}利用子树哈希跳过未变化的子树, 按句柄确认子树未变化, 只为变化的节点及其子节点创建视图;
+     *     {@link DiffAlgorithm#ORDERED}追加顺序变化. 其余算法的结果相同, 都由{@link #diff(Tree, NodeEventSink)}在当前线程完成,
+     *     需要为每个节点创建视图.
+     * </p>
+     */
+    @Override
+    public Queue<NodeEvent<T>> diff(Tree<T> other, DiffAlgorithm algorithm) {
+        if (algorithm == DiffAlgorithm.CHANGES_ONLY) {
+            return new MerkleDiff<>(this, other).diff();
+        }
+        if (algorithm == DiffAlgorithm.ORDERED) {
+            return new OrderedDiff<>(this, other).diff();
+        }
+        final LinkedList<NodeEvent<T>> nodeEvents = new LinkedList<>();
+        diff(other, new NodeEventSink<T>() {
+            @Override
+            public void onEvent(NodeEvent<T> event) {
+                nodeEvents.add(event);
+            }
+        });
+        return nodeEvents;
+    }
+
+    @Override
+    public void diff(Tree<T> other, NodeEventSink<T> sink) {
+        new StreamingDiff<>(this, other).diff(sink);
+    }
+
+    @Override
+    public void diff(Tree<T> other, NodeEquivalence<? super T> equivalence, NodeEventSink<T> sink) {
+        new StreamingDiff<>(this, other, equivalence).diff(sink);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder s = new StringBuilder();
+        preOrderTraverse(getRoot(), new Visitor<T>() {
+            @Override
+            public void visit(Node<T> node) {
+                for (int i = 1; i < node.level; i++) {
+                    s.append('\t');
+                }
+                s.append(node.key).append('\n');
+            }
+        });
+        return s.toString();
+    }
+
+    /**
+     * 是否为快照的Node视图.
+     */
+    static boolean isView(Node<?> node) {
+        return node instanceof SnapshotNode;
+    }
+
+    /**
+     * 两棵子树的key和结构是否完全相同, 至少一个节点是快照的视图. 由{@link SubtreeHash#equal(Node, Node)}在哈希相同后调用.
+     * <p>
+     *     快照一侧按句柄遍历, 不创建视图. 两侧都是快照时逐个比较key, 编码方式相同时比较映射中的字节.
+     * </p>
+     */
+    @SuppressWarnings("unchecked")
+    static <T> boolean sameSubtree(Node<T> node, Node<T> other) {
+        if (!isView(node)) {
+            return sameSubtree(other, node);
+        }
+        SnapshotNode<T> view = (SnapshotNode<T>) node;
+        if (isView(other)) {
+            SnapshotNode<T> otherView = (SnapshotNode<T>) other;
+            return view.tree.sameSubtree(view.handle, otherView.tree, otherView.handle);
+        }
+        return view.tree.sameSubtree(view.handle, other);
+    }
+
+    private boolean sameSubtree(int node, SnapshotTree<T> other, int otherNode) {
+        //待比较的节点对, 子节点编号连续, 按下标一一对应
+        int[] stack = new int[32];
+        int top = 0;
+        stack[top++] = node;
+        stack[top++] = otherNode;
+        while (top > 0) {
+            int otherCurrent = stack[--top];
+            int current = stack[--top];
+            int count = childCount(current);
+            if (count != other.childCount(otherCurrent) || !sameKey(current, other, otherCurrent)) {
+                return false;
+            }
+            if (top + 2 * count > stack.length) {
+                stack = Arrays.copyOf(stack, Math.max(stack.length * 2, top + 2 * count));
+            }
+            for (int i = 0; i < count; i++) {
+                stack[top++] = firstChild(current) + i;
+                stack[top++] = other.firstChild(otherCurrent) + i;
+            }
+        }
+        return true;
+    }
+
+    private boolean sameSubtree(int node, Node<T> other) {
+        int[] stack = new int[16];
+        Deque<Node<T>> others = new ArrayDeque<>();
+        int top = 0;
+        stack[top++] = node;
+        others.push(other);
+        while (top > 0) {
+            int current = stack[--top];
+            Node<T> otherCurrent = others.pop();
+            int count = childCount(current);
+            int otherCount = otherCurrent.children == null ? 0 : otherCurrent.children.size();
+            if (count != otherCount || !key(current).equals(otherCurrent.key)) {
+                return false;
+            }
+            if (top + count > stack.length) {
+                stack = Arrays.copyOf(stack, Math.max(stack.length * 2, top + count));
+            }
+            int child = firstChild(current);
+            for (Node<T> otherChild : count == 0 ? Collections.<Node<T>>emptyList() : otherCurrent.children) {
+                stack[top++] = child++;
+                others.push(otherChild);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 节点的Node视图, 子节点的视图由子节点列表在第一次访问时创建并缓存.
+     */
+    private static final class SnapshotNode<T> extends Node<T> {
+
+        private final SnapshotTree<T> tree;
+        private final int handle;
+        private final ChildViews<T> childViews;
+
+        SnapshotNode(SnapshotTree<T> tree, int handle, SnapshotNode<T> parent) {
+            super(tree.key(handle));
+            this.tree = tree;
+            this.handle = handle;
+            this.parent = parent;
+            this.level = parent == null ? 1 : parent.level + 1;
+            this.childViews = new ChildViews<>(this, tree.firstChild(handle), tree.childCount(handle));
+            this.children = childViews;
+            //哈希列只作为提示, 跳过子树前由SubtreeHash.equal比较key确认
+            if (tree.hasSubtreeHashes()) {
+                this.subtreeHash = tree.buffer.getLong(tree.subtreeHashes + 8 * handle);
+                this.subtreeHashValid = true;
+            }
+        }
+
+        SnapshotNode<T> child(int index) {
+            return childViews.get(index);
+        }
+    }
+
+    /**
+     * 视图的只读子节点列表, 子节点视图在第一次访问时创建, 随列表一起被回收.
+     */
+    private static final class ChildViews<T> extends AbstractList<Node<T>> implements RandomAccess {
+
+        private final SnapshotNode<T> owner;
+        private final int first;
+        private final int size;
+        private SnapshotNode<T>[] views;
+
+        ChildViews(SnapshotNode<T> owner, int first, int size) {
+            this.owner = owner;
+            this.first = first;
+            this.size = size;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public SnapshotNode<T> get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("index: " + index);
+            }
+            if (views == null) {
+                views = (SnapshotNode<T>[]) new SnapshotNode[size];
+            }
+            if (views[index] == null) {
+                views[index] = new SnapshotNode<>(owner.tree, first + index, owner);
+            }
+            return views[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * 一层节点的只读视图, 对应编号的[from, to)区间.
+     */
+    private static final class NodeRange<T> extends AbstractList<Node<T>> implements RandomAccess {
+
+        private final SnapshotTree<T> tree;
+        private final int from;
+        private final int to;
+
+        NodeRange(SnapshotTree<T> tree, int from, int to) {
+            this.tree = tree;
+            this.from = from;
+            this.to = Math.max(from, to);
+        }
+
+        @Override
+        public Node<T> get(int index) {
+            if (index < 0 || index >= to - from) {
+                throw new IndexOutOfBoundsException("index: " + index);
+            }
+            return tree.getNode(from + index);
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+}
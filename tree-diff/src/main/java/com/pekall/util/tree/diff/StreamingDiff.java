@@ -0,0 +1,93 @@
+package com.pekall.util.tree.diff;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 流式树比较, 事件按{@link DiffAlgorithm#LEVEL}的顺序逐个推送给{@link NodeEventSink}.
+ * <p>
+ *     先建立{@link DiffIndex}, 此后每个事件在生成时就是最终结果, 因此不需要缓存任何事件,
+ *     内存占用只有索引本身, 与事件数量无关.
+ *     两棵树都是{@link MyTree}且以key为标识时, 复用树自身的key索引和层号, 只为删除的节点另建索引.
+ * </p>
+ * <p>
+ *     节点按{@link NodeEquivalence}匹配, 只有内容变化的节点产生UPDATE事件. 默认以key为标识, 不比较内容.
+ * </p>
+ */
+class StreamingDiff<T> {
+
+    private final Tree<T> myTree;
+    private final Tree<T> otherTree;
+    private final NodeEquivalence<? super T> equivalence;
+
+    StreamingDiff(Tree<T> myTree, Tree<T> otherTree) {
+        this(myTree, otherTree, NodeEquivalence.KEY);
+    }
+
+    StreamingDiff(Tree<T> myTree, Tree<T> otherTree, NodeEquivalence<? super T> equivalence) {
+        this.myTree = myTree;
+        this.otherTree = otherTree;
+        this.equivalence = equivalence;
+    }
+
+    void diff(NodeEventSink<T> sink) {
+        int myDeep = myTree.getDeep();
+        int otherDeep = otherTree.getDeep();
+        int minDeep = Math.min(myDeep, otherDeep);
+
+        DiffIndex<T> index = new DiffIndex<>(myTree, otherTree, minDeep, equivalence, new HashMap<Object, Integer>(),
+                new HashMap<Object, Integer>(), new HashMap<Object, Node<T>>(), new HashMap<Object, Integer>());
+
+        //MyTree以key为标识时直接使用其key索引, 不需要前两遍
+        Iterator<List<Node<T>>> levels;
+        if (index.indexesMy()) {
+            levels = myTree.levelIterator();
+            for (int deep = 1; levels.hasNext(); deep++) {
+                for (Node<T> node : levels.next()) {
+                    index.indexMy(node, deep);
+                }
+            }
+        }
+        if (index.indexesOther()) {
+            levels = otherTree.levelIterator();
+            for (int deep = 1; levels.hasNext(); deep++) {
+                for (Node<T> node : levels.next()) {
+                    index.indexOther(node, deep);
+                }
+            }
+        }
+        levels = myTree.levelIterator();
+        for (int deep = 1; levels.hasNext(); deep++) {
+            for (Node<T> node : levels.next()) {
+                index.indexRemoved(node, deep);
+            }
+        }
+
+        //deal with levels they both have.
+        for (int deep = 1; deep <= minDeep; deep++) {
+            for (Node<T> node : otherTree.getByLevel(deep)) {
+                index.create(node, deep, sink);
+            }
+            List<Node<T>> myNodes = myTree.getByLevel(deep);
+            for (Node<T> node : myNodes) {
+                index.update(node, sink);
+            }
+            for (Node<T> node : myNodes) {
+                index.delete(node, deep, sink);
+            }
+        }
+
+        if (myDeep > minDeep) {
+            //deal with levels only my tree have
+            for (Node<T> node : myTree.getByLevel(minDeep + 1)) {
+                index.onlyMy(node, sink);
+            }
+        } else if (otherDeep > minDeep) {
+            //deal with levels only other tree have
+            for (Node<T> node : otherTree.getByLevel(minDeep + 1)) {
+                index.onlyOther(node, sink);
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.pekall.util.tree.diff;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * 子树的结构哈希(Merkle哈希).
+ * <p>
+ *     节点的哈希由key的hashCode()和按顺序排列的子节点哈希计算得到. 每个key只有32位参与计算,
+ *     hashCode相同而不相等的key(如"Aa"和"BB")得到相同的哈希, 因此哈希不同说明子树一定不同,
+ *     哈希相同只说明可能相同, 需要由{@link #equal(Node, Node)}逐个比较key确认.
+ * </p>
+ * <p>
+ *     哈希在第一次需要时计算并缓存在节点上. 子树变化时, 调用{@link #invalidate(Node)}使该节点到根节点路径上的缓存失效,
+ *     遇到已失效的祖先即停止, 下次计算只重算失效的节点.
+ * </p>
+ */
+final class SubtreeHash {
+
+    private SubtreeHash() {
+    }
+
+    /**
+     * 使节点及其祖先的哈希失效.
+     */
+    static void invalidate(Node<?> node) {
+        for (Node<?> current = node; current != null && current.subtreeHashValid; current = current.parent) {
+            current.subtreeHashValid = false;
+        }
+    }
+
+    /**
+     * 查询子树哈希, 只重新计算缓存失效的节点.
+     */
+    static <T> long of(Node<T> node) {
+        if (node.subtreeHashValid) {
+            return node.subtreeHash;
+        }
+
+        //后序遍历失效的节点, 子节点先于父节点计算
+        Deque<Node<T>> stack = new ArrayDeque<>();
+        Deque<Iterator<Node<T>>> childrenStack = new ArrayDeque<>();
+        stack.push(node);
+        childrenStack.push(childrenIterator(node));
+
+        while (!stack.isEmpty()) {
+            Iterator<Node<T>> children = childrenStack.peek();
+            if (children.hasNext()) {
+                Node<T> child = children.next();
+                if (!child.subtreeHashValid) {
+                    stack.push(child);
+                    childrenStack.push(childrenIterator(child));
+                }
+            } else {
+                childrenStack.pop();
+                compute(stack.pop());
+            }
+        }
+        return node.subtreeHash;
+    }
+
+    /**
+     * 两棵子树的key和结构是否完全相同. 先比较子树哈希, 相同时再按先序逐个比较key和子节点数,
+     * {@link PersistentTree}两个版本共享的子树不需要比较, {@link SnapshotTree}的子树按句柄比较, 不创建视图.
+     */
+    static <T> boolean equal(Node<T> node, Node<T> other) {
+        if (PersistentTree.shared(node, other)) {
+            return true;
+        }
+        if (of(node) != of(other) || !sameNode(node, other)) {
+            return false;
+        }
+        if (SnapshotTree.isView(node) || SnapshotTree.isView(other)) {
+            return SnapshotTree.sameSubtree(node, other);
+        }
+        //两棵子树同步先序遍历, 子节点数相同, 按顺序一一对应
+        TraversalStack<T> mine = new TraversalStack<>();
+        TraversalStack<T> others = new TraversalStack<>();
+        mine.push(node);
+        others.push(other);
+        while (!mine.isEmpty()) {
+            Node<T> child = mine.nextChildNode();
+            Node<T> otherChild = others.nextChildNode();
+            if (child == null) {
+                mine.pop();
+                others.pop();
+                continue;
+            }
+            if (PersistentTree.shared(child, otherChild)) {
+                continue;
+            }
+            if (!sameNode(child, otherChild)) {
+                return false;
+            }
+            mine.push(child);
+            others.push(otherChild);
+        }
+        return true;
+    }
+
+    private static <T> boolean sameNode(Node<T> node, Node<T> other) {
+        return node.key.equals(other.key) && childCount(node) == childCount(other);
+    }
+
+    private static int childCount(Node<?> node) {
+        return node.children == null ? 0 : node.children.size();
+    }
+
+    private static <T> void compute(Node<T> node) {
+        long hash = leaf(node.key);
+        if (node.children != null) {
+            for (Node<T> child : node.children) {
+                hash = combine(hash, child.subtreeHash);
+            }
+        }
+        node.subtreeHash = hash;
+        node.subtreeHashValid = true;
+    }
+
+    /**
+     * 没有子节点时的哈希. 其他树结构按同样的方法计算, 才能与{@link Node}的子树哈希比较.
+     */
+    static long leaf(Object key) {
+        return mix(key.hashCode());
+    }
+
+    /**
+     * 按顺序并入一个子节点的子树哈希.
+     */
+    static long combine(long hash, long childHash) {
+        return mix(hash * 31 + childHash);
+    }
+
+    private static <T> Iterator<Node<T>> childrenIterator(Node<T> node) {
+        if (node.children == null) {
+            return Collections.emptyIterator();
+        }
+        return node.children.iterator();
+    }
+
+    /**
+     * MurmurHash3的64位finalizer.
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,133 @@
+package com.pekall.util.tree.diff;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * 按子树拆分的先序{@link Spliterator}, 只依赖{@link Node#children}.
+ * <p>
+ *     剩余的节点由一个可选的单独节点head和若干待遍历子树的根节点组成, 按先序排列.
+ *     拆分时前一半子树连同head交给新的Spliterator, 保持先序; 只剩一棵子树时先展开为根节点和各子节点的子树.
+ *     节点数按拆分次数估计, 每次减半.
+ * </p>
+ * <p>
+ *     遍历期间不能修改树. 并行遍历时各线程同时读取子节点列表, 视图按需创建的树需先创建全部视图.
+ * </p>
+ */
+final class SubtreeSpliterator<T> implements Spliterator<Node<T>> {
+
+    //先于subtrees访问的单独节点, 不包含其子树
+    private Node<T> head;
+
+    //待遍历的子树根节点, 队首先访问
+    private final Deque<Node<T>> subtrees;
+
+    private long estimatedSize;
+
+    SubtreeSpliterator(Node<T> root, long estimatedSize) {
+        this(null, new ArrayDeque<Node<T>>(), estimatedSize);
+        if (root != null) {
+            subtrees.add(root);
+        }
+    }
+
+    private SubtreeSpliterator(Node<T> head, Deque<Node<T>> subtrees, long estimatedSize) {
+        this.head = head;
+        this.subtrees = subtrees;
+        this.estimatedSize = estimatedSize;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Node<T>> action) {
+        Node<T> node;
+        if (head != null) {
+            node = head;
+            head = null;
+        } else if (!subtrees.isEmpty()) {
+            node = subtrees.poll();
+            if (node.children != null) {
+                //子节点列表不支持随机访问时先按顺序复制, 再倒序入队
+                List<Node<T>> children = node.children instanceof RandomAccess
+                        ? node.children : new ArrayList<>(node.children);
+                for (int i = children.size() - 1; i >= 0; i--) {
+                    subtrees.push(children.get(i));
+                }
+            }
+        } else {
+            return false;
+        }
+        if (estimatedSize > 0) {
+            estimatedSize--;
+        }
+        action.accept(node);
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super Node<T>> action) {
+        if (head != null) {
+            Node<T> node = head;
+            head = null;
+            action.accept(node);
+        }
+        //逐棵子树先序遍历, 栈中只保存当前路径
+        TraversalStack<T> stack = new TraversalStack<>();
+        while (!subtrees.isEmpty()) {
+            Node<T> root = subtrees.poll();
+            action.accept(root);
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                Node<T> child = stack.nextChildNode();
+                if (child == null) {
+                    stack.pop();
+                    continue;
+                }
+                action.accept(child);
+                stack.push(child);
+            }
+        }
+        estimatedSize = 0;
+    }
+
+    @Override
+    public Spliterator<Node<T>> trySplit() {
+        Node<T> prefixHead = head;
+        if (prefixHead == null && subtrees.size() == 1) {
+            Node<T> root = subtrees.peek();
+            if (root.children == null || root.children.isEmpty()) {
+                return null;
+            }
+            subtrees.poll();
+            prefixHead = root;
+            subtrees.addAll(root.children);
+        }
+        if (prefixHead == null && subtrees.size() < 2 || subtrees.isEmpty()) {
+            return null;
+        }
+
+        int count = subtrees.size() / 2;
+        Deque<Node<T>> prefix = new ArrayDeque<>(Math.max(count, 1));
+        for (int i = 0; i < count; i++) {
+            prefix.add(subtrees.poll());
+        }
+        head = null;
+        long prefixSize = estimatedSize >>> 1;
+        estimatedSize -= prefixSize;
+        return new SubtreeSpliterator<>(prefixHead, prefix, prefixSize);
+    }
+
+    @Override
+    public long estimateSize() {
+        return estimatedSize;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | DISTINCT | NONNULL;
+    }
+}
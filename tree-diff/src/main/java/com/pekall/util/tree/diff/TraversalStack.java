@@ -0,0 +1,89 @@
+package com.pekall.util.tree.diff;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * 深度优先遍历的栈, 保存节点和该节点下一个要访问的子节点下标.
+ * 子节点列表不支持随机访问时改为保存其迭代器, 见{@link #nextChildNode()}.
+ */
+final class TraversalStack<T> {
+
+    private Node<T>[] nodes = newNodes(16);
+    private int[] nextChildren = new int[16];
+
+    //不支持随机访问的子节点列表的迭代器, 第一次遇到这样的列表时才分配
+    private Iterator<Node<T>>[] iterators;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    private static <T> Node<T>[] newNodes(int length){
+        return (Node<T>[]) new Node[length];
+    }
+
+    boolean isEmpty(){
+        return size == 0;
+    }
+
+    void push(Node<T> node){
+        if(size == nodes.length){
+            nodes = Arrays.copyOf(nodes, size * 2);
+            nextChildren = Arrays.copyOf(nextChildren, size * 2);
+            if(iterators != null){
+                iterators = Arrays.copyOf(iterators, size * 2);
+            }
+        }
+        nodes[size] = node;
+        nextChildren[size] = 0;
+        size++;
+    }
+
+    Node<T> peek(){
+        return nodes[size - 1];
+    }
+
+    /**
+     * 栈顶节点下一个要访问的子节点下标, 并后移.
+     */
+    int nextChild(){
+        return nextChildren[size - 1]++;
+    }
+
+    /**
+     * 栈顶节点的下一个子节点, 并后移. 子节点列表支持随机访问时按下标读取, 否则使用其迭代器,
+     * 避免按下标读取链式列表时遍历的耗时变为平方级.
+     *
+     * @return 下一个子节点, 没有时为null
+     */
+    @SuppressWarnings("unchecked")
+    Node<T> nextChildNode(){
+        List<Node<T>> children = nodes[size - 1].children;
+        if(children == null){
+            return null;
+        }
+        if(children instanceof RandomAccess){
+            int index = nextChildren[size - 1]++;
+            return index < children.size() ? children.get(index) : null;
+        }
+        if(iterators == null){
+            iterators = (Iterator<Node<T>>[]) new Iterator[nodes.length];
+        }
+        Iterator<Node<T>> iterator = iterators[size - 1];
+        if(iterator == null){
+            iterator = children.iterator();
+            iterators[size - 1] = iterator;
+        }
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    Node<T> pop(){
+        Node<T> node = nodes[--size];
+        nodes[size] = null;
+        if(iterators != null){
+            iterators[size] = null;
+        }
+        return node;
+    }
+}
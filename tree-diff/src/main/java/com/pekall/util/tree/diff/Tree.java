@@ -1,7 +1,11 @@
 package com.pekall.util.tree.diff;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.Queue;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public interface Tree<T> {
 
@@ -18,23 +22,78 @@ public interface Tree<T> {
      */
     int getDeep();
 
+    /**
+     * 查询节点数.
+     *
+     * @return 节点数
+     */
+    int size();
+
     /**
      * 查询指定层级的节点.
      *
      * @param level 层号，从1开始，最大值为深度.
-     * @return 指定层级节点列表
+     * @return 指定层级节点列表, 只读, 顺序与层序遍历一致
      */
     List<Node<T>> getByLevel(int level);
 
     /**
-     * 添加节点.
+     * 按层号从小到大遍历各层节点, 每层节点的顺序与{@link #getByLevel(int)}一致.
+     * <p>
+     *     遍历过程中不能修改树.
+     * </p>
+     *
+     * @return 各层节点列表的迭代器
+     */
+    Iterator<List<Node<T>>> levelIterator();
+
+    /**
+     * 添加节点(可选操作).
+     * <p>
+     *     {@link ConcurrentTree}和{@link PersistentTree}按key在当前版本中查找参数节点, 参数节点可以来自快照或旧版本.
+     * </p>
      *
      * @param parent 父节点
      * @param key 节点key
-     * @return 返回添加的节点
+     * @return 返回添加的节点. {@link ConcurrentTree}返回只含key的节点, 不属于任何快照, 只能作为之后修改的参数
+     * @throws UnsupportedOperationException 树是只读的, 如{@link SnapshotTree}和各种快照
      */
     Node<T> addNode(Node<T> parent, T key);
 
+    /**
+     * 删除节点, 其子节点按原顺序移到被删除节点的父节点下, 占据被删除节点的位置(可选操作).
+     * <p>
+     *     {@link ConcurrentTree}和{@link PersistentTree}按key在当前版本中查找参数节点, 参数节点可以来自快照或旧版本.
+     * </p>
+     *
+     * @param node 要删除的节点, 不能是根节点
+     * @throws UnsupportedOperationException 树不支持删除, 如只能追加的{@link CompactTree}和只读的{@link SnapshotTree}
+     */
+    void removeNode(Node<T> node);
+
+    /**
+     * 删除节点及其全部子孙(可选操作).
+     * <p>
+     *     {@link ConcurrentTree}和{@link PersistentTree}按key在当前版本中查找参数节点, 参数节点可以来自快照或旧版本.
+     * </p>
+     *
+     * @param node 子树的根节点, 不能是根节点
+     * @throws UnsupportedOperationException 树不支持删除, 如只能追加的{@link CompactTree}和只读的{@link SnapshotTree}
+     */
+    void removeSubtree(Node<T> node);
+
+    /**
+     * 将节点及其全部子孙移到新的父节点下, 作为最后一个子节点(可选操作).
+     * <p>
+     *     {@link ConcurrentTree}和{@link PersistentTree}按key在当前版本中查找参数节点, 参数节点可以来自快照或旧版本.
+     * </p>
+     *
+     * @param node 子树的根节点
+     * @param newParent 新的父节点, 不能是该节点或其子孙
+     * @throws UnsupportedOperationException 树不支持移动, 如只能追加的{@link CompactTree}和只读的{@link SnapshotTree}
+     */
+    void moveSubtree(Node<T> node, Node<T> newParent);
+
     /**
      * 先序遍历
      *
@@ -67,6 +126,63 @@ public interface Tree<T> {
      */
     void levelStopTraverse(Node<T> fromNode, StopVisitor<T> visitor);
 
+    /**
+     * 先序迭代器, 每次调用next()才前进到下一个节点, 可以随时停止. 迭代期间不能修改树.
+     *
+     * @param fromNode 初始节点, 为null时没有节点
+     * @return 以初始节点为根的子树的迭代器
+     */
+    default Iterator<Node<T>> preOrderIterator(Node<T> fromNode) {
+        return NodeIterators.preOrder(fromNode);
+    }
+
+    /**
+     * 后序迭代器, 顺序与{@link #postOrderTraverse(Node, Visitor)}一致.
+     *
+     * @param fromNode 初始节点, 为null时没有节点
+     * @return 以初始节点为根的子树的迭代器
+     */
+    default Iterator<Node<T>> postOrderIterator(Node<T> fromNode) {
+        return NodeIterators.postOrder(fromNode);
+    }
+
+    /**
+     * 层序迭代器, 顺序与{@link #levelTraverse(Node, Visitor)}一致.
+     *
+     * @param fromNode 初始节点, 为null时没有节点
+     * @return 以初始节点为根的子树的迭代器
+     */
+    default Iterator<Node<T>> levelOrderIterator(Node<T> fromNode) {
+        return NodeIterators.levelOrder(fromNode);
+    }
+
+    /**
+     * 按先序遍历全部节点的Spliterator, 按子树拆分.
+     *
+     * @return Spliterator
+     */
+    default Spliterator<Node<T>> spliterator() {
+        return new SubtreeSpliterator<>(getRoot(), size());
+    }
+
+    /**
+     * 按先序遍历全部节点的流, findFirst, anyMatch等短路操作找到结果后立即停止.
+     *
+     * @return 顺序流
+     */
+    default Stream<Node<T>> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * 并行流, 按子树拆分给多个线程. 遍历期间不能修改树.
+     *
+     * @return 并行流
+     */
+    default Stream<Node<T>> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
     /**
      * 比较与另一棵树的不同.
      * <p>
@@ -99,4 +215,37 @@ public interface Tree<T> {
      */
     Queue<NodeEvent<T>> diff(Tree<T> other);
 
+    /**
+     * 使用指定算法比较与另一棵树的不同. {@link DiffAlgorithm#LEVEL}, {@link DiffAlgorithm#HASH},
+     * {@link DiffAlgorithm#PARALLEL}和{@link DiffAlgorithm#AUTO}的结果与{@link #diff(Tree)}一致;
+     * {@link DiffAlgorithm#CHANGES_ONLY}不为未变化子树中的节点产生UPDATE事件, {@link DiffAlgorithm#ORDERED}追加REORDER事件,
+     * 见{@link DiffAlgorithm}.
+     * 所有算法都按key的equals和hashCode匹配节点, 不支持{@link NodeEquivalence};
+     * 需要自定义标识和内容时使用{@link #diff(Tree, NodeEquivalence, NodeEventSink)}.
+     *
+     * @param other 另一棵树，新树
+     * @param algorithm 比较算法
+     * @return nodeEvents 节点事件
+     */
+    Queue<NodeEvent<T>> diff(Tree<T> other, DiffAlgorithm algorithm);
+
+    /**
+     * 流式比较与另一棵树的不同, 事件按{@link #diff(Tree)}的顺序逐个推送, 不保存完整的事件列表.
+     *
+     * @param other 另一棵树，新树
+     * @param sink 事件接收者
+     */
+    void diff(Tree<T> other, NodeEventSink<T> sink);
+
+    /**
+     * 按指定的标识和内容流式比较. 节点按标识匹配, 事件的规则和顺序与{@link #diff(Tree)}一致,
+     * 但内容未变化的节点不产生UPDATE事件.
+     * 只有这个流式比较支持{@link NodeEquivalence}, {@link DiffAlgorithm}中的算法都不支持.
+     *
+     * @param other 另一棵树，新树
+     * @param equivalence 节点的标识和内容
+     * @param sink 事件接收者
+     */
+    void diff(Tree<T> other, NodeEquivalence<? super T> equivalence, NodeEventSink<T> sink);
+
 }
@@ -0,0 +1,247 @@
+package com.pekall.util.tree.diff;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 由 (key, parentKey) 记录批量构建{@link MyTree}.
+ * <p>
+ *     记录可以任意顺序添加, 父节点不必先于子节点出现. 根节点的parentKey为null.
+ *     同一父节点的子节点按记录的添加顺序排列.
+ * </p>
+ * <p>
+ *     {@link #build()}先用int数组建立父子关系并按层序编号, 再一次性创建节点, 子节点数组按实际数量分配,
+ *     层索引直接按层序生成, 不需要重排. 耗时与记录数成线性关系.
+ * </p>
+ */
+public class TreeBuilder<T> {
+
+    private static final int NO_NODE = -1;
+
+    private Object[] keys;
+    private Object[] parentKeys;
+    private int size;
+
+    //以key为索引的开放寻址哈希表, 槽中保存记录编号, 负载不超过1/2
+    private int[] keyTable;
+
+    public TreeBuilder() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize 预计的记录数
+     */
+    public TreeBuilder(int expectedSize) {
+        int capacity = Math.max(16, expectedSize);
+        keys = new Object[capacity];
+        parentKeys = new Object[capacity];
+        keyTable = new int[Integer.highestOneBit(capacity - 1) << 2];
+        Arrays.fill(keyTable, NO_NODE);
+    }
+
+    /**
+     * 添加一条记录.
+     *
+     * @param key 节点key
+     * @param parentKey 父节点key, 根节点为null
+     * @return 当前builder
+     * @throws IllegalArgumentException key为null或重复
+     */
+    public TreeBuilder<T> add(T key, T parentKey) {
+        if (key == null) {
+            throw new IllegalArgumentException("key can't be null");
+        }
+        if (find(key) != NO_NODE) {
+            throw new IllegalArgumentException("duplicate key " + key);
+        }
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            parentKeys = Arrays.copyOf(parentKeys, size * 2);
+        }
+        if (size * 2 >= keyTable.length) {
+            rehash(keyTable.length * 2);
+        }
+        keys[size] = key;
+        parentKeys[size] = parentKey;
+        insert(keyTable, key, size);
+        size++;
+        return this;
+    }
+
+    /**
+     * 添加记录, 每条记录为 key -> parentKey.
+     *
+     * @param records 记录
+     * @return 当前builder
+     * @throws IllegalArgumentException key为null或重复
+     */
+    public TreeBuilder<T> addAll(Iterable<? extends Map.Entry<? extends T, ? extends T>> records) {
+        for (Map.Entry<? extends T, ? extends T> record : records) {
+            add(record.getKey(), record.getValue());
+        }
+        return this;
+    }
+
+    /**
+     * 记录数.
+     */
+    public int size() {
+        return size;
+    }
+
+    private int find(Object key) {
+        int mask = keyTable.length - 1;
+        for (int slot = ArrayTree.spread(key.hashCode()) & mask; keyTable[slot] != NO_NODE; slot = (slot + 1) & mask) {
+            if (key.equals(keys[keyTable[slot]])) {
+                return keyTable[slot];
+            }
+        }
+        return NO_NODE;
+    }
+
+    private static void insert(int[] table, Object key, int record) {
+        int mask = table.length - 1;
+        int slot = ArrayTree.spread(key.hashCode()) & mask;
+        while (table[slot] != NO_NODE) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = record;
+    }
+
+    private void rehash(int capacity) {
+        int[] table = new int[capacity];
+        Arrays.fill(table, NO_NODE);
+        for (int i = 0; i < size; i++) {
+            insert(table, keys[i], i);
+        }
+        keyTable = table;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T key(int record) {
+        return (T) keys[record];
+    }
+
+    /**
+     * 构建树. 每次调用都创建新的节点, builder可以继续添加记录后再次构建.
+     *
+     * @return 树
+     * @throws IllegalArgumentException 没有记录, 没有或有多个根节点, 父节点不存在, 或存在环
+     */
+    public MyTree<T> build() {
+        if (size == 0) {
+            throw new IllegalArgumentException("no records");
+        }
+
+        //父节点编号, 并统计子节点数. childStarts[i + 1]先暂存节点i的子节点数
+        int root = NO_NODE;
+        int[] parents = new int[size];
+        int[] childStarts = new int[size + 1];
+        for (int i = 0; i < size; i++) {
+            Object parentKey = parentKeys[i];
+            if (parentKey == null) {
+                if (root != NO_NODE) {
+                    throw new IllegalArgumentException("multiple roots: " + keys[root] + ", " + keys[i]);
+                }
+                root = i;
+                parents[i] = NO_NODE;
+                continue;
+            }
+            int parent = find(parentKey);
+            if (parent == NO_NODE) {
+                throw new IllegalArgumentException("parent " + parentKey + " of " + keys[i] + " doesn't exist");
+            }
+            parents[i] = parent;
+            childStarts[parent + 1]++;
+        }
+        if (root == NO_NODE) {
+            throw new IllegalArgumentException("no root");
+        }
+
+        //子节点按记录顺序连续存放, 节点i的子节点为children[childStarts[i], childStarts[i + 1])
+        for (int i = 0; i < size; i++) {
+            childStarts[i + 1] += childStarts[i];
+        }
+        int[] children = new int[size];
+        int[] cursors = Arrays.copyOf(childStarts, size);
+        for (int i = 0; i < size; i++) {
+            if (parents[i] != NO_NODE) {
+                children[cursors[parents[i]]++] = i;
+            }
+        }
+
+        //层序编号, levelStarts记录各层在order中的起始位置
+        int[] order = new int[size];
+        int[] levelStarts = new int[16];
+        int deep = 0;
+        int tail = 0;
+        int levelEnd = 0;
+        order[tail++] = root;
+        for (int head = 0; head < tail; head++) {
+            if (head == levelEnd) {
+                if (deep == levelStarts.length) {
+                    levelStarts = Arrays.copyOf(levelStarts, deep * 2);
+                }
+                levelStarts[deep++] = head;
+                levelEnd = tail;
+            }
+            int node = order[head];
+            for (int i = childStarts[node]; i < childStarts[node + 1]; i++) {
+                order[tail++] = children[i];
+            }
+        }
+        //每个节点只有一个父节点, 根节点无法到达的节点必然在环上
+        if (tail < size) {
+            boolean[] reached = new boolean[size];
+            for (int i = 0; i < tail; i++) {
+                reached[order[i]] = true;
+            }
+            for (int i = 0; i < size; i++) {
+                if (!reached[i]) {
+                    throw new IllegalArgumentException("cycle at " + keys[i]);
+                }
+            }
+        }
+
+        //按层序创建节点, 父节点总是先于子节点创建
+        @SuppressWarnings("unchecked")
+        Node<T>[] nodes = (Node<T>[]) new Node[size];
+        List<List<Node<T>>> levels = new ArrayList<>(deep);
+        for (int level = 1; level <= deep; level++) {
+            int from = levelStarts[level - 1];
+            int to = level < deep ? levelStarts[level] : size;
+            List<Node<T>> levelNodes = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                int handle = order[i];
+                Node<T> node = new Node<>(key(handle));
+                node.level = level;
+                int childCount = childStarts[handle + 1] - childStarts[handle];
+                if (childCount > 0) {
+                    node.children = new NodeChildren<>(childCount);
+                }
+                if (parents[handle] != NO_NODE) {
+                    node.parent = nodes[parents[handle]];
+                    node.parent.children.add(node);
+                }
+                nodes[handle] = node;
+                levelNodes.add(node);
+            }
+            levels.add(levelNodes);
+        }
+        return new MyTree<>(levels);
+    }
+
+    /**
+     * 由 key -> parentKey 记录构建树.
+     *
+     * @param records 记录
+     * @return 树
+     * @throws IllegalArgumentException 记录不能构成一棵树
+     */
+    public static <T> MyTree<T> build(Iterable<? extends Map.Entry<? extends T, ? extends T>> records) {
+        return new TreeBuilder<T>().addAll(records).build();
+    }
+}
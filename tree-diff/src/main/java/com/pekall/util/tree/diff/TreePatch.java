@@ -0,0 +1,468 @@
+package com.pekall.util.tree.diff;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * 将比较得到的事件应用到树上, 使旧树变为新树.
+ * <p>
+ *     事件按key解析: CREATE和MOVE给出节点最终的父节点(事件节点的parent), 同一key有多个时以最后一个为准;
+ *     DELETE删除单个节点, 但同一key另有CREATE或MOVE时只是离开原来的位置, 层序比较中层号变小的节点会先CREATE再DELETE.
+ *     UPDATE不改变结构, 忽略. {@link NodeEventType#CREATE_SUBTREE}和{@link NodeEventType#DELETE_SUBTREE}按子树中的每个节点处理.
+ *     {@link NodeEventType#REORDER}在结构变化之后执行, 同一父节点的事件按事件树中的兄弟顺序,
+ *     依次将节点移到事件树中它之前最近的保留兄弟之后, 没有时移到最前.
+ *     移入和新增的节点追加到父节点的子节点末尾.
+ * </p>
+ * <p>
+ *     MOVE的目标父节点可能在之后的事件中才新增, 因此不能逐个事件修改树: 先用key索引解析并校验整个补丁,
+ *     全部合法后才修改, 非法的补丁不会改变树. 每个事件的解析和修改耗时O(1), 每个重排的父节点耗时与其子节点数成正比.
+ *     {@link MyTree}直接使用并维护其key索引, 层索引由{@link MyTree}增量维护, 与逐个删除和移动节点相同.
+ * </p>
+ * <p>
+ *     层序比较认为同一层中key相同的节点相同, 不报告同层之间更换父节点, 因此应用{@link Tree#diff(Tree)}的结果后,
+ *     与新树的层序比较只有UPDATE事件, 但同层节点的父节点可能与新树不同.
+ * </p>
+ */
+public class TreePatch<T> {
+
+    //CREATE, MOVE和DELETE, 子树事件已展开
+    private final List<NodeEvent<T>> events = new ArrayList<>();
+    private final List<NodeEvent<T>> reorders = new ArrayList<>();
+
+    /**
+     * @param nodeEvents 比较得到的事件, 不会被修改
+     */
+    public TreePatch(Queue<NodeEvent<T>> nodeEvents) {
+        for (final NodeEvent<T> event : nodeEvents) {
+            switch (event.getEventType()) {
+                case CREATE_SUBTREE:
+                case DELETE_SUBTREE:
+                    final NodeEventType type = event.getEventType() == NodeEventType.CREATE_SUBTREE
+                            ? NodeEventType.CREATE : NodeEventType.DELETE;
+                    EventCoalescer.expand(event, new Visitor<T>() {
+                        @Override
+                        public void visit(Node<T> node) {
+                            events.add(new NodeEvent<>(type, node));
+                        }
+                    });
+                    break;
+                case REORDER:
+                    reorders.add(event);
+                    break;
+                case UPDATE:
+                    //不改变结构, 比较结果中保留的节点都有UPDATE, 不逐个校验
+                    break;
+                default:
+                    events.add(event);
+            }
+        }
+    }
+
+    /**
+     * 校验补丁能否应用到树上, 不修改树.
+     *
+     * @param tree 旧树
+     * @throws IllegalArgumentException 事件与树不一致, 或应用后不是一棵树
+     */
+    public void validate(Tree<T> tree) {
+        new Resolution<>(tree, this);
+    }
+
+    /**
+     * 就地应用补丁, 先校验整个补丁再修改. 树开启了检查点时记录变化, 子树哈希随之失效.
+     *
+     * @param tree 旧树
+     * @return 修改后的树, 即tree
+     * @throws IllegalArgumentException 同{@link #validate(Tree)}, 此时树不变
+     */
+    public MyTree<T> applyTo(MyTree<T> tree) {
+        tree.checkWritable();
+        Resolution<T> resolution = new Resolution<>(tree, this);
+        Map<T, Node<T>> nodes = resolution.nodes;
+        ChangeLog<T> changeLog = tree.getChangeLog();
+
+        //删除和移动在修改前记录, 同时找出有子节点离开的父节点. 被删除的父节点不用处理
+        Set<Node<T>> changedParents = new HashSet<>();
+        List<Node<T>> removed = new ArrayList<>(resolution.removed.size());
+        for (T key : resolution.removed) {
+            Node<T> node = nodes.remove(key);
+            removed.add(node);
+            if (changeLog != null) {
+                changeLog.recordRemove(node);
+            }
+            if (node.parent != null && !resolution.removed.contains(node.parent.key)) {
+                changedParents.add(node.parent);
+            }
+        }
+        Set<Node<T>> created = new LinkedHashSet<>();
+        for (T key : resolution.relocated) {
+            Node<T> node = nodes.get(key);
+            if (node == null) {
+                node = new Node<>(key);
+                nodes.put(key, node);
+                created.add(node);
+                continue;
+            }
+            if (changeLog != null) {
+                changeLog.recordMove(node);
+            }
+            if (node.parent != null && !resolution.removed.contains(node.parent.key)) {
+                changedParents.add(node.parent);
+            }
+        }
+
+        //从原父节点中一次移除所有离开的子节点
+        for (Node<T> parent : changedParents) {
+            List<Node<T>> children = parent.children;
+            int kept = 0;
+            for (int i = 0; i < children.size(); i++) {
+                Node<T> child = children.get(i);
+                if (!resolution.removed.contains(child.key) && !resolution.relocated.contains(child.key)) {
+                    children.set(kept++, child);
+                }
+            }
+            for (int i = children.size() - 1; i >= kept; i--) {
+                children.remove(i);
+            }
+        }
+
+        List<Node<T>> relocated = new ArrayList<>(resolution.relocated.size());
+        for (T key : resolution.relocated) {
+            Node<T> node = nodes.get(key);
+            relocated.add(node);
+            T parentKey = resolution.parents.get(key);
+            node.parent = parentKey == null ? null : nodes.get(parentKey);
+            if (node.parent != null) {
+                if (node.parent.children == null) {
+                    node.parent.children = new NodeChildren<>();
+                }
+                node.parent.children.add(node);
+                changedParents.add(node.parent);
+            }
+        }
+        Set<Node<T>> reordered = reorder(nodes, resolution.relocated);
+        changedParents.addAll(reordered);
+        for (Node<T> parent : changedParents) {
+            SubtreeHash.invalidate(parent);
+        }
+
+        tree.patched(nodes.get(resolution.root), removed, relocated, created, reordered);
+        if (changeLog != null) {
+            for (Node<T> node : created) {
+                changeLog.recordAdd(node);
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * 应用补丁得到新的树, 旧树不变.
+     *
+     * @param tree 旧树
+     * @return 新的树
+     * @throws IllegalArgumentException 同{@link #validate(Tree)}
+     */
+    public MyTree<T> applyCopy(Tree<T> tree) {
+        Resolution<T> resolution = new Resolution<>(tree, this);
+
+        //保留原位置的节点按层序在前, 移入和新增的节点在后, 与就地应用的子节点顺序一致
+        TreeBuilder<T> builder = new TreeBuilder<>(resolution.nodes.size() + resolution.relocated.size());
+        Iterator<List<Node<T>>> levels = tree.levelIterator();
+        while (levels.hasNext()) {
+            for (Node<T> node : levels.next()) {
+                if (!resolution.removed.contains(node.key) && !resolution.relocated.contains(node.key)) {
+                    builder.add(node.key, node.parent == null ? null : node.parent.key);
+                }
+            }
+        }
+        for (T key : resolution.relocated) {
+            builder.add(key, resolution.parents.get(key));
+        }
+        MyTree<T> copy = builder.build();
+
+        if (!reorders.isEmpty()) {
+            Set<Node<T>> reordered = reorder(index(copy), resolution.relocated);
+            copy.patched(copy.getRoot(), Collections.<Node<T>>emptyList(), Collections.<Node<T>>emptyList(),
+                    Collections.<Node<T>>emptySet(), reordered);
+        }
+        return copy;
+    }
+
+    /**
+     * 执行REORDER事件. 按事件树中的父节点分组, 每组遍历一次事件树中的兄弟, 找出每个节点之前最近的保留兄弟,
+     * 再遍历一次本树中的子节点重新排列, 耗时与子节点数成正比.
+     *
+     * @return 子节点顺序变化的父节点
+     */
+    private Set<Node<T>> reorder(Map<T, Node<T>> nodes, Set<T> relocated) {
+        Map<Node<T>, Set<T>> groups = new LinkedHashMap<>();
+        for (NodeEvent<T> event : reorders) {
+            Node<T> eventNode = event.getNode();
+            Set<T> keys = groups.get(eventNode.parent);
+            if (keys == null) {
+                keys = new HashSet<>();
+                groups.put(eventNode.parent, keys);
+            }
+            keys.add(eventNode.key);
+        }
+
+        Set<Node<T>> parents = new HashSet<>();
+        for (Map.Entry<Node<T>, Set<T>> group : groups.entrySet()) {
+            Node<T> parent = nodes.get(group.getKey().key);
+            Set<T> keys = group.getValue();
+            if (parent == null || parent.children == null) {
+                continue;
+            }
+
+            //之前最近的保留兄弟 -> 依次移到它之后的节点, null表示移到最前
+            Map<Node<T>, List<Node<T>>> followers = new HashMap<>();
+            Node<T> previous = null;
+            List<Node<T>> siblings = group.getKey().children;
+            for (int i = 0; i < siblings.size(); i++) {
+                Node<T> node = nodes.get(siblings.get(i).key);
+                if (node == null || node.parent != parent) {
+                    continue;
+                }
+                if (keys.contains(node.key)) {
+                    List<Node<T>> list = followers.get(previous);
+                    if (list == null) {
+                        list = new ArrayList<>(1);
+                        followers.put(previous, list);
+                    }
+                    list.add(node);
+                }
+                if (!relocated.contains(node.key)) {
+                    previous = node;
+                }
+            }
+            if (followers.isEmpty()) {
+                continue;
+            }
+
+            List<Node<T>> children = parent.children;
+            List<Node<T>> ordered = new ArrayList<>(children.size());
+            Deque<Node<T>> stack = new ArrayDeque<>();
+            appendFollowers(null, followers, stack, ordered);
+            for (int i = 0; i < children.size(); i++) {
+                Node<T> child = children.get(i);
+                if (!keys.contains(child.key)) {
+                    ordered.add(child);
+                    appendFollowers(child, followers, stack, ordered);
+                }
+            }
+            for (int i = 0; i < ordered.size(); i++) {
+                children.set(i, ordered.get(i));
+            }
+            parents.add(parent);
+        }
+        return parents;
+    }
+
+    /**
+     * 依次插入到同一节点之后时, 后插入的在前, 移动的节点之后紧跟移到它之后的节点.
+     */
+    private static <T> void appendFollowers(Node<T> node, Map<Node<T>, List<Node<T>>> followers,
+                                            Deque<Node<T>> stack, List<Node<T>> ordered) {
+        push(followers.get(node), stack);
+        while (!stack.isEmpty()) {
+            Node<T> follower = stack.pop();
+            ordered.add(follower);
+            push(followers.get(follower), stack);
+        }
+    }
+
+    private static <T> void push(List<Node<T>> nodes, Deque<Node<T>> stack) {
+        if (nodes != null) {
+            for (Node<T> node : nodes) {
+                stack.push(node);
+            }
+        }
+    }
+
+    /**
+     * key -> 节点. {@link MyTree}直接使用其维护的key索引, 解析时不能修改.
+     */
+    private static <T> Map<T, Node<T>> index(Tree<T> tree) {
+        if (tree instanceof MyTree) {
+            return ((MyTree<T>) tree).keyIndex();
+        }
+
+        //先按各层的节点数确定容量, 避免扩容
+        int size = 0;
+        Iterator<List<Node<T>>> levels = tree.levelIterator();
+        while (levels.hasNext()) {
+            size += levels.next().size();
+        }
+        Map<T, Node<T>> nodes = new HashMap<>(size * 4 / 3 + 1);
+        levels = tree.levelIterator();
+        while (levels.hasNext()) {
+            for (Node<T> node : levels.next()) {
+                nodes.put(node.key, node);
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * 补丁在一棵树上的解析结果, 构造时完成校验.
+     */
+    private static final class Resolution<T> {
+
+        //旧树 key -> 节点
+        private final Map<T, Node<T>> nodes;
+
+        //换了父节点或新增的key -> 最终的父节点key, 按事件顺序
+        private final Map<T, T> parents = new LinkedHashMap<>();
+        private final Set<T> relocated;
+
+        //删除且没有移到别处的key
+        private final Set<T> removed = new HashSet<>();
+
+        //最终的根节点
+        private final T root;
+
+        Resolution(Tree<T> tree, TreePatch<T> patch) {
+            nodes = index(tree);
+            Set<T> deleted = new HashSet<>();
+            for (NodeEvent<T> event : patch.events) {
+                Node<T> node = event.getNode();
+                switch (event.getEventType()) {
+                    case CREATE:
+                    case MOVE:
+                        parents.put(node.key, node.parent == null ? null : node.parent.key);
+                        break;
+                    case DELETE:
+                        deleted.add(node.key);
+                        break;
+                    default:
+                }
+            }
+
+            for (NodeEvent<T> event : patch.events) {
+                T key = event.getNode().key;
+                switch (event.getEventType()) {
+                    case CREATE:
+                        if (nodes.containsKey(key) && !deleted.contains(key)) {
+                            throw new IllegalArgumentException("node " + key + " already exists");
+                        }
+                        break;
+                    default:
+                        checkExists(key, nodes.containsKey(key));
+                }
+            }
+            for (NodeEvent<T> event : patch.reorders) {
+                Node<T> node = event.getNode();
+                checkExists(node.key, exists(node.key, deleted) && node.parent != null);
+            }
+
+            //父节点不变的移动只是层号变化, 保留原位置
+            for (Iterator<Map.Entry<T, T>> it = parents.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<T, T> entry = it.next();
+                Node<T> node = nodes.get(entry.getKey());
+                if (node != null && !deleted.contains(node.key) && equal(entry.getValue(), parentKey(node))) {
+                    it.remove();
+                }
+            }
+            relocated = parents.keySet();
+            for (T key : deleted) {
+                if (!relocated.contains(key)) {
+                    removed.add(key);
+                }
+            }
+
+            root = findRoot(tree.getRoot().key, deleted);
+            checkParents(deleted);
+            checkCycles();
+        }
+
+        private static <T> void checkExists(T key, boolean exists) {
+            if (!exists) {
+                throw new IllegalArgumentException("node " + key + " doesn't exist");
+            }
+        }
+
+        private boolean exists(T key, Set<T> deleted) {
+            return parents.containsKey(key) || (nodes.containsKey(key) && !deleted.contains(key));
+        }
+
+        private T findRoot(T oldRoot, Set<T> deleted) {
+            T newRoot = exists(oldRoot, deleted) && parents.get(oldRoot) == null ? oldRoot : null;
+            for (Map.Entry<T, T> entry : parents.entrySet()) {
+                if (entry.getValue() == null && !entry.getKey().equals(newRoot)) {
+                    if (newRoot != null) {
+                        throw new IllegalArgumentException("multiple roots: " + newRoot + ", " + entry.getKey());
+                    }
+                    newRoot = entry.getKey();
+                }
+            }
+            if (newRoot == null) {
+                throw new IllegalArgumentException("no root");
+            }
+            return newRoot;
+        }
+
+        /**
+         * 移入和新增节点的父节点必须存在, 删除节点的子节点必须也被删除或移走.
+         */
+        private void checkParents(Set<T> deleted) {
+            for (Map.Entry<T, T> entry : parents.entrySet()) {
+                if (entry.getValue() != null && !exists(entry.getValue(), deleted)) {
+                    throw new IllegalArgumentException(
+                            "parent " + entry.getValue() + " of " + entry.getKey() + " doesn't exist");
+                }
+            }
+            for (T key : removed) {
+                Node<T> node = nodes.get(key);
+                if (node.children == null) {
+                    continue;
+                }
+                for (int i = 0; i < node.children.size(); i++) {
+                    T child = node.children.get(i).key;
+                    if (!removed.contains(child) && !relocated.contains(child)) {
+                        throw new IllegalArgumentException("parent " + key + " of " + child + " doesn't exist");
+                    }
+                }
+            }
+        }
+
+        /**
+         * 旧树无环, 环一定经过换了父节点的节点. 从每个这样的节点向上走到根节点或已确认的节点.
+         */
+        private void checkCycles() {
+            Set<T> reachesRoot = new HashSet<>();
+            Set<T> path = new HashSet<>();
+            for (T key : relocated) {
+                path.clear();
+                for (T current = key; current != null && !reachesRoot.contains(current); current = finalParent(current)) {
+                    if (!path.add(current)) {
+                        throw new IllegalArgumentException("cycle at " + key);
+                    }
+                }
+                reachesRoot.addAll(path);
+            }
+        }
+
+        private T finalParent(T key) {
+            return parents.containsKey(key) ? parents.get(key) : parentKey(nodes.get(key));
+        }
+
+        private static <T> T parentKey(Node<T> node) {
+            return node.parent == null ? null : node.parent.key;
+        }
+
+        private static boolean equal(Object a, Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+}
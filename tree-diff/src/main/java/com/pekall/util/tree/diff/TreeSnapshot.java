@@ -0,0 +1,185 @@
+package com.pekall.util.tree.diff;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 树的二进制快照.
+ * <p>
+ *     节点按层序编号, 同一节点的子节点编号连续. 文件依次为:
+ *     <ol>
+ *         <li>文件头: 魔数, 版本, 标志位, 节点数, 深度, key区字节数, 均为int</li>
+ *         <li>各层起始编号, 深度+1个int</li>
+ *         <li>拓扑列: 父节点, 第一个子节点, 子节点数, 各为节点数个int, 不存在的节点为-1</li>
+ *         <li>key偏移, 节点数+1个int</li>
+ *         <li>子树哈希列(可选), 节点数个long, 即{@link SubtreeHash}的结果</li>
+ *         <li>key区, 由{@link KeyCodec}编码</li>
+ *     </ol>
+ * </p>
+ * <p>
+ *     快照通过{@link MappedByteBuffer}打开为只读的{@link SnapshotTree}, 不反序列化节点.
+ *     单个映射最大2GB, 因此快照文件不能超过2GB.
+ *     子树哈希依赖key的hashCode, 只有hashCode在不同进程中稳定的key(如Integer, Long, String)才能写入哈希列.
+ *     哈希列只省去计算, 与其他树一样只作为提示: 哈希相同时{@link DiffAlgorithm#CHANGES_ONLY}仍逐个比较key确认.
+ * </p>
+ */
+public final class TreeSnapshot {
+
+    static final int MAGIC = 0x54524545;
+    static final int VERSION = 1;
+    static final int FLAG_SUBTREE_HASHES = 1;
+    static final int HEADER_BYTES = 6 * 4;
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private TreeSnapshot() {
+    }
+
+    /**
+     * 将树写入快照文件, 已有的文件被覆盖.
+     *
+     * @param tree 树
+     * @param codec key的编码方式
+     * @param subtreeHashes 是否写入子树哈希列
+     * @param file 快照文件
+     * @throws IOException 写入失败
+     */
+    public static <T> void write(Tree<T> tree, KeyCodec<T> codec, boolean subtreeHashes, Path file)
+            throws IOException {
+        //按层序编号
+        List<Node<T>> nodes = new ArrayList<>();
+        List<Integer> levelStarts = new ArrayList<>();
+        Iterator<List<Node<T>>> levels = tree.levelIterator();
+        while (levels.hasNext()) {
+            levelStarts.add(nodes.size());
+            nodes.addAll(levels.next());
+        }
+        levelStarts.add(nodes.size());
+
+        Map<Node<T>, Integer> handles = new IdentityHashMap<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            handles.put(nodes.get(i), i);
+        }
+
+        byte[][] keys = new byte[nodes.size()][];
+        int keyBytes = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+            keys[i] = codec.encode(nodes.get(i).key);
+            keyBytes += keys[i].length;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ChannelWriter writer = new ChannelWriter(channel);
+            writer.putInt(MAGIC);
+            writer.putInt(VERSION);
+            writer.putInt(subtreeHashes ? FLAG_SUBTREE_HASHES : 0);
+            writer.putInt(nodes.size());
+            writer.putInt(levelStarts.size() - 1);
+            writer.putInt(keyBytes);
+
+            for (Integer start : levelStarts) {
+                writer.putInt(start);
+            }
+            for (Node<T> node : nodes) {
+                writer.putInt(node.parent == null ? -1 : handles.get(node.parent));
+            }
+            for (Node<T> node : nodes) {
+                writer.putInt(node.hasChildren() ? handles.get(node.children.get(0)) : -1);
+            }
+            for (Node<T> node : nodes) {
+                writer.putInt(node.children == null ? 0 : node.children.size());
+            }
+
+            int offset = 0;
+            for (byte[] key : keys) {
+                writer.putInt(offset);
+                offset += key.length;
+            }
+            writer.putInt(offset);
+
+            if (subtreeHashes) {
+                for (Node<T> node : nodes) {
+                    writer.putLong(SubtreeHash.of(node));
+                }
+            }
+            for (byte[] key : keys) {
+                writer.put(key);
+            }
+            writer.flush();
+        }
+    }
+
+    /**
+     * 以只读映射打开快照文件. 映射建立后文件通道即关闭, 映射在{@link SnapshotTree}被回收前一直有效.
+     *
+     * @param file 快照文件
+     * @param codec key的编码方式, 必须与写入时一致
+     * @return 只读的树
+     * @throws IOException 文件无法读取或格式错误
+     */
+    public static <T> SnapshotTree<T> open(Path file, KeyCodec<T> codec) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("snapshot larger than 2GB: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new SnapshotTree<>(buffer, codec);
+        }
+    }
+
+    /**
+     * 经缓冲写入文件通道.
+     */
+    private static final class ChannelWriter {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+
+        ChannelWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void put(byte[] bytes) throws IOException {
+            for (int offset = 0; offset < bytes.length; ) {
+                ensure(1);
+                int length = Math.min(bytes.length - offset, buffer.remaining());
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
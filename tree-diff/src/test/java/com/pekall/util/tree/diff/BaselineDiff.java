@@ -0,0 +1,144 @@
+package com.pekall.util.tree.diff;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * 最初的{@link MyTree#diff(Tree)}实现(removeAll/retainAll), 冻结在测试中作为{@link DiffAlgorithm#LEVEL}的基准.
+ * <p>
+ *     只改为通过{@link Tree}接口读取两棵树, 算法和事件顺序保持原样, 不要修改.
+ * </p>
+ */
+final class BaselineDiff {
+
+    private BaselineDiff() {
+    }
+
+    static <T> Queue<NodeEvent<T>> diff(final Tree<T> myTree, final Tree<T> other) {
+        //节点事件队列
+        final LinkedList<NodeEvent<T>> nodeEvents = new LinkedList<>();
+
+        //已删除的节点集合，用于标记被删除的节点以及它的子孙节点
+        final Set<Node<T>> removedNodes = new HashSet<>();
+        final Set<Node<T>> createdNodes = new HashSet<>();
+
+        //标记事件。用于删除'假的'删除事件。
+        final NodeEvent<T> DELETE_NODE_EVENT = new NodeEvent<>(NodeEventType.DELETE, null);
+        final NodeEvent<T> ADD_NODE_EVENT = new NodeEvent<>(NodeEventType.CREATE, null);
+
+        int myDeep = myTree.getDeep();
+        int otherDeep = other.getDeep();
+
+        int maxDeep = Math.max(myDeep, otherDeep);
+        int minDeep = Math.min(myDeep, otherDeep);
+
+        for(int deep = 1; deep <= minDeep + 1; deep ++){
+
+            //deal with levels they both have.
+            if(deep <= minDeep){
+                List<Node<T>> myNodes = new LinkedList<>(myTree.getByLevel(deep));
+                myNodes.removeAll(removedNodes);
+
+                List<Node<T>> otherNodes = new LinkedList<>(other.getByLevel(deep));
+
+                List<Node<T>> addNodes = new ArrayList<>(otherNodes);
+                addNodes.removeAll(myNodes);
+
+                for(Node<T> node : addNodes){
+                    processCreateNode(nodeEvents, node, DELETE_NODE_EVENT, removedNodes);
+                    createdNodes.add(node);
+                }
+
+                //update nodes
+                List<Node<T>> updateNodes = new ArrayList<>(myNodes);
+                updateNodes.retainAll(otherNodes);
+                for(Node<T> node : updateNodes){
+                    nodeEvents.add(new NodeEvent<T>(NodeEventType.UPDATE, node));
+                }
+
+                myNodes.removeAll(otherNodes);
+                for(Node<T> node : myNodes){
+                    myTree.postOrderTraverse(node, new Visitor<T>() {
+                        @Override
+                        public void visit(Node<T> node) {
+                            nodeEvents.add(new NodeEvent<T>(NodeEventType.DELETE, node));
+                            removedNodes.add(node);
+                        }
+                    });
+                }
+
+                continue;
+            }
+
+            //my tree有更多层
+            //deal with levels only my tree have
+            if(myDeep == maxDeep){
+                List<Node<T>> myNodes = myTree.getByLevel(deep);
+                for(Node<T> node : myNodes){
+                    myTree.postOrderTraverse(node, new Visitor<T>() {
+                        @Override
+                        public void visit(Node<T> node) {
+                            //之前未删除
+                            if(!removedNodes.contains(node)){
+                                //之前新增
+                                if(createdNodes.contains(node)){//现在要删除，说明之前是一个move
+                                    ADD_NODE_EVENT.setNode(node);
+                                    NodeEvent<T> preCreatedEvent = findEvent(nodeEvents, ADD_NODE_EVENT);
+                                    if(preCreatedEvent != null){
+                                        preCreatedEvent.setEventType(NodeEventType.MOVE);
+                                    }
+                                }else{
+                                    nodeEvents.add(new NodeEvent<T>(NodeEventType.DELETE, node));
+                                }
+                            }
+                        }
+                    });
+                }
+            }
+            //other tree有更多层
+            //deal with levels only other tree have
+            else if(otherDeep == maxDeep){
+                List<Node<T>> otherNodes = other.getByLevel(deep);
+                for(Node<T> node : otherNodes){
+                    other.preOrderTraverse(node, new Visitor<T>() {
+                        @Override
+                        public void visit(Node<T> node) {
+                            processCreateNode(nodeEvents, node, DELETE_NODE_EVENT, removedNodes);
+                        }
+                    });
+                }
+            }
+        }
+
+        return nodeEvents;
+    }
+
+    private static <T> NodeEvent<T> findEvent(Queue<NodeEvent<T>> queue, NodeEvent<T> event){
+        for(NodeEvent<T> nodeEvent : queue){
+            if(nodeEvent.equals(event)){
+                return nodeEvent;
+            }
+        }
+        return null;
+    }
+
+    private static <T> void processCreateNode(Queue<NodeEvent<T>> queue, Node<T> node, NodeEvent<T> delFlagNode,
+                                              Set<Node<T>> removedNodes){
+        if(removedNodes.contains(node)){
+            delFlagNode.setNode(node);
+            NodeEvent<T> preDeleted = findEvent(queue, delFlagNode);
+            if(preDeleted != null){
+                //Since the nodes which was deleted by post order, there is no need to deal with its descendants when
+                // dealing with current node.
+                preDeleted.setEventType(NodeEventType.MOVE);
+                preDeleted.setNode(node);
+            }
+        }else{
+            queue.add(new NodeEvent<T>(NodeEventType.CREATE, node));
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.pekall.util.tree.diff;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+
+import static com.pekall.util.tree.diff.NodeEventType.*;
+import static com.pekall.util.tree.diff.RandomTrees.*;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+public class ChangeLogTest {
+
+    /**
+     * 对 key -> parentKey 依次执行事件, 每个事件执行时父节点必须已存在.
+     */
+    private static void apply(Map<Integer, Integer> parents, Queue<NodeEvent<Integer>> events) {
+        for (NodeEvent<Integer> event : events) {
+            Node<Integer> node = event.getNode();
+            if (event.getEventType() == DELETE) {
+                assertNotNull(parents.remove(node.key));
+            } else {
+                assertTrue(parents.containsKey(node.parent.key));
+                parents.put(node.key, node.parent.key);
+            }
+        }
+    }
+
+    @Test
+    public void testAddNodes() {
+        Random random = new Random(20161031L);
+        for (int round = 0; round < 200; round++) {
+            Map<Integer, Integer> initial = randomParents(1 + random.nextInt(60), random);
+            MyTree<Integer> tree = (MyTree<Integer>) build(initial);
+            Tree<Integer> checkpoint = build(initial);
+            tree.checkpoint();
+
+            List<Node<Integer>> nodes = new ArrayList<>();
+            for (int level = 1; level <= tree.getDeep(); level++) {
+                nodes.addAll(tree.getByLevel(level));
+            }
+            int adds = random.nextInt(20);
+            for (int i = 0; i < adds; i++) {
+                nodes.add(tree.addNode(nodes.get(random.nextInt(nodes.size())), 1000 + i));
+            }
+
+            Queue<NodeEvent<Integer>> changes = tree.getChanges();
+            Map<Integer, Integer> parents = parents(checkpoint);
+            apply(parents, changes);
+            assertThat(parents, is(parents(tree)));
+
+            //只有新增时, 变化与完整比较中除UPDATE外的事件相同
+            Set<String> expected = new HashSet<>();
+            for (NodeEvent<Integer> event : checkpoint.diff(tree, DiffAlgorithm.HASH)) {
+                if (event.getEventType() != UPDATE) {
+                    expected.add(event.toString());
+                }
+            }
+            Set<String> actual = new HashSet<>();
+            for (NodeEvent<Integer> event : changes) {
+                actual.add(event.toString());
+            }
+            assertThat(actual, is(expected));
+        }
+    }
+
+    @Test
+    public void testCheckpointResetsLog() {
+        MyTree<Integer> tree = new MyTree<>(1);
+        tree.checkpoint();
+        tree.addNode(tree.getRoot(), 2);
+        assertThat(tree.getChanges().size(), is(1));
+
+        tree.checkpoint();
+        assertTrue(tree.getChanges().isEmpty());
+        tree.addNode(tree.getRoot(), 3);
+        assertThat(tree.getChanges().peek().getNode().key, is(3));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNoCheckpoint() {
+        MyTree<Integer> tree = new MyTree<>(1);
+        tree.checkpoint();
+        tree.stopTracking();
+        tree.getChanges();
+    }
+
+    @Test
+    public void testRemoveAndMove() {
+        /*
+            1
+                2
+                    4
+                3
+         */
+        MyTree<Integer> tree = new MyTree<>(1);
+        Node<Integer> node2 = tree.addNode(tree.getRoot(), 2);
+        Node<Integer> node3 = tree.addNode(tree.getRoot(), 3);
+        Node<Integer> node4 = tree.addNode(node2, 4);
+
+        ChangeLog<Integer> log = new ChangeLog<>();
+
+        //新增后删除, 不留记录
+        Node<Integer> node5 = node(node3, 5);
+        log.recordAdd(node5);
+        log.recordRemove(node5);
+        assertThat(log.size(), is(0));
+
+        //4移动到3下, 再移回2下, 没有变化
+        log.recordMove(node4);
+        node4.parent = node3;
+        assertThat(log.getEvents().toString(), is("[NodeEvent{eventType=MOVE, node=1/3/4}]"));
+        log.recordMove(node4);
+        node4.parent = node2;
+        assertTrue(log.getEvents().isEmpty());
+
+        //删除3, 再添加到2下
+        log.recordRemove(node3);
+        Queue<NodeEvent<Integer>> events = log.getEvents();
+        assertThat(events.size(), is(1));
+        assertEvent(events.poll(), DELETE, 3);
+        log.recordAdd(node(node2, 3));
+        events = log.getEvents();
+        assertThat(events.size(), is(1));
+        assertThat(events.poll().toString(), is("NodeEvent{eventType=MOVE, node=1/2/3}"));
+
+        //删除子树: 先删除的子节点在前
+        log.recordRemove(node4);
+        log.recordRemove(node2);
+        events = log.getEvents();
+        assertThat(events.toString(), is("[NodeEvent{eventType=MOVE, node=1/2/3}, "
+                + "NodeEvent{eventType=DELETE, node=1/2/4}, NodeEvent{eventType=DELETE, node=1/2}]"));
+    }
+
+    /**
+     * 不加入树的节点, 模拟删除和移动后的节点状态.
+     */
+    private static Node<Integer> node(Node<Integer> parent, Integer key) {
+        Node<Integer> node = new Node<>(key);
+        node.parent = parent;
+        node.level = parent.level + 1;
+        return node;
+    }
+
+    private static void assertEvent(NodeEvent<Integer> event, NodeEventType eventType, Integer key) {
+        assertThat(event.getEventType(), is(eventType));
+        assertThat(event.getNode().key, is(key));
+    }
+}
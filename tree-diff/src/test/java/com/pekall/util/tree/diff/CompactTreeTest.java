@@ -0,0 +1,251 @@
+package com.pekall.util.tree.diff;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.RandomAccess;
+
+import static com.pekall.util.tree.diff.RandomTrees.*;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+public class CompactTreeTest {
+
+    private static HandleVisitor collector(final CompactTree<Integer> tree, final List<Integer> keys) {
+        return new HandleVisitor() {
+            @Override
+            public void visit(int node) {
+                keys.add(tree.getKey(node));
+            }
+        };
+    }
+
+    private static Visitor<Integer> collector(final List<Integer> keys) {
+        return new Visitor<Integer>() {
+            @Override
+            public void visit(Node<Integer> node) {
+                keys.add(node.key);
+            }
+        };
+    }
+
+    private static List<Integer> keys(List<Node<Integer>> nodes) {
+        List<Integer> keys = new ArrayList<>();
+        for (Node<Integer> node : nodes) {
+            keys.add(node.key);
+        }
+        return keys;
+    }
+
+    @Test
+    public void testAddNode() {
+        CompactTree<Integer> tree = new CompactTree<>(1, 1);
+        int node2 = tree.addNode(CompactTree.ROOT, 2);
+        int node3 = tree.addNode(CompactTree.ROOT, 3);
+        int node4 = tree.addNode(node2, 4);
+
+        assertThat(tree.size(), is(4));
+        assertThat(tree.getDeep(), is(3));
+        assertThat(tree.getKey(node4), is(4));
+        assertThat(tree.getParent(node4), is(node2));
+        assertThat(tree.getParent(CompactTree.ROOT), is(CompactTree.NO_NODE));
+        assertThat(tree.getFirstChild(CompactTree.ROOT), is(node2));
+        assertThat(tree.getNextSibling(node2), is(node3));
+        assertThat(tree.getNextSibling(node3), is(CompactTree.NO_NODE));
+        assertThat(tree.getFirstChild(node3), is(CompactTree.NO_NODE));
+        assertThat(tree.getLevel(node4), is(3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddNodeToMissingParent() {
+        new CompactTree<>(1).addNode(1, 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddNodeFromOtherTree() {
+        new CompactTree<>(1).addNode(new MyTree<>(1).getRoot(), 2);
+    }
+
+    @Test
+    public void testTraverse() {
+        Random random = new Random(20161023L);
+        for (int round = 0; round < 100; round++) {
+            Map<Integer, Integer> parents = randomParents(1 + random.nextInt(60), random);
+            Tree<Integer> expected = build(parents);
+            CompactTree<Integer> tree = buildCompact(parents);
+
+            List<Integer> expectedKeys = new ArrayList<>();
+            List<Integer> keys = new ArrayList<>();
+            expected.preOrderTraverse(expected.getRoot(), collector(expectedKeys));
+            tree.preOrderTraverse(CompactTree.ROOT, collector(tree, keys));
+            assertThat(keys, is(expectedKeys));
+
+            expectedKeys.clear();
+            keys.clear();
+            expected.postOrderTraverse(expected.getRoot(), collector(expectedKeys));
+            tree.postOrderTraverse(CompactTree.ROOT, collector(tree, keys));
+            assertThat(keys, is(expectedKeys));
+
+            expectedKeys.clear();
+            keys.clear();
+            expected.levelTraverse(expected.getRoot(), collector(expectedKeys));
+            tree.levelTraverse(CompactTree.ROOT, collector(tree, keys));
+            assertThat(keys, is(expectedKeys));
+
+            //从子树开始遍历
+            Node<Integer> from = expected.getByLevel(expected.getDeep() > 1 ? 2 : 1).get(0);
+            expectedKeys.clear();
+            keys.clear();
+            expected.postOrderTraverse(from, collector(expectedKeys));
+            tree.postOrderTraverse(tree.getRoot(), collector(keys));
+            tree.postOrderTraverse(from.key - 1, collector(tree, keys));
+            assertThat(keys.subList(tree.size(), keys.size()), is(expectedKeys));
+        }
+    }
+
+    @Test
+    public void testTreeInterface() {
+        Random random = new Random(20161024L);
+        Map<Integer, Integer> parents = randomParents(200, random);
+        Tree<Integer> expected = build(parents);
+        Tree<Integer> tree = buildCompact(parents);
+
+        assertThat(tree.getDeep(), is(expected.getDeep()));
+        Iterator<List<Node<Integer>>> levels = tree.levelIterator();
+        for (int level = 1; level <= expected.getDeep(); level++) {
+            assertThat(keys(tree.getByLevel(level)), is(keys(expected.getByLevel(level))));
+            assertThat(keys(levels.next()), is(keys(expected.getByLevel(level))));
+        }
+        assertFalse(levels.hasNext());
+        assertTrue(tree.getByLevel(0).isEmpty());
+        assertTrue(tree.getByLevel(expected.getDeep() + 1).isEmpty());
+
+        Node<Integer> node = tree.getByLevel(tree.getDeep()).get(0);
+        assertThat(node.getPath(), is(expected.getByLevel(expected.getDeep()).get(0).getPath()));
+        assertThat(node.getLevel(), is(tree.getDeep()));
+        assertThat(tree.getByLevel(tree.getDeep()).get(0), is(sameInstance(node)));
+
+        Node<Integer> child = tree.addNode(node, 1000);
+        assertThat(child.parent, is(sameInstance(node)));
+        assertThat(keys(node.children), is(Collections.singletonList(1000)));
+        assertThat(tree.getDeep(), is(expected.getDeep() + 1));
+        assertThat(keys(tree.getByLevel(tree.getDeep())), is(Collections.singletonList(1000)));
+    }
+
+    /**
+     * 子节点列表支持随机访问, 之后追加的子节点也能按下标读取. 40000个子节点按下标遍历不应是平方级.
+     */
+    @Test
+    public void testWideChildren() {
+        CompactTree<Integer> tree = new CompactTree<>(0);
+        MyTree<Integer> expected = new MyTree<>(0);
+        for (int key = 1; key <= 40000; key++) {
+            tree.addNode(ArrayTree.ROOT, key);
+            expected.addNode(expected.getRoot(), key);
+        }
+        List<Node<Integer>> children = tree.getRoot().children;
+        assertTrue(children instanceof RandomAccess);
+        assertThat(children.size(), is(40000));
+        assertThat(children.get(39999).key, is(40000));
+
+        tree.addNode(ArrayTree.ROOT, 40001);
+        expected.addNode(expected.getRoot(), 40001);
+        assertThat(children.size(), is(40001));
+        assertThat(children.get(40000).key, is(40001));
+
+        assertThat(tree.stream().count(), is(40002L));
+        Iterator<Node<Integer>> nodes = tree.preOrderIterator(tree.getRoot());
+        for (int key = 0; key <= 40001; key++) {
+            assertThat(nodes.next().key, is(key));
+        }
+        assertTrue(tree.diff(expected, DiffAlgorithm.CHANGES_ONLY).isEmpty());
+    }
+
+    @Test
+    public void testToString() {
+        Map<Integer, Integer> parents = randomParents(30, new Random(20161025L));
+        assertThat(buildCompact(parents).toString(), is(build(parents).toString()));
+    }
+
+    @Test
+    public void testTraverseDeepChain() {
+        CompactTree<Integer> tree = new CompactTree<>(0);
+        int node = CompactTree.ROOT;
+        for (int i = 1; i < 100000; i++) {
+            node = tree.addNode(node, i);
+        }
+
+        final int[] count = new int[1];
+        HandleVisitor counter = new HandleVisitor() {
+            @Override
+            public void visit(int node) {
+                count[0]++;
+            }
+        };
+        tree.preOrderTraverse(CompactTree.ROOT, counter);
+        tree.postOrderTraverse(CompactTree.ROOT, counter);
+        tree.levelTraverse(CompactTree.ROOT, counter);
+        assertThat(count[0], is(300000));
+    }
+
+    @Test
+    public void testDiffHandles() {
+        CompactTree<Integer> oldTree = new CompactTree<>(1);
+        int old2 = oldTree.addNode(CompactTree.ROOT, 2);
+        oldTree.addNode(CompactTree.ROOT, 3);
+
+        CompactTree<Integer> newTree = new CompactTree<>(1);
+        newTree.addNode(CompactTree.ROOT, 2);
+        int new4 = newTree.addNode(CompactTree.ROOT, 4);
+
+        final List<String> events = new ArrayList<>();
+        oldTree.diff(newTree, new HandleEventSink() {
+            @Override
+            public void onEvent(NodeEventType eventType, int node) {
+                events.add(eventType + ":" + node);
+            }
+        });
+
+        assertThat(events.toString(), is("[UPDATE:0, CREATE:" + new4 + ", UPDATE:" + old2 + ", DELETE:2]"));
+    }
+
+    @Test
+    public void testDiffRandomTrees() {
+        Random random = new Random(20161026L);
+        for (int round = 0; round < 500; round++) {
+            Map<Integer, Integer> parents = randomParents(1 + random.nextInt(60), random);
+            Map<Integer, Integer> mutated = mutate(parents, random);
+
+            String expected = build(parents).diff(build(mutated)).toString();
+            assertThat(buildCompact(parents).diff(buildCompact(mutated)).toString(), is(expected));
+            assertThat(buildCompact(parents).diff(build(mutated)).toString(), is(expected));
+            assertThat(build(parents).diff(buildCompact(mutated), DiffAlgorithm.HASH).toString(), is(expected));
+
+            expected = build(parents).diff(build(mutated), DiffAlgorithm.CHANGES_ONLY).toString();
+            assertThat(buildCompact(parents).diff(buildCompact(mutated), DiffAlgorithm.CHANGES_ONLY).toString(),
+                    is(expected));
+        }
+    }
+
+    /**
+     * key表的槽数不超过2^30, 节点数不小于2^29时移位不能溢出.
+     */
+    @Test
+    public void testKeyTableLength() {
+        assertThat(ArrayTree.keyTableLength(1), is(4));
+        assertThat(ArrayTree.keyTableLength(100), is(256));
+        assertThat(ArrayTree.keyTableLength(1 << 28), is(1 << 30));
+        assertThat(ArrayTree.keyTableLength(1 << 29), is(1 << 30));
+        assertThat(ArrayTree.keyTableLength((1 << 30) - 1), is(1 << 30));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testKeyTableTooLarge() {
+        ArrayTree.keyTableLength(1 << 30);
+    }
+}
@@ -0,0 +1,290 @@
+package com.pekall.util.tree.diff;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.pekall.util.tree.diff.RandomTrees.*;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+public class ConcurrentTreeTest {
+
+    @Test
+    public void testSnapshotIsImmutable() {
+        ConcurrentTree<Integer> tree = new ConcurrentTree<>(1);
+        Node<Integer> node2 = tree.addNode(tree.getRoot(), 2);
+        tree.addNode(node2, 3);
+        Tree<Integer> snapshot = tree.snapshot();
+        assertThat(tree.snapshot(), is(sameInstance(snapshot)));
+
+        //参数节点可以来自快照
+        tree.moveSubtree(snapshot.getByLevel(3).get(0), snapshot.getRoot());
+        tree.removeNode(node2);
+        tree.addNode(snapshot.getRoot(), 4);
+        assertThat(snapshot.toString(), is("1\n\t2\n\t\t3\n"));
+        assertThat(tree.toString(), is("1\n\t3\n\t4\n"));
+        assertThat(tree.getDeep(), is(2));
+    }
+
+    /**
+     * 快照是只读的, 修改快照不影响其他读线程和之后的快照.
+     */
+    @Test
+    public void testSnapshotRejectsMutation() {
+        ConcurrentTree<Integer> tree = new ConcurrentTree<>(1);
+        tree.addNode(tree.getRoot(), 2);
+        MyTree<Integer> snapshot = (MyTree<Integer>) tree.snapshot();
+        Node<Integer> node2 = snapshot.findByKey(2);
+        try {
+            snapshot.addNode(snapshot.getRoot(), 99);
+            fail();
+        } catch (UnsupportedOperationException expected) {
+        }
+        try {
+            snapshot.removeNode(node2);
+            fail();
+        } catch (UnsupportedOperationException expected) {
+        }
+        try {
+            snapshot.removeSubtree(node2);
+            fail();
+        } catch (UnsupportedOperationException expected) {
+        }
+        try {
+            snapshot.moveSubtree(node2, snapshot.getRoot());
+            fail();
+        } catch (UnsupportedOperationException expected) {
+        }
+        try {
+            new TreePatch<>(snapshot.diff(new MyTree<>(1))).applyTo(snapshot);
+            fail();
+        } catch (UnsupportedOperationException expected) {
+        }
+        assertThat(snapshot.toString(), is("1\n\t2\n"));
+
+        tree.addNode(tree.getRoot(), 3);
+        assertThat(tree.snapshot().toString(), is("1\n\t2\n\t3\n"));
+    }
+
+    /**
+     * addNode返回只含key的节点, 不暴露可写的树中的节点.
+     */
+    @Test
+    public void testAddNodeReturnsHandle() {
+        ConcurrentTree<Integer> tree = new ConcurrentTree<>(1);
+        Node<Integer> node2 = tree.addNode(tree.getRoot(), 2);
+        tree.addNode(node2, 3);
+        assertThat(node2.key, is(2));
+        assertThat(node2.parent, is(nullValue()));
+        assertThat(node2.children, is(nullValue()));
+        assertThat(tree.snapshot().getByLevel(2).get(0).children.size(), is(1));
+    }
+
+    /**
+     * 同时过期的读线程得到同一个快照, 只构建一次.
+     */
+    @Test
+    public void testConcurrentReadersShareSnapshot() throws Exception {
+        final ConcurrentTree<Integer> tree = new ConcurrentTree<>(0);
+        for (int i = 1; i < 20000; i++) {
+            tree.addNode(tree.getRoot(), i);
+        }
+        final int readers = 4;
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Tree<Integer>> snapshots = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int r = 0; r < readers; r++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    Tree<Integer> snapshot = tree.snapshot();
+                    synchronized (snapshots) {
+                        snapshots.add(snapshot);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        tree.addNode(tree.getRoot(), 20000);
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(snapshots.size(), is(readers));
+        for (Tree<Integer> snapshot : snapshots) {
+            assertThat(snapshot, is(sameInstance(snapshots.get(0))));
+        }
+        assertThat(tree.snapshot(), is(sameInstance(snapshots.get(0))));
+        assertThat(tree.size(), is(20001));
+    }
+
+    @Test
+    public void testInvalidMutation() {
+        ConcurrentTree<Integer> tree = new ConcurrentTree<>(1);
+        Node<Integer> node2 = tree.addNode(tree.getRoot(), 2);
+        Tree<Integer> snapshot = tree.snapshot();
+        try {
+            tree.addNode(new MyTree<>(3).getRoot(), 4);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("node 3 doesn't exist"));
+        }
+        try {
+            tree.addNode(node2, 1);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("duplicate key 1"));
+        }
+        try {
+            tree.moveSubtree(tree.getRoot(), node2);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("cycle at 1"));
+        }
+        assertThat(tree.snapshot(), is(sameInstance(snapshot)));
+    }
+
+    /**
+     * 随机修改后的快照与对同样的MyTree做同样修改的结果一致, 比较结果也一致.
+     */
+    @Test
+    public void testRandomMutations() {
+        Random random = new Random(20161115L);
+        for (int round = 0; round < 100; round++) {
+            ConcurrentTree<Integer> tree = new ConcurrentTree<>(1);
+            MyTree<Integer> expected = new MyTree<>(1);
+            List<Integer> keys = new ArrayList<>();
+            keys.add(1);
+            Tree<Integer> previous = tree.snapshot();
+            Map<Integer, Integer> previousParents = parents(previous);
+
+            for (int i = 0; i < 200; i++) {
+                Integer key = keys.get(random.nextInt(keys.size()));
+                Node<Integer> node = expected.findByKey(key);
+                if (node == null) {
+                    continue;
+                }
+                switch (key == 1 ? 0 : random.nextInt(4)) {
+                    case 0:
+                        expected.addNode(node, keys.size() + 1);
+                        tree.addNode(node, keys.size() + 1);
+                        keys.add(keys.size() + 1);
+                        break;
+                    case 1:
+                        expected.removeNode(node);
+                        tree.removeNode(node);
+                        break;
+                    case 2:
+                        if (random.nextInt(4) == 0) {
+                            expected.removeSubtree(node);
+                            tree.removeSubtree(node);
+                        }
+                        break;
+                    default:
+                        Node<Integer> newParent = expected.findByKey(keys.get(random.nextInt(keys.size())));
+                        if (newParent != null && !newParent.getPath().contains(key)) {
+                            expected.moveSubtree(node, newParent);
+                            tree.moveSubtree(node, newParent);
+                        }
+                }
+                if (random.nextInt(20) == 0) {
+                    assertThat(tree.snapshot().toString(), is(expected.toString()));
+                }
+            }
+
+            Tree<Integer> snapshot = tree.snapshot();
+            assertThat(snapshot.toString(), is(expected.toString()));
+            assertThat(parents(previous), is(previousParents));
+            assertThat(tree.diff(previous).toString(), is(expected.diff(previous).toString()));
+            assertThat(tree.diff(previous, DiffAlgorithm.CHANGES_ONLY).toString(),
+                    is(expected.diff(previous, DiffAlgorithm.CHANGES_ONLY).toString()));
+        }
+    }
+
+    /**
+     * 多个线程同时添加和删除节点, 读线程的每个快照都是完整的树.
+     */
+    @Test
+    public void testConcurrentWritersAndReader() throws Exception {
+        final ConcurrentTree<Integer> tree = new ConcurrentTree<>(0);
+        final int writers = 4;
+        final int perWriter = 2000;
+        final CountDownLatch done = new CountDownLatch(writers);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final AtomicBoolean running = new AtomicBoolean(true);
+
+        for (int w = 1; w <= writers; w++) {
+            final int writer = w;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        //每个写线程在根节点下建立自己的链, 每添加两个节点删除前一个节点
+                        Node<Integer> parent = tree.addNode(tree.getRoot(), writer);
+                        for (int i = 1; i <= perWriter; i++) {
+                            Node<Integer> node = tree.addNode(parent, writer + writers * i);
+                            if (i % 2 == 0) {
+                                tree.removeNode(parent);
+                            }
+                            parent = node;
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (running.get()) {
+                        Tree<Integer> snapshot = tree.snapshot();
+                        int count = 0;
+                        for (int level = 1; level <= snapshot.getDeep(); level++) {
+                            for (Node<Integer> node : snapshot.getByLevel(level)) {
+                                assertThat(node.getLevel(), is(level));
+                                if (level > 2) {
+                                    assertTrue(node.parent.children.contains(node));
+                                    assertThat(node.key % writers, is(node.parent.key % writers));
+                                }
+                                count++;
+                            }
+                        }
+                        assertThat(count, is(parents(snapshot).size()));
+                        assertThat(snapshot.diff(snapshot, DiffAlgorithm.CHANGES_ONLY).size(), is(0));
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+        });
+        reader.start();
+        done.await();
+        running.set(false);
+        reader.join();
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+
+        Tree<Integer> snapshot = tree.snapshot();
+        assertThat(parents(snapshot).size(), is(1 + writers * (perWriter / 2 + 1)));
+        assertThat(snapshot.getDeep(), is(2 + perWriter / 2));
+    }
+}
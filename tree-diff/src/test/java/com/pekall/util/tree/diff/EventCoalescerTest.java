@@ -0,0 +1,111 @@
+package com.pekall.util.tree.diff;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+
+import static com.pekall.util.tree.diff.NodeEventType.*;
+import static com.pekall.util.tree.diff.RandomTrees.*;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+public class EventCoalescerTest {
+
+    private static List<String> expand(Queue<NodeEvent<Integer>> events) {
+        final List<String> expanded = new ArrayList<>();
+        for (final NodeEvent<Integer> event : events) {
+            EventCoalescer.expand(event, new Visitor<Integer>() {
+                @Override
+                public void visit(Node<Integer> node) {
+                    NodeEventType type = event.getEventType();
+                    if (type == CREATE_SUBTREE) {
+                        type = CREATE;
+                    } else if (type == DELETE_SUBTREE) {
+                        type = DELETE;
+                    }
+                    expanded.add(new NodeEvent<>(type, node).toString());
+                }
+            });
+        }
+        return expanded;
+    }
+
+    @Test
+    public void testExpandEqualsOriginal() {
+        Random random = new Random(20161109L);
+        int original = 0;
+        int coalesced = 0;
+        for (int round = 0; round < 300; round++) {
+            Map<Integer, Integer> oldParents = randomParents(1 + random.nextInt(60), random);
+            Map<Integer, Integer> newParents = mutate(oldParents, random);
+            Queue<NodeEvent<Integer>> events = build(oldParents).diff(build(newParents), DiffAlgorithm.HASH);
+            Queue<NodeEvent<Integer>> result = EventCoalescer.coalesce(events);
+
+            List<String> expected = new ArrayList<>();
+            for (NodeEvent<Integer> event : events) {
+                expected.add(event.toString());
+            }
+            List<String> actual = expand(result);
+            Collections.sort(expected);
+            Collections.sort(actual);
+            assertThat(actual, is(expected));
+
+            original += events.size();
+            coalesced += result.size();
+        }
+        assertTrue(coalesced < original);
+    }
+
+    @Test
+    public void testDeleteSubtree() {
+        Tree<Integer> oldTree = RandomTrees.sampleTree();
+        Tree<Integer> newTree = new TreeBuilder<Integer>().add(1, null).add(2, 1).add(4, 1).add(5, 2).add(6, 2)
+                .add(9, 4).add(10, 4).build();
+
+        Queue<NodeEvent<Integer>> events = EventCoalescer.coalesce(oldTree.diff(newTree));
+        List<String> deletes = new ArrayList<>();
+        for (NodeEvent<Integer> event : events) {
+            if (event.getEventType() != UPDATE) {
+                deletes.add(event.getEventType() + " " + event.getNode());
+            }
+        }
+        assertThat(deletes.toString(), is("[DELETE_SUBTREE 1/3]"));
+        assertThat(expand(events).size(), is(11));
+    }
+
+    @Test
+    public void testMovedDescendantNotCoalesced() {
+        Tree<Integer> oldTree = RandomTrees.sampleTree();
+        //删除3, 但其子孙8移动到4下
+        Tree<Integer> newTree = new TreeBuilder<Integer>().add(1, null).add(2, 1).add(4, 1).add(5, 2).add(6, 2)
+                .add(9, 4).add(10, 4).add(8, 4).add(11, 8).build();
+
+        List<String> types = new ArrayList<>();
+        for (NodeEvent<Integer> event : EventCoalescer.coalesce(oldTree.diff(newTree))) {
+            if (event.getEventType() != UPDATE) {
+                types.add(event.getEventType() + " " + event.getNode().key);
+            }
+        }
+        assertFalse(types.contains("DELETE_SUBTREE 3"));
+        assertTrue(types.contains("DELETE 3"));
+    }
+
+    @Test
+    public void testCreateSubtree() {
+        Tree<Integer> oldTree = new TreeBuilder<Integer>().add(1, null).build();
+        Tree<Integer> newTree = new TreeBuilder<Integer>().add(1, null).add(2, 1).add(3, 2).add(4, 2).add(5, 1)
+                .build();
+
+        Queue<NodeEvent<Integer>> events = EventCoalescer.coalesce(oldTree.diff(newTree));
+        assertThat(events.toString(), is("[NodeEvent{eventType=UPDATE, node=1}, "
+                + "NodeEvent{eventType=CREATE_SUBTREE, node=1/2}, NodeEvent{eventType=CREATE, node=1/5}]"));
+        assertThat(expand(events).toString(), is("[NodeEvent{eventType=UPDATE, node=1}, "
+                + "NodeEvent{eventType=CREATE, node=1/2}, NodeEvent{eventType=CREATE, node=1/2/3}, "
+                + "NodeEvent{eventType=CREATE, node=1/2/4}, NodeEvent{eventType=CREATE, node=1/5}]"));
+    }
+}
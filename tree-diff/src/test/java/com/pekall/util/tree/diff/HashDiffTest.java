@@ -0,0 +1,66 @@
+package com.pekall.util.tree.diff;
+
+import org.junit.Test;
+
+import java.util.Collection;
+
+import static com.pekall.util.tree.diff.RandomTrees.*;
+
+/**
+ * 以{@link DiffAlgorithm#LEVEL}的结果为基准, 验证{@link DiffAlgorithm#HASH}的结果与之一致.
+ */
+public class HashDiffTest {
+
+    private static final DiffFunction HASH_DIFF = new DiffFunction() {
+        @Override
+        public Collection<NodeEvent<Integer>> diff(Tree<Integer> oldTree, Tree<Integer> newTree) {
+            return oldTree.diff(newTree, DiffAlgorithm.HASH);
+        }
+    };
+
+    private static void assertSameDiff(Tree<Integer> oldTree, Tree<Integer> newTree) {
+        RandomTrees.assertSameDiff(LEVEL_DIFF, HASH_DIFF, oldTree, newTree);
+    }
+
+    @Test
+    public void testDiffSelf() {
+        Tree<Integer> tree = sampleTree();
+        assertSameDiff(tree, tree);
+    }
+
+    @Test
+    public void testDiffSingleNode() {
+        assertSameDiff(new MyTree<>(1), new MyTree<>(1));
+        assertSameDiff(new MyTree<>(1), new MyTree<>(2));
+        assertSameDiff(sampleTree(), new MyTree<>(1));
+        assertSameDiff(new MyTree<>(1), sampleTree());
+    }
+
+    @Test
+    public void testDiffMoveUpAndDown() {
+        Tree<Integer> newTree = new MyTree<>(1);
+        newTree.addNode(newTree.getRoot(), 2);
+        newTree.addNode(newTree.getRoot(), 3);
+        newTree.addNode(newTree.getRoot(), 8);
+        newTree.addNode(newTree.getRoot(), 11);
+
+        assertSameDiff(sampleTree(), newTree);
+        assertSameDiff(newTree, sampleTree());
+    }
+
+    @Test
+    public void testDiffDifferentRoot() {
+        Tree<Integer> newTree = new MyTree<>(21);
+        Node<Integer> node2 = newTree.addNode(newTree.getRoot(), 2);
+        newTree.addNode(node2, 5);
+        newTree.addNode(newTree.getRoot(), 3);
+
+        assertSameDiff(sampleTree(), newTree);
+        assertSameDiff(newTree, sampleTree());
+    }
+
+    @Test
+    public void testDiffRandomTrees() {
+        assertSameDiffOnRandomTrees(LEVEL_DIFF, HASH_DIFF, 20161018L);
+    }
+}
@@ -0,0 +1,153 @@
+package com.pekall.util.tree.diff;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+
+import static com.pekall.util.tree.diff.NodeEventType.*;
+import static com.pekall.util.tree.diff.RandomTrees.*;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ * 验证{@link DiffAlgorithm#CHANGES_ONLY}的结果等于{@link DiffAlgorithm#LEVEL}的结果去掉未变化子树的UPDATE事件.
+ */
+public class MerkleDiffTest {
+
+    /**
+     * 两棵子树的key和结构完全相同.
+     */
+    private static boolean sameSubtree(Node<Integer> node, Node<Integer> other) {
+        if (!node.key.equals(other.key) || node.hasChildren() != other.hasChildren()) {
+            return false;
+        }
+        if (!node.hasChildren()) {
+            return true;
+        }
+        if (node.children.size() != other.children.size()) {
+            return false;
+        }
+        Iterator<Node<Integer>> otherChildren = other.children.iterator();
+        for (Node<Integer> child : node.children) {
+            if (!sameSubtree(child, otherChildren.next())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 节点或其某个祖先在新树中有相同路径的节点, 且两者子树相同.
+     */
+    private static boolean inUnchangedSubtree(Node<Integer> node, Map<List<Integer>, Node<Integer>> otherPaths) {
+        for (Node<Integer> current = node; current != null; current = current.parent) {
+            Node<Integer> other = otherPaths.get(current.getPath());
+            if (other != null && sameSubtree(current, other)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void assertChangesOnly(Tree<Integer> oldTree, Tree<Integer> newTree) {
+        final Map<List<Integer>, Node<Integer>> otherPaths = new HashMap<>();
+        newTree.preOrderTraverse(newTree.getRoot(), new Visitor<Integer>() {
+            @Override
+            public void visit(Node<Integer> node) {
+                otherPaths.put(node.getPath(), node);
+            }
+        });
+
+        List<NodeEvent<Integer>> expected = new ArrayList<>();
+        for (NodeEvent<Integer> event : oldTree.diff(newTree, DiffAlgorithm.LEVEL)) {
+            if (event.getEventType() != UPDATE || !inUnchangedSubtree(event.getNode(), otherPaths)) {
+                expected.add(event);
+            }
+        }
+
+        Queue<NodeEvent<Integer>> actual = oldTree.diff(newTree, DiffAlgorithm.CHANGES_ONLY);
+        assertThat(actual.toString(), is(expected.toString()));
+    }
+
+    @Test
+    public void testDiffSelf() {
+        Tree<Integer> tree = sampleTree();
+        assertTrue(tree.diff(tree, DiffAlgorithm.CHANGES_ONLY).isEmpty());
+        assertTrue(tree.diff(sampleTree(), DiffAlgorithm.CHANGES_ONLY).isEmpty());
+    }
+
+    @Test
+    public void testDiffAddLeaf() {
+        Tree<Integer> oldTree = sampleTree();
+        Tree<Integer> newTree = sampleTree();
+        Node<Integer> node2 = newTree.getByLevel(2).get(0);
+        newTree.addNode(node2.children.get(0), 12);
+
+        Queue<NodeEvent<Integer>> events = oldTree.diff(newTree, DiffAlgorithm.CHANGES_ONLY);
+
+        //只有新增节点所在路径上的节点
+        assertThat(events.size(), is(4));
+        assertThat(events.poll().getNode().key, is(1));
+        assertThat(events.poll().getNode().key, is(2));
+        assertThat(events.poll().getNode().key, is(5));
+        NodeEvent<Integer> create = events.poll();
+        assertThat(create.getEventType(), is(CREATE));
+        assertThat(create.getNode().key, is(12));
+    }
+
+    @Test
+    public void testHashInvalidatedByAddNode() {
+        Tree<Integer> oldTree = sampleTree();
+        Tree<Integer> newTree = sampleTree();
+        assertTrue(oldTree.diff(newTree, DiffAlgorithm.CHANGES_ONLY).isEmpty());
+
+        newTree.addNode(newTree.getByLevel(3).get(5), 12);
+        assertThat(oldTree.diff(newTree, DiffAlgorithm.CHANGES_ONLY).size(), is(4));
+
+        oldTree.addNode(oldTree.getByLevel(3).get(5), 12);
+        assertTrue(oldTree.diff(newTree, DiffAlgorithm.CHANGES_ONLY).isEmpty());
+    }
+
+    @Test
+    public void testDiffRandomTrees() {
+        Random random = new Random(20161022L);
+        for (int round = 0; round < 500; round++) {
+            Map<Integer, Integer> parents = randomParents(1 + random.nextInt(60), random);
+            Map<Integer, Integer> mutated = mutate(parents, random);
+
+            assertChangesOnly(build(parents), build(mutated));
+            assertChangesOnly(build(mutated), build(parents));
+            assertChangesOnly(build(parents), build(parents));
+        }
+    }
+
+    /**
+     * hashCode相同而不相等的key得到相同的子树哈希, 不能据此跳过子树.
+     */
+    @Test
+    public void testHashCollision() {
+        assertThat("Aa".hashCode(), is("BB".hashCode()));
+        Tree<String> oldStrings = new MyTree<>("root");
+        oldStrings.addNode(oldStrings.addNode(oldStrings.getRoot(), "x"), "Aa");
+        Tree<String> newStrings = new MyTree<>("root");
+        newStrings.addNode(newStrings.addNode(newStrings.getRoot(), "x"), "BB");
+        assertThat(SubtreeHash.of(oldStrings.getRoot()), is(SubtreeHash.of(newStrings.getRoot())));
+        assertThat(oldStrings.diff(newStrings, DiffAlgorithm.CHANGES_ONLY).toString(),
+                is(oldStrings.diff(newStrings, DiffAlgorithm.LEVEL).toString()));
+        assertFalse(oldStrings.diff(newStrings, DiffAlgorithm.CHANGES_ONLY).isEmpty());
+
+        Tree<Long> oldLongs = new MyTree<>(1L);
+        oldLongs.addNode(oldLongs.getRoot(), 0L);
+        Tree<Long> newLongs = new MyTree<>(1L);
+        newLongs.addNode(newLongs.getRoot(), 0x100000001L);
+        Queue<NodeEvent<Long>> events = oldLongs.diff(newLongs, DiffAlgorithm.CHANGES_ONLY);
+        assertThat(events.toString(), is(oldLongs.diff(newLongs, DiffAlgorithm.LEVEL).toString()));
+        assertThat(events.size(), is(3));
+    }
+}
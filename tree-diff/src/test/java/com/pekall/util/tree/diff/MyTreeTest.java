@@ -4,8 +4,15 @@ import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.Random;
 
 import static com.pekall.util.tree.diff.NodeEventType.*;
 
@@ -91,6 +98,21 @@ public class MyTreeTest {
         assertThat(myTree.getDeep(), is(4));
     }
 
+    @Test
+    public void testGetLevel() {
+        MyTree<Integer> myTree = new MyTree<>(1);
+        Node<Integer> node2 = myTree.addNode(myTree.getRoot(), 2);
+        Node<Integer> node3 = myTree.addNode(node2, 3);
+
+        assertThat(myTree.getRoot().getLevel(), is(1));
+        assertThat(node2.getLevel(), is(2));
+        assertThat(node3.getLevel(), is(3));
+        assertThat(myTree.getDeep(), is(3));
+
+        myTree.addNode(myTree.getRoot(), 4);
+        assertThat(myTree.getDeep(), is(3));
+    }
+
     @Test
     public void testGetByLevel() {
         Tree<Integer> myTree = sampleTree();
@@ -117,6 +139,94 @@ public class MyTreeTest {
         assertThat(level3.get(5).key, is(10));
     }
 
+    @Test
+    public void testGetByLevelAddedOutOfOrder() {
+        MyTree<Integer> myTree = new MyTree<>(1);
+        Node<Integer> node2 = myTree.addNode(myTree.getRoot(), 2);
+        Node<Integer> node3 = myTree.addNode(myTree.getRoot(), 3);
+        Node<Integer> node6 = myTree.addNode(node3, 6);
+        Node<Integer> node5 = myTree.addNode(node2, 5);
+        myTree.addNode(node6, 7);
+        myTree.addNode(node5, 8);
+
+        List<Node<Integer>> level3 = myTree.getByLevel(3);
+        assertThat(level3.size(), is(2));
+        assertThat(level3.get(0).key, is(5));
+        assertThat(level3.get(1).key, is(6));
+
+        List<Node<Integer>> level4 = myTree.getByLevel(4);
+        assertThat(level4.size(), is(2));
+        assertThat(level4.get(0).key, is(8));
+        assertThat(level4.get(1).key, is(7));
+
+        assertTrue(myTree.getByLevel(5).isEmpty());
+    }
+
+    @Test
+    public void testLevelIterator() {
+        Tree<Integer> myTree = sampleTree();
+
+        Iterator<List<Node<Integer>>> levels = myTree.levelIterator();
+        for(int level = 1; level <= myTree.getDeep(); level++){
+            assertTrue(levels.hasNext());
+            assertThat(levels.next(), is(myTree.getByLevel(level)));
+        }
+        assertFalse(levels.hasNext());
+    }
+
+    private static List<Integer> keys(List<Node<Integer>> nodes){
+        List<Integer> keys = new ArrayList<>();
+        for(Node<Integer> node : nodes){
+            keys.add(node.key);
+        }
+        return keys;
+    }
+
+    private static Visitor<Integer> collector(final List<Node<Integer>> visited){
+        return new Visitor<Integer>() {
+            @Override
+            public void visit(Node<Integer> node) {
+                visited.add(node);
+            }
+        };
+    }
+
+    @Test
+    public void testPreOrderTraverse() {
+        List<Node<Integer>> visited = new ArrayList<>();
+        oldTree.preOrderTraverse(oldTree.getRoot(), collector(visited));
+
+        assertThat(keys(visited), is(Arrays.asList(1, 2, 5, 6, 3, 7, 8, 4, 9, 10)));
+    }
+
+    @Test
+    public void testPostOrderTraverse() {
+        List<Node<Integer>> visited = new ArrayList<>();
+        oldTree.postOrderTraverse(oldTree.getRoot(), collector(visited));
+
+        assertThat(keys(visited), is(Arrays.asList(5, 6, 2, 7, 8, 3, 9, 10, 4, 1)));
+    }
+
+    @Test
+    public void testTraverseDeepChain() {
+        int deep = 100000;
+        MyTree<Integer> myTree = new MyTree<>(1);
+        Node<Integer> node = myTree.getRoot();
+        for(int i = 2; i <= deep; i++){
+            node = myTree.addNode(node, i);
+        }
+
+        List<Node<Integer>> visited = new ArrayList<>();
+        myTree.preOrderTraverse(myTree.getRoot(), collector(visited));
+        assertThat(visited.size(), is(deep));
+        assertThat(visited.get(0).key, is(1));
+
+        visited.clear();
+        myTree.postOrderTraverse(myTree.getRoot(), collector(visited));
+        assertThat(visited.size(), is(deep));
+        assertThat(visited.get(0).key, is(deep));
+    }
+
     @Test
     public void testHasChildren() {
         assertTrue(oldTree.getRoot().hasChildren());
@@ -125,6 +235,214 @@ public class MyTreeTest {
         assertFalse(node11.hasChildren());
     }
 
+    @Test
+    public void testFindByKey() {
+        MyTree<Integer> tree = (MyTree<Integer>) oldTree;
+        assertThat(tree.size(), is(10));
+        assertThat(tree.findByKey(1), is(sameInstance(tree.getRoot())));
+        assertThat(tree.findByKey(8).toString(), is("1/3/8"));
+        assertThat(tree.findByKey(11), is(nullValue()));
+        assertFalse(tree.contains(11));
+
+        Node<Integer> node11 = tree.addNode(tree.findByKey(8), 11);
+        assertThat(tree.findByKey(11), is(sameInstance(node11)));
+        assertTrue(tree.contains(11));
+        assertThat(tree.size(), is(11));
+
+        MyTree<Integer> built = new TreeBuilder<Integer>().add(1, null).add(2, 1).add(3, 2).build();
+        assertThat(built.findByKey(3).toString(), is("1/2/3"));
+        assertThat(built.size(), is(3));
+    }
+
+    @Test
+    public void testAddDuplicateKey() {
+        MyTree<Integer> tree = (MyTree<Integer>) oldTree;
+        try {
+            tree.addNode(tree.findByKey(5), 8);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("duplicate key 8"));
+        }
+        assertThat(tree.size(), is(10));
+        assertFalse(tree.findByKey(5).hasChildren());
+    }
+
+    @Test
+    public void testRemoveNode() {
+        MyTree<Integer> tree = (MyTree<Integer>) oldTree;
+        Node<Integer> node3 = tree.findByKey(3);
+        tree.removeNode(node3);
+        assertThat(tree.toString(), is("1\n\t2\n\t\t5\n\t\t6\n\t7\n\t8\n\t4\n\t\t9\n\t\t10\n"));
+        assertThat(tree.getByLevel(2).toString(), is("[1/2, 1/7, 1/8, 1/4]"));
+        assertThat(tree.findByKey(8).getLevel(), is(2));
+        assertThat(tree.findByKey(3), is(nullValue()));
+        assertThat(tree.size(), is(9));
+        assertFalse(node3.hasChildren());
+
+        assertRemoveFails(tree, tree.getRoot(), "can't remove root");
+        assertRemoveFails(tree, node3, "node 3 doesn't exist");
+        assertRemoveFails(tree, new MyTree<>(2).getRoot(), "node 2 doesn't exist");
+    }
+
+    private static void assertRemoveFails(MyTree<Integer> tree, Node<Integer> node, String message) {
+        try {
+            tree.removeNode(node);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is(message));
+        }
+        try {
+            tree.removeSubtree(node);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is(message));
+        }
+    }
+
+    @Test
+    public void testRemoveSubtree() {
+        MyTree<Integer> tree = (MyTree<Integer>) oldTree;
+        tree.removeSubtree(tree.findByKey(3));
+        assertThat(tree.toString(), is("1\n\t2\n\t\t5\n\t\t6\n\t4\n\t\t9\n\t\t10\n"));
+        assertThat(tree.getByLevel(3).toString(), is("[1/2/5, 1/2/6, 1/4/9, 1/4/10]"));
+        assertFalse(tree.contains(7));
+        assertThat(tree.size(), is(7));
+
+        tree.removeSubtree(tree.findByKey(2));
+        tree.removeSubtree(tree.findByKey(4));
+        assertThat(tree.getDeep(), is(1));
+        assertThat(tree.getByLevel(2).size(), is(0));
+        assertThat(tree.size(), is(1));
+
+        tree.addNode(tree.getRoot(), 3);
+        assertThat(tree.getByLevel(2).toString(), is("[1/3]"));
+    }
+
+    @Test
+    public void testMoveSubtree() {
+        MyTree<Integer> tree = (MyTree<Integer>) oldTree;
+        tree.moveSubtree(tree.findByKey(3), tree.findByKey(5));
+        assertThat(tree.getDeep(), is(5));
+        assertThat(tree.getByLevel(3).toString(), is("[1/2/5, 1/2/6, 1/4/9, 1/4/10]"));
+        assertThat(tree.getByLevel(5).toString(), is("[1/2/5/3/7, 1/2/5/3/8]"));
+
+        tree.moveSubtree(tree.findByKey(3), tree.getRoot());
+        assertThat(tree.getDeep(), is(3));
+        assertThat(tree.toString(), is("1\n\t2\n\t\t5\n\t\t6\n\t4\n\t\t9\n\t\t10\n\t3\n\t\t7\n\t\t8\n"));
+
+        try {
+            tree.moveSubtree(tree.findByKey(2), tree.findByKey(5));
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("cycle at 2"));
+        }
+        try {
+            tree.moveSubtree(tree.findByKey(2), new MyTree<>(4).getRoot());
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("node 4 doesn't exist"));
+        }
+    }
+
+    /**
+     * 随机的增删和移动与按同样的父子关系新建的树一致, 变化日志和子树哈希随之维护.
+     */
+    @Test
+    public void testMutateInPlace() {
+        Random random = new Random(20161114L);
+        for (int round = 0; round < 200; round++) {
+            Map<Integer, Integer> parents = RandomTrees.randomParents(1 + random.nextInt(40), random);
+            MyTree<Integer> tree = (MyTree<Integer>) RandomTrees.build(parents);
+            Tree<Integer> checkpoint = RandomTrees.build(parents);
+            tree.diff(checkpoint, DiffAlgorithm.CHANGES_ONLY);
+            tree.checkpoint();
+
+            int nextKey = parents.size() + 1;
+            for (int i = random.nextInt(30); i > 0; i--) {
+                List<Integer> keys = new ArrayList<>(parents.keySet());
+                Integer key = keys.get(random.nextInt(keys.size()));
+                Node<Integer> node = tree.findByKey(key);
+                switch (parents.get(key) == null ? 0 : random.nextInt(4)) {
+                    case 0:
+                        tree.addNode(node, nextKey);
+                        parents.put(nextKey++, key);
+                        break;
+                    case 1:
+                        tree.removeNode(node);
+                        for (Map.Entry<Integer, Integer> entry : parents.entrySet()) {
+                            if (key.equals(entry.getValue())) {
+                                entry.setValue(parents.get(key));
+                            }
+                        }
+                        parents.remove(key);
+                        break;
+                    case 2:
+                        tree.removeSubtree(node);
+                        parents.keySet().retainAll(RandomTrees.parents(tree).keySet());
+                        break;
+                    default:
+                        Integer newParent = keys.get(random.nextInt(keys.size()));
+                        if (!isDescendant(tree.findByKey(newParent), node)) {
+                            tree.moveSubtree(node, tree.findByKey(newParent));
+                            parents.put(key, newParent);
+                        }
+                }
+            }
+
+            assertThat(RandomTrees.parents(tree), is(parents));
+            assertThat(tree.size(), is(parents.size()));
+            int level = 1;
+            List<Node<Integer>> expected = Arrays.asList(tree.getRoot());
+            while (!expected.isEmpty()) {
+                assertThat(tree.getByLevel(level), is(expected));
+                List<Node<Integer>> next = new ArrayList<>();
+                for (Node<Integer> node : expected) {
+                    assertThat(node.getLevel(), is(level));
+                    assertThat(tree.findByKey(node.key), is(sameInstance(node)));
+                    if (node.children != null) {
+                        next.addAll(node.children);
+                    }
+                }
+                expected = next;
+                level++;
+            }
+            assertThat(tree.getDeep(), is(level - 1));
+
+            //子树哈希已随修改失效, 与按先序记录新建的树没有变化
+            final List<Map.Entry<Integer, Integer>> records = new ArrayList<>();
+            tree.preOrderTraverse(tree.getRoot(), new Visitor<Integer>() {
+                @Override
+                public void visit(Node<Integer> node) {
+                    records.add(new AbstractMap.SimpleEntry<>(node.key, node.parent == null ? null : node.parent.key));
+                }
+            });
+            assertThat(tree.diff(TreeBuilder.build(records), DiffAlgorithm.CHANGES_ONLY).size(), is(0));
+            assertThat(RandomTrees.parents(new TreePatch<>(tree.getChanges()).applyCopy(checkpoint)), is(parents));
+        }
+    }
+
+    private static boolean isDescendant(Node<Integer> node, Node<Integer> ancestor) {
+        for (Node<Integer> n = node; n != null; n = n.parent) {
+            if (n == ancestor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testDiffOtherTreeTypes() {
+        Random random = new Random(20161113L);
+        for (int round = 0; round < 200; round++) {
+            Map<Integer, Integer> parents = RandomTrees.randomParents(1 + random.nextInt(40), random);
+            Map<Integer, Integer> mutated = RandomTrees.mutate(parents, random);
+            String expected = RandomTrees.build(parents).diff(RandomTrees.build(mutated)).toString();
+            assertThat(RandomTrees.build(parents).diff(RandomTrees.buildCompact(mutated)).toString(), is(expected));
+            assertThat(RandomTrees.build(parents).diff(RandomTrees.build(mutated), DiffAlgorithm.HASH).toString(),
+                    is(expected));
+        }
+    }
+
     @Test
     public void testDiffSelf() {
         Queue<NodeEvent<Integer>> events = oldTree.diff(oldTree);
@@ -393,4 +711,22 @@ public class MyTreeTest {
         assertEvent(events.poll(), DELETE, 1);
 
     }
+
+    /**
+     * 改写后的{@link DiffAlgorithm#LEVEL}与最初的removeAll/retainAll实现({@link BaselineDiff})结果一致.
+     */
+    @Test
+    public void testDiffMatchesBaseline() {
+        RandomTrees.DiffFunction baseline = new RandomTrees.DiffFunction() {
+            @Override
+            public Collection<NodeEvent<Integer>> diff(Tree<Integer> oldTree, Tree<Integer> newTree) {
+                return BaselineDiff.diff(oldTree, newTree);
+            }
+        };
+        Tree<Integer> tree = RandomTrees.sampleTree();
+        RandomTrees.assertSameDiff(baseline, RandomTrees.LEVEL_DIFF, tree, tree);
+        RandomTrees.assertSameDiff(baseline, RandomTrees.LEVEL_DIFF, tree, new MyTree<>(1));
+        RandomTrees.assertSameDiff(baseline, RandomTrees.LEVEL_DIFF, new MyTree<>(1), tree);
+        RandomTrees.assertSameDiffOnRandomTrees(baseline, RandomTrees.LEVEL_DIFF, 20161116L);
+    }
 }
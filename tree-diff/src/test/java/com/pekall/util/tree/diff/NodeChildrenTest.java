@@ -0,0 +1,76 @@
+package com.pekall.util.tree.diff;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+public class NodeChildrenTest {
+
+    @Test
+    public void testRandomOperations() {
+        Random random = new Random(20161104L);
+        for (int round = 0; round < 200; round++) {
+            List<Node<Integer>> children = random.nextBoolean()
+                    ? new NodeChildren<Integer>() : new NodeChildren<Integer>(random.nextInt(4));
+            List<Node<Integer>> expected = new ArrayList<>();
+
+            for (int i = 0; i < 40; i++) {
+                int operation = random.nextInt(4);
+                if (operation == 0 || expected.isEmpty()) {
+                    Node<Integer> node = new Node<>(i);
+                    int index = random.nextInt(expected.size() + 1);
+                    children.add(index, node);
+                    expected.add(index, node);
+                } else if (operation == 1) {
+                    int index = random.nextInt(expected.size());
+                    assertThat(children.remove(index), sameInstance(expected.remove(index)));
+                } else if (operation == 2) {
+                    Node<Integer> node = new Node<>(-i);
+                    int index = random.nextInt(expected.size());
+                    assertThat(children.set(index, node), sameInstance(expected.set(index, node)));
+                } else {
+                    Node<Integer> node = new Node<>(i);
+                    children.add(node);
+                    expected.add(node);
+                }
+                assertThat(children, is(expected));
+            }
+        }
+    }
+
+    @Test
+    public void testSingleChild() {
+        NodeChildren<Integer> children = new NodeChildren<>();
+        Node<Integer> node = new Node<>(1);
+        children.add(node);
+        assertThat(children.size(), is(1));
+        assertThat(children.get(0), sameInstance(node));
+        assertThat(children.remove(0), sameInstance(node));
+        assertTrue(children.isEmpty());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testIndexOutOfBounds() {
+        NodeChildren<Integer> children = new NodeChildren<>();
+        children.add(new Node<>(1));
+        children.get(1);
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void testConcurrentModification() {
+        NodeChildren<Integer> children = new NodeChildren<>();
+        children.add(new Node<>(1));
+        children.add(new Node<>(2));
+        Iterator<Node<Integer>> iterator = children.iterator();
+        iterator.next();
+        children.add(new Node<>(3));
+        iterator.next();
+    }
+}
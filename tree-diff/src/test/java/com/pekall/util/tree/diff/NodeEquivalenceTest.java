@@ -0,0 +1,167 @@
+package com.pekall.util.tree.diff;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static com.pekall.util.tree.diff.NodeEventType.*;
+import static com.pekall.util.tree.diff.RandomTrees.*;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+public class NodeEquivalenceTest {
+
+    /**
+     * 带负载的key, equals比较全部字段.
+     */
+    private static final class Item {
+        private final int id;
+        private final String payload;
+
+        Item(int id, String payload) {
+            this.id = id;
+            this.payload = payload;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Item)) {
+                return false;
+            }
+            Item item = (Item) o;
+            return id == item.id && payload.equals(item.payload);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * id + payload.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return id + ":" + payload;
+        }
+    }
+
+    private static final class ItemEquivalence implements NodeEquivalence<Item> {
+        private int compared;
+
+        @Override
+        public Object identity(Item key) {
+            return key.id;
+        }
+
+        @Override
+        public long contentHash(Item key) {
+            return key.payload.length();
+        }
+
+        @Override
+        public boolean sameContent(Item key, Item otherKey) {
+            compared++;
+            return key.payload.equals(otherKey.payload);
+        }
+    }
+
+    private static Tree<Item> buildItems(Map<Integer, Integer> parents, Map<Integer, String> payloads) {
+        TreeBuilder<Item> builder = new TreeBuilder<>();
+        Map<Integer, Item> items = new HashMap<>();
+        for (Integer key : parents.keySet()) {
+            items.put(key, new Item(key, payloads.containsKey(key) ? payloads.get(key) : "v" + key));
+        }
+        for (Map.Entry<Integer, Integer> entry : parents.entrySet()) {
+            builder.add(items.get(entry.getKey()), entry.getValue() == null ? null : items.get(entry.getValue()));
+        }
+        return builder.build();
+    }
+
+    private static <T> List<String> events(Tree<T> oldTree, Tree<T> newTree, NodeEquivalence<? super T> equivalence) {
+        final List<String> events = new ArrayList<>();
+        oldTree.diff(newTree, equivalence, new NodeEventSink<T>() {
+            @Override
+            public void onEvent(NodeEvent<T> event) {
+                events.add(event.getEventType() + " " + event.getNode().key);
+            }
+        });
+        return events;
+    }
+
+    @Test
+    public void testUpdateOnlyChangedContent() {
+        Random random = new Random(20161106L);
+        for (int round = 0; round < 100; round++) {
+            Map<Integer, Integer> oldParents = randomParents(1 + random.nextInt(40), random);
+            Map<Integer, Integer> newParents = mutate(oldParents, random);
+
+            //约三分之一的节点负载变化, 一半长度不变以覆盖sameContent
+            Map<Integer, String> payloads = new HashMap<>();
+            for (Integer key : newParents.keySet()) {
+                if (random.nextInt(3) == 0) {
+                    payloads.put(key, random.nextBoolean() ? "w" + key : "changed" + key);
+                }
+            }
+
+            List<String> expected = new ArrayList<>();
+            for (NodeEvent<Integer> event : build(oldParents).diff(build(newParents))) {
+                Integer key = event.getNode().key;
+                if (event.getEventType() != UPDATE || payloads.containsKey(key)) {
+                    expected.add(event.getEventType() + " " + key);
+                }
+            }
+
+            List<String> actual = new ArrayList<>();
+            for (String event : events(buildItems(oldParents, new HashMap<Integer, String>()),
+                    buildItems(newParents, payloads), new ItemEquivalence())) {
+                //只保留标识
+                actual.add(event.substring(0, event.indexOf(':')));
+            }
+            assertThat(actual, is(expected));
+        }
+    }
+
+    @Test
+    public void testKeyEquivalence() {
+        Random random = new Random(20161107L);
+        for (int round = 0; round < 50; round++) {
+            Map<Integer, Integer> oldParents = randomParents(1 + random.nextInt(40), random);
+            Map<Integer, Integer> newParents = mutate(oldParents, random);
+            Tree<Integer> oldTree = build(oldParents);
+            Tree<Integer> newTree = build(newParents);
+
+            List<String> expected = new ArrayList<>();
+            for (NodeEvent<Integer> event : oldTree.diff(newTree)) {
+                expected.add(event.getEventType() + " " + event.getNode().key);
+            }
+            assertThat(events(oldTree, newTree, NodeEquivalence.KEY), is(expected));
+        }
+    }
+
+    @Test
+    public void testContentHashShortCircuit() {
+        Map<Integer, Integer> parents = new LinkedHashMap<>();
+        parents.put(1, null);
+        parents.put(2, 1);
+        parents.put(3, 1);
+        Map<Integer, String> payloads = new HashMap<>();
+        payloads.put(2, "longer payload");
+
+        ItemEquivalence equivalence = new ItemEquivalence();
+        List<String> events = events(buildItems(parents, new HashMap<Integer, String>()),
+                buildItems(parents, payloads), equivalence);
+        assertThat(events.toString(), is("[UPDATE 2:v2]"));
+        //2的哈希不同, 只比较了1和3
+        assertThat(equivalence.compared, is(2));
+
+        Set<String> compactEvents = new HashSet<>();
+        CompactTree<Integer> compact = buildCompact(parents);
+        compactEvents.addAll(events(compact, buildCompact(parents), NodeEquivalence.KEY));
+        assertThat(compactEvents.size(), is(3));
+    }
+}
@@ -0,0 +1,74 @@
+package com.pekall.util.tree.diff;
+
+import org.junit.Test;
+
+import java.util.Queue;
+
+import static com.pekall.util.tree.diff.NodeEventType.*;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+public class NodeEventJournalTest {
+
+    @Test
+    public void testFindAndChangeType() {
+        MyTree<Integer> tree = new MyTree<>(1);
+        Node<Integer> node2 = tree.addNode(tree.getRoot(), 2);
+        Node<Integer> node3 = tree.addNode(tree.getRoot(), 3);
+
+        NodeEventJournal<Integer> journal = new NodeEventJournal<>();
+        journal.add(UPDATE, tree.getRoot());
+        NodeEvent<Integer> delete2 = journal.add(DELETE, node2);
+        journal.add(CREATE, node3);
+
+        assertThat(journal.find(DELETE, node2), is(sameInstance(delete2)));
+        assertThat(journal.find(DELETE, node3), is(nullValue()));
+        assertThat(journal.find(CREATE, node2), is(nullValue()));
+
+        journal.changeType(delete2, MOVE);
+
+        assertThat(journal.find(DELETE, node2), is(nullValue()));
+        assertThat(journal.find(MOVE, node2), is(sameInstance(delete2)));
+
+        Queue<NodeEvent<Integer>> events = journal.getEvents();
+        assertThat(events.size(), is(3));
+        assertThat(events.poll().getEventType(), is(UPDATE));
+        assertThat(events.poll().getEventType(), is(MOVE));
+        assertThat(events.poll().getEventType(), is(CREATE));
+    }
+
+    @Test
+    public void testDiffManyMovedSubtrees() {
+        /*
+            old tree: 0 -> b(i) -> c(i)
+            new tree: 0 -> a(i) -> b(i) -> c(i), 每个子树都下移一层
+         */
+        int count = 10000;
+        MyTree<Integer> oldTree = new MyTree<>(0);
+        MyTree<Integer> newTree = new MyTree<>(0);
+        for (int i = 0; i < count; i++) {
+            Node<Integer> b = oldTree.addNode(oldTree.getRoot(), 3 * i + 2);
+            oldTree.addNode(b, 3 * i + 3);
+
+            Node<Integer> newA = newTree.addNode(newTree.getRoot(), 3 * i + 1);
+            Node<Integer> newB = newTree.addNode(newA, 3 * i + 2);
+            newTree.addNode(newB, 3 * i + 3);
+        }
+
+        Queue<NodeEvent<Integer>> events = oldTree.diff(newTree, DiffAlgorithm.HASH);
+
+        int moves = 0;
+        int creates = 0;
+        for (NodeEvent<Integer> event : events) {
+            if (event.getEventType() == MOVE) {
+                moves++;
+            } else if (event.getEventType() == CREATE) {
+                creates++;
+            }
+        }
+        assertThat(events.size(), is(3 * count + 1));
+        assertThat(moves, is(2 * count));
+        assertThat(creates, is(count));
+    }
+}
@@ -0,0 +1,131 @@
+package com.pekall.util.tree.diff;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static com.pekall.util.tree.diff.RandomTrees.*;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+public class NodeIteratorsTest {
+
+    private static List<Integer> keys(Iterator<Node<Integer>> iterator) {
+        List<Integer> keys = new ArrayList<>();
+        while (iterator.hasNext()) {
+            keys.add(iterator.next().key);
+        }
+        return keys;
+    }
+
+    private static Visitor<Integer> collector(final List<Integer> keys) {
+        return new Visitor<Integer>() {
+            @Override
+            public void visit(Node<Integer> node) {
+                keys.add(node.key);
+            }
+        };
+    }
+
+    @Test
+    public void testSampleTree() {
+        Tree<Integer> tree = sampleTree();
+        assertThat(keys(tree.preOrderIterator(tree.getRoot())), is(Arrays.asList(1, 2, 5, 6, 3, 7, 8, 11, 4, 9, 10)));
+        assertThat(keys(tree.postOrderIterator(tree.getRoot())), is(Arrays.asList(5, 6, 2, 7, 11, 8, 3, 9, 10, 4, 1)));
+        assertThat(keys(tree.levelOrderIterator(tree.getRoot())), is(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11)));
+
+        //只遍历起始节点的子树
+        Node<Integer> node3 = tree.getByLevel(2).get(1);
+        assertThat(keys(tree.preOrderIterator(node3)), is(Arrays.asList(3, 7, 8, 11)));
+        assertThat(keys(tree.postOrderIterator(node3)), is(Arrays.asList(7, 11, 8, 3)));
+        assertThat(keys(tree.levelOrderIterator(node3)), is(Arrays.asList(3, 7, 8, 11)));
+
+        assertFalse(tree.preOrderIterator(null).hasNext());
+        assertFalse(tree.postOrderIterator(null).hasNext());
+        assertFalse(tree.levelOrderIterator(null).hasNext());
+    }
+
+    /**
+     * 子节点列表不支持随机访问时通过迭代器读取, 不按下标读取.
+     */
+    @Test
+    public void testLinkedChildren() {
+        Tree<Integer> tree = sampleTree();
+        Node<Integer> root = linkedCopy(tree.getRoot());
+        assertThat(keys(NodeIterators.preOrder(root)), is(keys(tree.preOrderIterator(tree.getRoot()))));
+        assertThat(keys(NodeIterators.postOrder(root)), is(keys(tree.postOrderIterator(tree.getRoot()))));
+        assertThat(keys(NodeIterators.levelOrder(root)), is(keys(tree.levelOrderIterator(tree.getRoot()))));
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testNextAfterEnd() {
+        Tree<Integer> tree = new MyTree<>(1);
+        Iterator<Node<Integer>> iterator = tree.preOrderIterator(tree.getRoot());
+        iterator.next();
+        iterator.next();
+    }
+
+    /**
+     * 各实现上迭代器的顺序与对应的遍历一致.
+     */
+    @Test
+    public void testMatchesTraversals() {
+        Random random = new Random(20161129L);
+        for (int round = 0; round < 50; round++) {
+            Map<Integer, Integer> parents = randomParents(1 + random.nextInt(200), random);
+            List<Tree<Integer>> trees = new ArrayList<>();
+            trees.add(build(parents));
+            trees.add(buildCompact(parents));
+            PersistentTree<Integer> persistent = new PersistentTree<>(1);
+            for (Node<Integer> node : trees.get(0).getByLevel(2)) {
+                addSubtree(persistent, trees.get(0), node);
+            }
+            trees.add(persistent);
+
+            for (Tree<Integer> tree : trees) {
+                List<Node<Integer>> level = tree.getByLevel(1 + random.nextInt(tree.getDeep()));
+                Node<Integer> fromNode = level.get(random.nextInt(level.size()));
+
+                List<Integer> expected = new ArrayList<>();
+                tree.preOrderTraverse(fromNode, collector(expected));
+                assertThat(keys(tree.preOrderIterator(fromNode)), is(expected));
+                expected.clear();
+                tree.postOrderTraverse(fromNode, collector(expected));
+                assertThat(keys(tree.postOrderIterator(fromNode)), is(expected));
+                expected.clear();
+                tree.levelTraverse(fromNode, collector(expected));
+                assertThat(keys(tree.levelOrderIterator(fromNode)), is(expected));
+            }
+        }
+    }
+
+    private static void addSubtree(Tree<Integer> target, Tree<Integer> source, Node<Integer> fromNode) {
+        Iterator<Node<Integer>> iterator = source.preOrderIterator(fromNode);
+        while (iterator.hasNext()) {
+            Node<Integer> node = iterator.next();
+            //PersistentTree按key解析父节点
+            target.addNode(node.parent, node.key);
+        }
+    }
+
+    /**
+     * 深度优先迭代器不递归, 很深的树也不会栈溢出; 后序的第一个节点是最深的叶子.
+     */
+    @Test
+    public void testDeepChain() {
+        MyTree<Integer> tree = new MyTree<>(0);
+        Node<Integer> node = tree.getRoot();
+        for (int i = 1; i < 100000; i++) {
+            node = tree.addNode(node, i);
+        }
+        assertThat(tree.postOrderIterator(tree.getRoot()).next().key, is(99999));
+        assertThat(keys(tree.preOrderIterator(tree.getRoot())).size(), is(100000));
+        assertThat(keys(tree.postOrderIterator(tree.getRoot())).size(), is(100000));
+    }
+}
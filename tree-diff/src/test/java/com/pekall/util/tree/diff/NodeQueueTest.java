@@ -0,0 +1,94 @@
+package com.pekall.util.tree.diff;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+public class NodeQueueTest {
+
+    @Test
+    public void testFifo() {
+        Random random = new Random(20161105L);
+        NodeQueue<Integer> queue = new NodeQueue<>();
+        Deque<Node<Integer>> expected = new ArrayDeque<>();
+        for (int i = 0; i < 5000; i++) {
+            //先增长再交替进出, 覆盖环绕和扩容
+            if (expected.isEmpty() || random.nextInt(3) > (i < 2500 ? 0 : 1)) {
+                Node<Integer> node = new Node<>(i);
+                queue.offer(node);
+                expected.offer(node);
+            } else {
+                assertThat(queue.poll(), sameInstance(expected.poll()));
+            }
+            assertThat(queue.size(), is(expected.size()));
+        }
+        while (!expected.isEmpty()) {
+            assertThat(queue.poll(), sameInstance(expected.poll()));
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testReuse() {
+        NodeQueue<Integer> queue = NodeQueue.acquire();
+        queue.offer(new Node<>(1));
+
+        //使用中时另取一个新队列
+        NodeQueue<Integer> nested = NodeQueue.acquire();
+        assertThat(nested, not(sameInstance(queue)));
+        nested.release();
+
+        queue.release();
+        NodeQueue<Integer> reused = NodeQueue.acquire();
+        assertThat(reused, sameInstance(queue));
+        assertTrue(reused.isEmpty());
+        reused.release();
+    }
+
+    @Test
+    public void testNestedTraverse() {
+        final MyTree<Integer> tree = (MyTree<Integer>) RandomTrees.sampleTree();
+        final List<Integer> keys = new ArrayList<>();
+        tree.levelTraverse(tree.getRoot(), new Visitor<Integer>() {
+            @Override
+            public void visit(Node<Integer> node) {
+                keys.add(node.key);
+                if (node.key == 3) {
+                    tree.levelTraverse(node, new Visitor<Integer>() {
+                        @Override
+                        public void visit(Node<Integer> node) {
+                            keys.add(-node.key);
+                        }
+                    });
+                }
+            }
+        });
+        assertThat(keys.toString(), is("[1, 2, 3, -3, -7, -8, -11, 4, 5, 6, 7, 8, 9, 10, 11]"));
+    }
+
+    @Test
+    public void testReleaseOnException() {
+        MyTree<Integer> tree = (MyTree<Integer>) RandomTrees.sampleTree();
+        try {
+            tree.levelTraverse(tree.getRoot(), new Visitor<Integer>() {
+                @Override
+                public void visit(Node<Integer> node) {
+                    throw new IllegalStateException();
+                }
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            //队列已清空并放回
+            NodeQueue<Integer> queue = NodeQueue.acquire();
+            assertTrue(queue.isEmpty());
+            queue.release();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.pekall.util.tree.diff;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+
+import static com.pekall.util.tree.diff.NodeEventType.*;
+import static com.pekall.util.tree.diff.RandomTrees.*;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+public class OrderedDiffTest {
+
+    private static MyTree<Integer> shuffled(Map<Integer, Integer> parents, Random random) {
+        List<Map.Entry<Integer, Integer>> records = new ArrayList<>(parents.entrySet());
+        Collections.shuffle(records, random);
+        return TreeBuilder.build(records);
+    }
+
+    private static Map<Integer, List<Integer>> children(Tree<Integer> tree) {
+        final Map<Integer, List<Integer>> children = new HashMap<>();
+        tree.preOrderTraverse(tree.getRoot(), new Visitor<Integer>() {
+            @Override
+            public void visit(Node<Integer> node) {
+                List<Integer> keys = new ArrayList<>();
+                if (node.children != null) {
+                    for (Node<Integer> child : node.children) {
+                        keys.add(child.key);
+                    }
+                }
+                children.put(node.key, keys);
+            }
+        });
+        return children;
+    }
+
+    /**
+     * 平方级的最长递增子序列长度.
+     */
+    private static int longestIncreasing(List<Integer> values) {
+        int[] lengths = new int[values.size()];
+        int longest = 0;
+        for (int i = 0; i < values.size(); i++) {
+            lengths[i] = 1;
+            for (int j = 0; j < i; j++) {
+                if (values.get(j) < values.get(i)) {
+                    lengths[i] = Math.max(lengths[i], lengths[j] + 1);
+                }
+            }
+            longest = Math.max(longest, lengths[i]);
+        }
+        return longest;
+    }
+
+    @Test
+    public void testReorder() {
+        Random random = new Random(20161108L);
+        for (int round = 0; round < 300; round++) {
+            Map<Integer, Integer> oldParents = randomParents(1 + random.nextInt(40), random);
+            Map<Integer, Integer> newParents = mutate(oldParents, random);
+            Tree<Integer> oldTree = TreeBuilder.build(oldParents.entrySet());
+            Tree<Integer> newTree = shuffled(newParents, random);
+
+            Queue<NodeEvent<Integer>> events = oldTree.diff(newTree, DiffAlgorithm.ORDERED);
+
+            //去掉REORDER后与HASH一致, REORDER都在最后
+            List<String> structural = new ArrayList<>();
+            boolean reordering = false;
+            for (NodeEvent<Integer> event : events) {
+                if (event.getEventType() == REORDER) {
+                    reordering = true;
+                } else {
+                    assertFalse(reordering);
+                    structural.add(event.toString());
+                }
+            }
+            List<String> expected = new ArrayList<>();
+            for (NodeEvent<Integer> event : oldTree.diff(newTree, DiffAlgorithm.HASH)) {
+                expected.add(event.toString());
+            }
+            assertThat(structural, is(expected));
+
+            //保留的子节点: 旧树和新树中父节点相同
+            Map<Integer, List<Integer>> oldChildren = children(oldTree);
+            Map<Integer, List<Integer>> newChildren = children(newTree);
+            Map<Integer, List<Integer>> retained = new HashMap<>();
+            Map<Integer, List<Integer>> expectedOrder = new HashMap<>();
+            for (Map.Entry<Integer, List<Integer>> entry : newChildren.entrySet()) {
+                List<Integer> before = oldChildren.get(entry.getKey());
+                if (before == null) {
+                    continue;
+                }
+                List<Integer> after = new ArrayList<>(entry.getValue());
+                after.retainAll(before);
+                List<Integer> kept = new ArrayList<>(before);
+                kept.retainAll(after);
+                retained.put(entry.getKey(), kept);
+                expectedOrder.put(entry.getKey(), after);
+            }
+
+            //依次将REORDER节点移到新树中之前最近的保留兄弟之后
+            Map<Integer, Integer> reorders = new HashMap<>();
+            for (NodeEvent<Integer> event : events) {
+                if (event.getEventType() != REORDER) {
+                    continue;
+                }
+                Integer parent = event.getNode().parent.key;
+                Integer key = event.getNode().key;
+                List<Integer> order = expectedOrder.get(parent);
+                List<Integer> current = retained.get(parent);
+                current.remove(key);
+                int index = order.indexOf(key);
+                current.add(index == 0 ? 0 : current.indexOf(order.get(index - 1)) + 1, key);
+                reorders.put(parent, reorders.containsKey(parent) ? reorders.get(parent) + 1 : 1);
+            }
+            assertThat(retained, is(expectedOrder));
+
+            //每个父节点的REORDER数最少
+            for (Map.Entry<Integer, List<Integer>> entry : expectedOrder.entrySet()) {
+                List<Integer> oldIndexes = new ArrayList<>();
+                for (Integer key : entry.getValue()) {
+                    oldIndexes.add(oldChildren.get(entry.getKey()).indexOf(key));
+                }
+                int minimal = oldIndexes.size() - longestIncreasing(oldIndexes);
+                Integer actual = reorders.get(entry.getKey());
+                assertThat(actual == null ? 0 : actual, is(minimal));
+            }
+        }
+    }
+
+    @Test
+    public void testSiblingSwap() {
+        Tree<String> oldTree = new TreeBuilder<String>().add("a", null).add("b", "a").add("c", "a").add("d", "a")
+                .build();
+        Tree<String> newTree = new TreeBuilder<String>().add("a", null).add("c", "a").add("d", "a").add("b", "a")
+                .build();
+        List<String> reorders = new ArrayList<>();
+        for (NodeEvent<String> event : oldTree.diff(newTree, DiffAlgorithm.ORDERED)) {
+            if (event.getEventType() == REORDER) {
+                reorders.add(event.getNode().toString());
+            }
+        }
+        assertThat(reorders.toString(), is("[a/b]"));
+
+        CompactTree<Integer> compact = buildCompact(Collections.<Integer, Integer>singletonMap(1, null));
+        assertThat(compact.diff(compact, DiffAlgorithm.ORDERED).size(), is(1));
+    }
+}
@@ -0,0 +1,75 @@
+package com.pekall.util.tree.diff;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.pekall.util.tree.diff.RandomTrees.*;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ * 以{@link DiffAlgorithm#LEVEL}的结果为基准, 验证{@link ParallelDiff}的结果与之一致.
+ */
+public class ParallelDiffTest {
+
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void setUpPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterClass
+    public static void tearDownPool() {
+        pool.shutdown();
+    }
+
+    private static final DiffFunction PARALLEL_DIFF = new DiffFunction() {
+        @Override
+        public Collection<NodeEvent<Integer>> diff(Tree<Integer> oldTree, Tree<Integer> newTree) {
+            //每个子任务只处理两个节点, 尽量多地拆分任务
+            return new ParallelDiff<>(oldTree, newTree, pool, 2).diff();
+        }
+    };
+
+    private static void assertSameDiff(Tree<Integer> oldTree, Tree<Integer> newTree) {
+        RandomTrees.assertSameDiff(LEVEL_DIFF, PARALLEL_DIFF, oldTree, newTree);
+    }
+
+    @Test
+    public void testDiffSelf() {
+        Tree<Integer> tree = sampleTree();
+        assertSameDiff(tree, tree);
+    }
+
+    @Test
+    public void testDiffSingleNode() {
+        assertSameDiff(new MyTree<>(1), new MyTree<>(1));
+        assertSameDiff(new MyTree<>(1), new MyTree<>(2));
+        assertSameDiff(sampleTree(), new MyTree<>(1));
+        assertSameDiff(new MyTree<>(1), sampleTree());
+    }
+
+    @Test
+    public void testDiffRandomTrees() {
+        assertSameDiffOnRandomTrees(LEVEL_DIFF, PARALLEL_DIFF, 20161019L);
+    }
+
+    @Test
+    public void testDiffLargeTrees() {
+        Random random = new Random(20161020L);
+        //两棵独立生成的随机树, 大部分节点层号不同
+        Tree<Integer> oldTree = build(randomParents(ParallelDiff.PARALLEL_THRESHOLD / 2, random));
+        Tree<Integer> newTree = build(randomParents(ParallelDiff.PARALLEL_THRESHOLD / 2 + 1000, random));
+
+        Queue<NodeEvent<Integer>> expected = oldTree.diff(newTree, DiffAlgorithm.HASH);
+        assertThat(oldTree.diff(newTree, DiffAlgorithm.PARALLEL).toString(), is(expected.toString()));
+        assertThat(oldTree.diff(newTree, DiffAlgorithm.AUTO).toString(), is(expected.toString()));
+    }
+}
@@ -0,0 +1,193 @@
+package com.pekall.util.tree.diff;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+public class PersistentTreeTest {
+
+    @Test
+    public void testSnapshotIsImmutable() {
+        PersistentTree<Integer> tree = new PersistentTree<>(1);
+        Node<Integer> node2 = tree.addNode(tree.getRoot(), 2);
+        tree.addNode(node2, 3);
+        PersistentTree<Integer> snapshot = tree.snapshot();
+        assertThat(snapshot.getRoot(), is(sameInstance(tree.getRoot())));
+
+        //参数节点可以来自任意版本
+        tree.moveSubtree(snapshot.getByLevel(3).get(0), snapshot.getRoot());
+        tree.removeNode(node2);
+        tree.addNode(snapshot.getRoot(), 4);
+        assertThat(snapshot.toString(), is("1\n\t2\n\t\t3\n"));
+        assertThat(snapshot.getDeep(), is(3));
+        assertThat(snapshot.size(), is(3));
+        assertThat(tree.toString(), is("1\n\t3\n\t4\n"));
+        assertThat(tree.getDeep(), is(2));
+        assertThat(tree.size(), is(3));
+    }
+
+    @Test
+    public void testInvalidMutation() {
+        PersistentTree<Integer> tree = new PersistentTree<>(1);
+        Node<Integer> node2 = tree.addNode(tree.getRoot(), 2);
+        PersistentTree<Integer> snapshot = tree.snapshot();
+        try {
+            tree.addNode(new MyTree<>(3).getRoot(), 4);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("node 3 doesn't exist"));
+        }
+        try {
+            tree.addNode(node2, 1);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("duplicate key 1"));
+        }
+        try {
+            tree.moveSubtree(tree.getRoot(), node2);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("cycle at 1"));
+        }
+        try {
+            tree.removeSubtree(tree.getRoot());
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("can't remove root"));
+        }
+        try {
+            snapshot.addNode(snapshot.getRoot(), 3);
+            fail();
+        } catch (UnsupportedOperationException e) {
+            assertThat(e.getMessage(), is("snapshot is read-only"));
+        }
+        assertThat(tree.getRoot(), is(sameInstance(snapshot.getRoot())));
+    }
+
+    /**
+     * 未修改的分支在两个版本间共享, 比较时直接跳过.
+     */
+    @Test
+    public void testSharedSubtrees() {
+        PersistentTree<Integer> tree = new PersistentTree<>(1);
+        Node<Integer> node2 = tree.addNode(tree.getRoot(), 2);
+        tree.addNode(node2, 4);
+        Node<Integer> node3 = tree.addNode(tree.getRoot(), 3);
+        tree.addNode(node3, 5);
+        PersistentTree<Integer> snapshot = tree.snapshot();
+
+        tree.addNode(node3, 6);
+        Node<Integer> before2 = snapshot.getByLevel(2).get(0);
+        Node<Integer> after2 = tree.getByLevel(2).get(0);
+        assertThat(after2, is(not(sameInstance(before2))));
+        assertTrue(PersistentTree.shared(before2, after2));
+        assertFalse(PersistentTree.shared(snapshot.getByLevel(2).get(1), tree.getByLevel(2).get(1)));
+        assertFalse(PersistentTree.shared(snapshot.getRoot(), tree.getRoot()));
+
+        //只有新增的节点及其祖先产生事件
+        Queue<NodeEvent<Integer>> events = tree.diff(snapshot, DiffAlgorithm.CHANGES_ONLY);
+        assertThat(events.size(), is(3));
+        for (NodeEvent<Integer> event : events) {
+            assertThat(event.getNode().key, is(anyOf(is(1), is(3), is(6))));
+        }
+    }
+
+    /**
+     * 条目的哈希相同而key不同的子树不共享, 比较时逐个确认key, 仍能比较出变化.
+     */
+    @Test
+    public void testHashCollision() {
+        PersistentTree<String> tree = new PersistentTree<>("root");
+        Node<String> shared = tree.addNode(tree.getRoot(), "shared");
+        tree.addNode(shared, "child");
+        Node<String> x = tree.addNode(tree.getRoot(), "x");
+        tree.addNode(x, "Aa");
+        PersistentTree<String> snapshot = tree.snapshot();
+
+        tree.removeNode(snapshot.getByLevel(3).get(1));
+        tree.addNode(x, "BB");
+        assertThat(SubtreeHash.of(tree.getRoot()), is(SubtreeHash.of(snapshot.getRoot())));
+        assertTrue(PersistentTree.shared(snapshot.getByLevel(2).get(0), tree.getByLevel(2).get(0)));
+
+        //与同样结构的MyTree比较结果一致, 只有共享的分支没有事件
+        MyTree<String> before = new MyTree<>("root");
+        before.addNode(before.addNode(before.getRoot(), "shared"), "child");
+        before.addNode(before.addNode(before.getRoot(), "x"), "Aa");
+        MyTree<String> after = new MyTree<>("root");
+        after.addNode(after.addNode(after.getRoot(), "shared"), "child");
+        after.addNode(after.addNode(after.getRoot(), "x"), "BB");
+        String expected = before.diff(after, DiffAlgorithm.CHANGES_ONLY).toString();
+        assertThat(snapshot.diff(tree, DiffAlgorithm.CHANGES_ONLY).toString(), is(expected));
+        assertThat(snapshot.diff(tree, DiffAlgorithm.CHANGES_ONLY).size(), is(4));
+    }
+
+    /**
+     * 随机修改后与对同样的MyTree做同样修改的结果一致, 各版本间的比较结果也一致.
+     */
+    @Test
+    public void testRandomMutations() {
+        Random random = new Random(20161122L);
+        for (int round = 0; round < 100; round++) {
+            PersistentTree<Integer> tree = new PersistentTree<>(1);
+            MyTree<Integer> expected = new MyTree<>(1);
+            List<Integer> keys = new ArrayList<>();
+            keys.add(1);
+            PersistentTree<Integer> previous = tree.snapshot();
+            MyTree<Integer> expectedPrevious = expected.copy();
+            String previousString = previous.toString();
+
+            for (int i = 0; i < 200; i++) {
+                Integer key = keys.get(random.nextInt(keys.size()));
+                Node<Integer> node = expected.findByKey(key);
+                if (node == null) {
+                    continue;
+                }
+                switch (key == 1 ? 0 : random.nextInt(4)) {
+                    case 0:
+                        expected.addNode(node, keys.size() + 1);
+                        tree.addNode(node, keys.size() + 1);
+                        keys.add(keys.size() + 1);
+                        break;
+                    case 1:
+                        expected.removeNode(node);
+                        tree.removeNode(node);
+                        break;
+                    case 2:
+                        if (random.nextInt(4) == 0) {
+                            expected.removeSubtree(node);
+                            tree.removeSubtree(node);
+                        }
+                        break;
+                    default:
+                        Node<Integer> newParent = expected.findByKey(keys.get(random.nextInt(keys.size())));
+                        if (newParent != null && !newParent.getPath().contains(key)) {
+                            expected.moveSubtree(node, newParent);
+                            tree.moveSubtree(node, newParent);
+                        }
+                }
+                if (i == 100) {
+                    previous = tree.snapshot();
+                    expectedPrevious = expected.copy();
+                    previousString = previous.toString();
+                }
+            }
+
+            assertThat(tree.toString(), is(expected.toString()));
+            assertThat(tree.size(), is(expected.size()));
+            assertThat(tree.getDeep(), is(expected.getDeep()));
+            for (int level = 1; level <= expected.getDeep(); level++) {
+                assertThat(tree.getByLevel(level).toString(), is(expected.getByLevel(level).toString()));
+            }
+            assertThat(previous.toString(), is(previousString));
+            assertThat(tree.diff(previous).toString(), is(expected.diff(expectedPrevious).toString()));
+            assertThat(tree.diff(previous, DiffAlgorithm.CHANGES_ONLY).toString(),
+                    is(expected.diff(expectedPrevious, DiffAlgorithm.CHANGES_ONLY).toString()));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.pekall.util.tree.diff;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static com.pekall.util.tree.diff.RandomTrees.*;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ * 以{@link DiffAlgorithm#LEVEL}的结果为基准, 验证{@link IntTree}和{@link LongTree}的比较结果.
+ */
+public class PrimitiveTreeTest {
+
+    private static final long OFFSET = 1L << 40;
+
+    private static List<String> expectedEvents(Tree<Integer> oldTree, Tree<Integer> newTree, long offset) {
+        List<String> events = new ArrayList<>();
+        for (NodeEvent<Integer> event : oldTree.diff(newTree, DiffAlgorithm.LEVEL)) {
+            events.add(event.getEventType() + ":" + (event.getNode().key + offset));
+        }
+        return events;
+    }
+
+    private static List<String> events(final IntTree oldTree, final IntTree newTree) {
+        final List<String> events = new ArrayList<>();
+        oldTree.diff(newTree, new HandleEventSink() {
+            @Override
+            public void onEvent(NodeEventType eventType, int node) {
+                boolean inNew = eventType == NodeEventType.CREATE || eventType == NodeEventType.MOVE;
+                events.add(eventType + ":" + (inNew ? newTree.getKey(node) : oldTree.getKey(node)));
+            }
+        });
+        return events;
+    }
+
+    private static List<String> events(final LongTree oldTree, final LongTree newTree) {
+        final List<String> events = new ArrayList<>();
+        oldTree.diff(newTree, new HandleEventSink() {
+            @Override
+            public void onEvent(NodeEventType eventType, int node) {
+                boolean inNew = eventType == NodeEventType.CREATE || eventType == NodeEventType.MOVE;
+                events.add(eventType + ":" + (inNew ? newTree.getKey(node) : oldTree.getKey(node)));
+            }
+        });
+        return events;
+    }
+
+    @Test
+    public void testAddNode() {
+        LongTree tree = new LongTree(OFFSET, 1);
+        int node2 = tree.addNode(LongTree.ROOT, OFFSET + 2);
+        int node3 = tree.addNode(node2, -3L);
+
+        assertThat(tree.size(), is(3));
+        assertThat(tree.getDeep(), is(3));
+        assertThat(tree.getKey(node3), is(-3L));
+        assertThat(tree.getParent(node3), is(node2));
+        assertThat(tree.toString(), is(OFFSET + "\n\t" + (OFFSET + 2) + "\n\t\t-3\n"));
+    }
+
+    @Test
+    public void testKeysDifferInHighBits() {
+        LongTree oldTree = new LongTree(0L);
+        oldTree.addNode(LongTree.ROOT, 1L);
+        LongTree newTree = new LongTree(0L);
+        newTree.addNode(LongTree.ROOT, 1L + OFFSET);
+
+        assertThat(events(oldTree, newTree).toString(),
+                is("[UPDATE:0, CREATE:" + (1L + OFFSET) + ", DELETE:1]"));
+    }
+
+    @Test
+    public void testDiffRandomTrees() {
+        Random random = new Random(20161027L);
+        for (int round = 0; round < 500; round++) {
+            Map<Integer, Integer> parents = randomParents(1 + random.nextInt(60), random);
+            Map<Integer, Integer> mutated = mutate(parents, random);
+
+            assertThat(events(buildInt(parents), buildInt(mutated)),
+                    is(expectedEvents(build(parents), build(mutated), 0)));
+            assertThat(events(buildLong(parents, OFFSET), buildLong(mutated, OFFSET)),
+                    is(expectedEvents(build(parents), build(mutated), OFFSET)));
+            assertThat(events(buildLong(mutated, OFFSET), buildLong(parents, OFFSET)),
+                    is(expectedEvents(build(mutated), build(parents), OFFSET)));
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.pekall.util.tree.diff;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ * 比较算法测试用的树.
+ */
+class RandomTrees {
+
+    /**
+     * 一种比较两棵树的方式.
+     */
+    interface DiffFunction {
+        Collection<NodeEvent<Integer>> diff(Tree<Integer> oldTree, Tree<Integer> newTree);
+    }
+
+    /**
+     * {@link DiffAlgorithm#LEVEL}, 其他算法的基准.
+     */
+    static final DiffFunction LEVEL_DIFF = new DiffFunction() {
+        @Override
+        public Collection<NodeEvent<Integer>> diff(Tree<Integer> oldTree, Tree<Integer> newTree) {
+            return oldTree.diff(newTree, DiffAlgorithm.LEVEL);
+        }
+    };
+
+    private RandomTrees() {
+    }
+
+    /**
+     * 两种方式比较同一对树, 事件一致.
+     */
+    static void assertSameDiff(DiffFunction expected, DiffFunction actual,
+                               Tree<Integer> oldTree, Tree<Integer> newTree) {
+        Collection<NodeEvent<Integer>> expectedEvents = expected.diff(oldTree, newTree);
+        Collection<NodeEvent<Integer>> actualEvents = actual.diff(oldTree, newTree);
+
+        assertThat(actualEvents.size(), is(expectedEvents.size()));
+        //toString包含节点路径, 可以区分事件引用的是旧树还是新树的节点
+        assertThat(actualEvents.toString(), is(expectedEvents.toString()));
+    }
+
+    /**
+     * 在500对随机树上双向比较, 两种方式的事件一致.
+     */
+    static void assertSameDiffOnRandomTrees(DiffFunction expected, DiffFunction actual, long seed) {
+        Random random = new Random(seed);
+        for (int round = 0; round < 500; round++) {
+            Map<Integer, Integer> parents = randomParents(1 + random.nextInt(60), random);
+            Map<Integer, Integer> mutated = mutate(parents, random);
+
+            assertSameDiff(expected, actual, build(parents), build(mutated));
+            assertSameDiff(expected, actual, build(mutated), build(parents));
+        }
+    }
+
+    static Tree<Integer> sampleTree() {
+        Tree<Integer> myTree = new MyTree<>(1);
+        Node<Integer> node2 = myTree.addNode(myTree.getRoot(), 2);
+        Node<Integer> node3 = myTree.addNode(myTree.getRoot(), 3);
+        Node<Integer> node4 = myTree.addNode(myTree.getRoot(), 4);
+
+        myTree.addNode(node2, 5);
+        myTree.addNode(node2, 6);
+
+        myTree.addNode(node3, 7);
+        Node<Integer> node8 = myTree.addNode(node3, 8);
+        myTree.addNode(node8, 11);
+
+        myTree.addNode(node4, 9);
+        myTree.addNode(node4, 10);
+        return myTree;
+    }
+
+    /**
+     * 复制子树, 子节点保存在不支持随机访问的链表中, 按下标读取时失败, 用于检查只通过迭代器读取子节点.
+     */
+    static <T> Node<T> linkedCopy(Node<T> node) {
+        Node<T> copy = new Node<>(node.key);
+        if (node.children != null) {
+            copy.children = new LinkedList<Node<T>>() {
+                @Override
+                public Node<T> get(int index) {
+                    throw new UnsupportedOperationException("indexed access on a linked child list");
+                }
+            };
+            for (Node<T> child : node.children) {
+                Node<T> childCopy = linkedCopy(child);
+                childCopy.parent = copy;
+                copy.children.add(childCopy);
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * 按 key -> parentKey 构建树, 父节点必须先于子节点出现.
+     */
+    static Tree<Integer> build(Map<Integer, Integer> parents) {
+        Tree<Integer> tree = null;
+        Map<Integer, Node<Integer>> nodes = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Integer> entry : parents.entrySet()) {
+            if (entry.getValue() == null) {
+                tree = new MyTree<>(entry.getKey());
+                nodes.put(entry.getKey(), tree.getRoot());
+            } else {
+                nodes.put(entry.getKey(), tree.addNode(nodes.get(entry.getValue()), entry.getKey()));
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * 按 key -> parentKey 构建{@link CompactTree}, 父节点必须先于子节点出现.
+     */
+    static CompactTree<Integer> buildCompact(Map<Integer, Integer> parents) {
+        CompactTree<Integer> tree = null;
+        Map<Integer, Integer> handles = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Integer> entry : parents.entrySet()) {
+            if (entry.getValue() == null) {
+                tree = new CompactTree<>(entry.getKey());
+                handles.put(entry.getKey(), CompactTree.ROOT);
+            } else {
+                handles.put(entry.getKey(), tree.addNode(handles.get(entry.getValue()), entry.getKey()));
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * 按 key -> parentKey 构建{@link IntTree}.
+     */
+    static IntTree buildInt(Map<Integer, Integer> parents) {
+        IntTree tree = null;
+        Map<Integer, Integer> handles = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Integer> entry : parents.entrySet()) {
+            if (entry.getValue() == null) {
+                tree = new IntTree(entry.getKey());
+                handles.put(entry.getKey(), IntTree.ROOT);
+            } else {
+                handles.put(entry.getKey(), tree.addNode(handles.get(entry.getValue()), entry.getKey()));
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * 按 key -> parentKey 构建{@link LongTree}, key加上offset.
+     */
+    static LongTree buildLong(Map<Integer, Integer> parents, long offset) {
+        LongTree tree = null;
+        Map<Integer, Integer> handles = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Integer> entry : parents.entrySet()) {
+            if (entry.getValue() == null) {
+                tree = new LongTree(entry.getKey() + offset);
+                handles.put(entry.getKey(), LongTree.ROOT);
+            } else {
+                handles.put(entry.getKey(), tree.addNode(handles.get(entry.getValue()), entry.getKey() + offset));
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * 树的 key -> parentKey.
+     */
+    static Map<Integer, Integer> parents(Tree<Integer> tree) {
+        final Map<Integer, Integer> parents = new HashMap<>();
+        tree.preOrderTraverse(tree.getRoot(), new Visitor<Integer>() {
+            @Override
+            public void visit(Node<Integer> node) {
+                parents.put(node.key, node.parent == null ? null : node.parent.key);
+            }
+        });
+        return parents;
+    }
+
+    private static boolean isDescendant(Map<Integer, Integer> parents, Integer key, Integer ancestor) {
+        for (Integer k = key; k != null; k = parents.get(k)) {
+            if (k.equals(ancestor)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 随机生成 key -> parentKey, key从1开始, 1为根节点.
+     */
+    static Map<Integer, Integer> randomParents(int size, Random random) {
+        Map<Integer, Integer> parents = new LinkedHashMap<>();
+        parents.put(1, null);
+        for (int key = 2; key <= size; key++) {
+            parents.put(key, 1 + random.nextInt(key - 1));
+        }
+        return parents;
+    }
+
+    /**
+     * 对旧树做随机的删除, 移动和新增, 得到新树的 key -> parentKey.
+     */
+    static Map<Integer, Integer> mutate(Map<Integer, Integer> parents, Random random) {
+        Map<Integer, Integer> mutated = new LinkedHashMap<>(parents);
+        List<Integer> keys = new ArrayList<>(parents.keySet());
+        int nextKey = keys.size() + 1;
+        int mutations = random.nextInt(keys.size() + 1);
+
+        for (int i = 0; i < mutations; i++) {
+            Integer key = keys.get(random.nextInt(keys.size()));
+            if (!mutated.containsKey(key)) {
+                continue;
+            }
+            //根节点只能新增子节点
+            switch (mutated.get(key) == null ? 2 : random.nextInt(3)) {
+                case 0:
+                    List<Integer> subtree = new ArrayList<>();
+                    for (Integer k : mutated.keySet()) {
+                        if (isDescendant(mutated, k, key)) {
+                            subtree.add(k);
+                        }
+                    }
+                    mutated.keySet().removeAll(subtree);
+                    break;
+                case 1:
+                    List<Integer> candidates = new ArrayList<>();
+                    for (Integer k : mutated.keySet()) {
+                        if (!isDescendant(mutated, k, key)) {
+                            candidates.add(k);
+                        }
+                    }
+                    mutated.put(key, candidates.get(random.nextInt(candidates.size())));
+                    break;
+                default:
+                    mutated.put(nextKey++, key);
+            }
+        }
+
+        //重新排序, 保证父节点在前
+        Map<Integer, Integer> ordered = new LinkedHashMap<>();
+        while (ordered.size() < mutated.size()) {
+            for (Map.Entry<Integer, Integer> entry : mutated.entrySet()) {
+                if (!ordered.containsKey(entry.getKey())
+                        && (entry.getValue() == null || ordered.containsKey(entry.getValue()))) {
+                    ordered.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return ordered;
+    }
+}
@@ -0,0 +1,51 @@
+package com.pekall.util.tree.diff;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static com.pekall.util.tree.diff.RandomTrees.*;
+
+/**
+ * 以{@link DiffAlgorithm#LEVEL}的结果为基准, 验证流式比较推送的事件与之一致.
+ */
+public class StreamingDiffTest {
+
+    private static final DiffFunction STREAMING_DIFF = new DiffFunction() {
+        @Override
+        public Collection<NodeEvent<Integer>> diff(Tree<Integer> oldTree, Tree<Integer> newTree) {
+            final List<NodeEvent<Integer>> events = new ArrayList<>();
+            oldTree.diff(newTree, new NodeEventSink<Integer>() {
+                @Override
+                public void onEvent(NodeEvent<Integer> event) {
+                    events.add(event);
+                }
+            });
+            return events;
+        }
+    };
+
+    private static void assertSameDiff(Tree<Integer> oldTree, Tree<Integer> newTree) {
+        RandomTrees.assertSameDiff(LEVEL_DIFF, STREAMING_DIFF, oldTree, newTree);
+    }
+
+    @Test
+    public void testDiffSelf() {
+        Tree<Integer> tree = sampleTree();
+        assertSameDiff(tree, tree);
+    }
+
+    @Test
+    public void testDiffSingleNode() {
+        assertSameDiff(new MyTree<>(1), new MyTree<>(2));
+        assertSameDiff(sampleTree(), new MyTree<>(1));
+        assertSameDiff(new MyTree<>(1), sampleTree());
+    }
+
+    @Test
+    public void testDiffRandomTrees() {
+        assertSameDiffOnRandomTrees(LEVEL_DIFF, STREAMING_DIFF, 20161021L);
+    }
+}
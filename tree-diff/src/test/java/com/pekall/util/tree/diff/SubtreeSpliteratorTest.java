@@ -0,0 +1,135 @@
+package com.pekall.util.tree.diff;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+
+import static com.pekall.util.tree.diff.RandomTrees.*;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+public class SubtreeSpliteratorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<Integer> preOrder(Tree<Integer> tree) {
+        final List<Integer> keys = new ArrayList<>();
+        tree.preOrderTraverse(tree.getRoot(), new Visitor<Integer>() {
+            @Override
+            public void visit(Node<Integer> node) {
+                keys.add(node.key);
+            }
+        });
+        return keys;
+    }
+
+    /**
+     * 随机拆分, 各部分按拆分顺序拼接后仍是先序.
+     */
+    @Test
+    public void testSplitKeepsPreOrder() {
+        Random random = new Random(20161206L);
+        for (int round = 0; round < 100; round++) {
+            Tree<Integer> tree = build(randomParents(1 + random.nextInt(300), random));
+            List<Integer> keys = new ArrayList<>();
+            split(tree.spliterator(), random, keys, 0);
+            assertThat(keys, is(preOrder(tree)));
+        }
+    }
+
+    private static void split(Spliterator<Node<Integer>> spliterator, Random random, final List<Integer> keys,
+                              int depth) {
+        //拆分前后穿插单步前进
+        while (random.nextInt(4) == 0 && spliterator.tryAdvance(node -> keys.add(node.key))) {
+        }
+        Spliterator<Node<Integer>> prefix = depth < 10 ? spliterator.trySplit() : null;
+        if (prefix != null) {
+            split(prefix, random, keys, depth + 1);
+            split(spliterator, random, keys, depth + 1);
+        } else {
+            spliterator.forEachRemaining(node -> keys.add(node.key));
+        }
+    }
+
+    /**
+     * 子节点列表不支持随机访问时, 逐个前进, 拆分和遍历剩余节点都不按下标读取.
+     */
+    @Test
+    public void testLinkedChildren() {
+        Tree<Integer> tree = build(randomParents(200, new Random(20161214L)));
+        List<Integer> expected = preOrder(tree);
+        Node<Integer> root = linkedCopy(tree.getRoot());
+
+        List<Integer> keys = new ArrayList<>();
+        Spliterator<Node<Integer>> spliterator = new SubtreeSpliterator<>(root, tree.size());
+        while (spliterator.tryAdvance(node -> keys.add(node.key))) {
+        }
+        assertThat(keys, is(expected));
+
+        keys.clear();
+        spliterator = new SubtreeSpliterator<>(root, tree.size());
+        spliterator.tryAdvance(node -> keys.add(node.key));
+        Spliterator<Node<Integer>> prefix = spliterator.trySplit();
+        prefix.forEachRemaining(node -> keys.add(node.key));
+        spliterator.forEachRemaining(node -> keys.add(node.key));
+        assertThat(keys, is(expected));
+    }
+
+    @Test
+    public void testSplitLeaf() {
+        Tree<Integer> tree = new MyTree<>(1);
+        Spliterator<Node<Integer>> spliterator = tree.spliterator();
+        assertThat(spliterator.trySplit(), is(nullValue()));
+        assertThat(spliterator.estimateSize(), is(1L));
+        assertTrue(spliterator.tryAdvance(node -> assertThat(node.key, is(1))));
+        assertFalse(spliterator.tryAdvance(node -> fail()));
+        assertTrue(spliterator.hasCharacteristics(Spliterator.ORDERED));
+    }
+
+    /**
+     * 各实现的并行流与顺序流结果一致, 短路操作的结果也一致.
+     */
+    @Test
+    public void testStreams() throws IOException {
+        Random random = new Random(20161213L);
+        Map<Integer, Integer> parents = randomParents(5000, random);
+        MyTree<Integer> myTree = (MyTree<Integer>) build(parents);
+        List<Tree<Integer>> trees = new ArrayList<>();
+        trees.add(myTree);
+        trees.add(buildCompact(parents));
+        Path file = folder.newFile().toPath();
+        TreeSnapshot.write(myTree, KeyCodec.INTEGER, true, file);
+        trees.add(TreeSnapshot.open(file, KeyCodec.INTEGER));
+        PersistentTree<Integer> persistent = new PersistentTree<>(1);
+        ConcurrentTree<Integer> concurrent = new ConcurrentTree<>(1);
+        for (Map.Entry<Integer, Integer> entry : parents.entrySet()) {
+            if (entry.getValue() != null) {
+                Node<Integer> parent = myTree.findByKey(entry.getValue());
+                persistent.addNode(parent, entry.getKey());
+                concurrent.addNode(parent, entry.getKey());
+            }
+        }
+        trees.add(persistent);
+        trees.add(concurrent);
+
+        List<Integer> expected = preOrder(myTree);
+        for (Tree<Integer> tree : trees) {
+            assertThat(tree.stream().map(node -> node.key).collect(Collectors.toList()), is(expected));
+            assertThat(tree.parallelStream().map(node -> node.key).collect(Collectors.toList()), is(expected));
+            assertThat(tree.parallelStream().mapToLong(node -> node.getLevel()).sum(),
+                    is(tree.stream().mapToLong(node -> node.getLevel()).sum()));
+            assertThat(tree.stream().filter(node -> node.key.equals(4000)).findFirst().get().key, is(4000));
+            assertThat(tree.parallelStream().anyMatch(node -> node.key.equals(6000)), is(false));
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.pekall.util.tree.diff;
+
+import org.junit.Test;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static com.pekall.util.tree.diff.RandomTrees.*;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+public class TreeBuilderTest {
+
+    private static Map<Integer, Integer> parents(Tree<Integer> tree) {
+        final Map<Integer, Integer> parents = new HashMap<>();
+        tree.preOrderTraverse(tree.getRoot(), new Visitor<Integer>() {
+            @Override
+            public void visit(Node<Integer> node) {
+                parents.put(node.key, node.parent == null ? null : node.parent.key);
+            }
+        });
+        return parents;
+    }
+
+    /**
+     * 层索引与层序遍历一致, 层号正确.
+     */
+    private static void assertLevels(Tree<Integer> tree) {
+        final List<Node<Integer>> traversed = new ArrayList<>();
+        tree.levelTraverse(tree.getRoot(), new Visitor<Integer>() {
+            @Override
+            public void visit(Node<Integer> node) {
+                traversed.add(node);
+            }
+        });
+        List<Node<Integer>> indexed = new ArrayList<>();
+        for (int level = 1; level <= tree.getDeep(); level++) {
+            for (Node<Integer> node : tree.getByLevel(level)) {
+                assertThat(node.getLevel(), is(level));
+                assertThat(node.getLevel(), is(node.parent == null ? 1 : node.parent.getLevel() + 1));
+                indexed.add(node);
+            }
+        }
+        assertThat(indexed, is(traversed));
+    }
+
+    @Test
+    public void testBuildInOrder() {
+        Random random = new Random(20161101L);
+        for (int round = 0; round < 100; round++) {
+            Map<Integer, Integer> parents = randomParents(1 + random.nextInt(80), random);
+            MyTree<Integer> tree = TreeBuilder.build(parents.entrySet());
+
+            assertThat(tree.toString(), is(build(parents).toString()));
+            assertLevels(tree);
+        }
+    }
+
+    @Test
+    public void testBuildShuffled() {
+        Random random = new Random(20161102L);
+        for (int round = 0; round < 100; round++) {
+            Map<Integer, Integer> parents = randomParents(1 + random.nextInt(80), random);
+            List<Map.Entry<Integer, Integer>> records = new ArrayList<>(parents.entrySet());
+            Collections.shuffle(records, random);
+
+            TreeBuilder<Integer> builder = new TreeBuilder<>(records.size());
+            for (Map.Entry<Integer, Integer> record : records) {
+                builder.add(record.getKey(), record.getValue());
+            }
+            MyTree<Integer> tree = builder.build();
+
+            assertThat(parents(tree), is(parents));
+            assertLevels(tree);
+
+            //构建后仍可继续添加节点
+            Node<Integer> deepest = tree.getByLevel(tree.getDeep()).get(0);
+            tree.addNode(deepest, -1);
+            tree.addNode(tree.getRoot(), -2);
+            parents.put(-1, deepest.key);
+            parents.put(-2, tree.getRoot().key);
+            assertThat(parents(tree), is(parents));
+            assertLevels(tree);
+        }
+    }
+
+    @Test
+    public void testChildrenInRecordOrder() {
+        MyTree<String> tree = new TreeBuilder<String>()
+                .add("c", "a")
+                .add("b", "a")
+                .add("d", "b")
+                .add("a", null)
+                .build();
+        assertThat(tree.toString(), is("a\n\tc\n\tb\n\t\td\n"));
+        assertThat(tree.getDeep(), is(3));
+    }
+
+    @Test
+    public void testDiffSameAsAddNode() {
+        Random random = new Random(20161103L);
+        for (int round = 0; round < 50; round++) {
+            Map<Integer, Integer> oldParents = randomParents(1 + random.nextInt(40), random);
+            Map<Integer, Integer> newParents = mutate(oldParents, random);
+
+            Tree<Integer> oldTree = TreeBuilder.build(oldParents.entrySet());
+            Tree<Integer> newTree = TreeBuilder.build(newParents.entrySet());
+            assertThat(oldTree.diff(newTree).toString(), is(build(oldParents).diff(build(newParents)).toString()));
+        }
+    }
+
+    private static Map.Entry<Integer, Integer> record(Integer key, Integer parentKey) {
+        return new AbstractMap.SimpleEntry<>(key, parentKey);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateKey() {
+        new TreeBuilder<Integer>().add(1, null).add(2, 1).add(2, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullKey() {
+        new TreeBuilder<Integer>().add(null, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOrphan() {
+        TreeBuilder.build(Collections.singletonList(record(1, 2)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoRecords() {
+        new TreeBuilder<Integer>().build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMultipleRoots() {
+        new TreeBuilder<Integer>().add(1, null).add(2, null).build();
+    }
+
+    @Test
+    public void testCycle() {
+        TreeBuilder<Integer> builder = new TreeBuilder<Integer>().add(1, null).add(2, 1).add(3, 4).add(4, 3);
+        try {
+            builder.build();
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("cycle at 3"));
+        }
+
+        builder = new TreeBuilder<Integer>().add(1, 1);
+        try {
+            builder.build();
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("no root"));
+        }
+    }
+}
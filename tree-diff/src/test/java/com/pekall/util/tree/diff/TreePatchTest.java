@@ -0,0 +1,218 @@
+package com.pekall.util.tree.diff;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+
+import static com.pekall.util.tree.diff.NodeEventType.*;
+import static com.pekall.util.tree.diff.RandomTrees.*;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+public class TreePatchTest {
+
+    private static Map<Integer, List<Integer>> children(Tree<Integer> tree) {
+        final Map<Integer, List<Integer>> children = new HashMap<>();
+        tree.preOrderTraverse(tree.getRoot(), new Visitor<Integer>() {
+            @Override
+            public void visit(Node<Integer> node) {
+                List<Integer> keys = new ArrayList<>();
+                if (node.children != null) {
+                    for (Node<Integer> child : node.children) {
+                        keys.add(child.key);
+                    }
+                }
+                children.put(node.key, keys);
+            }
+        });
+        return children;
+    }
+
+    /**
+     * 层索引与父子关系一致.
+     */
+    private static void assertLevels(Tree<Integer> tree) {
+        int count = 0;
+        for (int level = 1; level <= tree.getDeep(); level++) {
+            for (Node<Integer> node : tree.getByLevel(level)) {
+                assertThat(node.getLevel(), is(level));
+                assertThat(node.parent == null, is(level == 1));
+                count++;
+            }
+        }
+        assertThat(count, is(parents(tree).size()));
+    }
+
+    /**
+     * 精确描述两棵树差异的事件, 顺序打乱: 新树中父节点不同或新增的节点各一个MOVE或CREATE, 只在旧树中的节点各一个DELETE.
+     */
+    private static Queue<NodeEvent<Integer>> exactEvents(Map<Integer, Integer> oldParents, Tree<Integer> newTree,
+                                                         Random random) {
+        List<NodeEvent<Integer>> events = new ArrayList<>();
+        Map<Integer, Node<Integer>> newNodes = new HashMap<>();
+        for (int level = 1; level <= newTree.getDeep(); level++) {
+            for (Node<Integer> node : newTree.getByLevel(level)) {
+                newNodes.put(node.key, node);
+                Integer parent = node.parent == null ? null : node.parent.key;
+                if (!oldParents.containsKey(node.key)) {
+                    events.add(new NodeEvent<>(CREATE, node));
+                } else if (parent == null ? oldParents.get(node.key) != null : !parent.equals(oldParents.get(node.key))) {
+                    events.add(new NodeEvent<>(MOVE, node));
+                }
+            }
+        }
+        Tree<Integer> oldTree = build(oldParents);
+        for (int level = 1; level <= oldTree.getDeep(); level++) {
+            for (Node<Integer> node : oldTree.getByLevel(level)) {
+                if (!newNodes.containsKey(node.key)) {
+                    events.add(new NodeEvent<>(DELETE, node));
+                }
+            }
+        }
+        Collections.shuffle(events, random);
+        return new LinkedList<>(events);
+    }
+
+    @Test
+    public void testApplyExactEvents() {
+        Random random = new Random(20161110L);
+        for (int round = 0; round < 300; round++) {
+            Map<Integer, Integer> oldParents = randomParents(1 + random.nextInt(60), random);
+            Map<Integer, Integer> newParents = mutate(oldParents, random);
+            Tree<Integer> newTree = build(newParents);
+            TreePatch<Integer> patch = new TreePatch<>(exactEvents(oldParents, newTree, random));
+
+            Tree<Integer> oldTree = build(oldParents);
+            MyTree<Integer> copy = patch.applyCopy(oldTree);
+            assertThat(parents(copy), is(parents(newTree)));
+            assertThat(parents(oldTree), is((Map<Integer, Integer>) new HashMap<>(oldParents)));
+            assertLevels(copy);
+
+            MyTree<Integer> tree = (MyTree<Integer>) oldTree;
+            Tree<Integer> checkpoint = build(oldParents);
+            tree.diff(checkpoint, DiffAlgorithm.CHANGES_ONLY);
+            tree.checkpoint();
+            assertThat(patch.applyTo(tree), is(sameInstance(tree)));
+            assertThat(parents(tree), is(parents(newTree)));
+            assertThat(children(tree), is(children(copy)));
+            assertLevels(tree);
+
+            //子树哈希随之失效, 与新建的树比较结果相同; 变化日志可以重放
+            List<String> expected = new ArrayList<>();
+            for (NodeEvent<Integer> event : copy.diff(newTree, DiffAlgorithm.CHANGES_ONLY)) {
+                expected.add(event.toString());
+            }
+            List<String> actual = new ArrayList<>();
+            for (NodeEvent<Integer> event : tree.diff(newTree, DiffAlgorithm.CHANGES_ONLY)) {
+                actual.add(event.toString());
+            }
+            assertThat(actual, is(expected));
+            assertThat(parents(new TreePatch<>(tree.getChanges()).applyCopy(checkpoint)), is(parents(newTree)));
+        }
+    }
+
+    @Test
+    public void testApplyDiff() {
+        Random random = new Random(20161111L);
+        for (int round = 0; round < 300; round++) {
+            Map<Integer, Integer> oldParents = randomParents(1 + random.nextInt(60), random);
+            Map<Integer, Integer> newParents = mutate(oldParents, random);
+            Tree<Integer> newTree = build(newParents);
+            Queue<NodeEvent<Integer>> events = build(oldParents).diff(newTree);
+
+            //层序比较不报告同层之间换父节点, 应用后与新树的比较只剩UPDATE
+            MyTree<Integer> tree = new TreePatch<>(events).applyTo((MyTree<Integer>) build(oldParents));
+            assertLevels(tree);
+            for (NodeEvent<Integer> event : tree.diff(newTree)) {
+                assertThat(event.getEventType(), is(UPDATE));
+            }
+            assertThat(tree.diff(newTree).size(), is(newParents.size()));
+
+            //合并子树事件不影响结果
+            MyTree<Integer> coalesced = new TreePatch<>(EventCoalescer.coalesce(events)).applyCopy(build(oldParents));
+            assertThat(children(coalesced), is(children(tree)));
+        }
+    }
+
+    @Test
+    public void testReorder() {
+        Random random = new Random(20161112L);
+        for (int round = 0; round < 200; round++) {
+            Map<Integer, Integer> parents = randomParents(1 + random.nextInt(40), random);
+            List<Map.Entry<Integer, Integer>> records = new ArrayList<>(parents.entrySet());
+            Collections.shuffle(records, random);
+            Tree<Integer> newTree = TreeBuilder.build(records);
+
+            Tree<Integer> oldTree = build(parents);
+            TreePatch<Integer> patch = new TreePatch<>(oldTree.diff(newTree, DiffAlgorithm.ORDERED));
+            assertThat(children(patch.applyCopy(oldTree)), is(children(newTree)));
+            assertThat(children(patch.applyTo((MyTree<Integer>) oldTree)), is(children(newTree)));
+            assertThat(oldTree.getByLevel(oldTree.getDeep()), is(newTree.getByLevel(newTree.getDeep())));
+        }
+    }
+
+    @Test
+    public void testInvalidPatch() {
+        Tree<Integer> sample = sampleTree();
+        Map<Integer, Node<Integer>> nodes = new HashMap<>();
+        for (int level = 1; level <= sample.getDeep(); level++) {
+            for (Node<Integer> node : sample.getByLevel(level)) {
+                nodes.put(node.key, node);
+            }
+        }
+        MyTree<Integer> other = new MyTree<>(99);
+        Node<Integer> unknown = other.addNode(other.getRoot(), 12);
+
+        assertInvalid(sample, "node 12 doesn't exist", new NodeEvent<>(MOVE, unknown));
+        assertInvalid(sample, "node 12 doesn't exist", new NodeEvent<>(DELETE, unknown));
+        assertInvalid(sample, "parent 99 of 12 doesn't exist", new NodeEvent<>(CREATE, unknown));
+        assertInvalid(sample, "node 8 already exists", new NodeEvent<>(CREATE, nodes.get(8)));
+        assertInvalid(sample, "parent 3 of 7 doesn't exist",
+                new NodeEvent<>(DELETE, nodes.get(3)), new NodeEvent<>(DELETE, nodes.get(8)),
+                new NodeEvent<>(DELETE, nodes.get(11)));
+
+        //将3移到自己的子孙8下
+        MyTree<Integer> cycle = new MyTree<>(8);
+        assertInvalid(sample, "cycle at 3", new NodeEvent<>(MOVE, cycle.addNode(cycle.getRoot(), 3)));
+        assertInvalid(sample, "multiple roots: 1, 100", new NodeEvent<>(CREATE, new MyTree<>(100).getRoot()));
+    }
+
+    @SafeVarargs
+    private static void assertInvalid(Tree<Integer> tree, String message, NodeEvent<Integer>... events) {
+        String before = tree.toString();
+        LinkedList<NodeEvent<Integer>> nodeEvents = new LinkedList<>();
+        for (NodeEvent<Integer> event : events) {
+            nodeEvents.add(event);
+        }
+        try {
+            new TreePatch<>(nodeEvents).applyTo((MyTree<Integer>) tree);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is(message));
+        }
+        assertThat(tree.toString(), is(before));
+    }
+
+    @Test
+    public void testReplaceRoot() {
+        MyTree<Integer> tree = new MyTree<>(1);
+        tree.addNode(tree.getRoot(), 2);
+        MyTree<Integer> newTree = new MyTree<>(3);
+        Node<Integer> node2 = newTree.addNode(newTree.getRoot(), 2);
+
+        LinkedList<NodeEvent<Integer>> events = new LinkedList<>();
+        events.add(new NodeEvent<>(CREATE, newTree.getRoot()));
+        events.add(new NodeEvent<>(MOVE, node2));
+        events.add(new NodeEvent<>(DELETE, tree.getRoot()));
+        new TreePatch<>(events).applyTo(tree);
+        assertThat(tree.toString(), is("3\n\t2\n"));
+        assertThat(tree.getDeep(), is(2));
+    }
+}
@@ -0,0 +1,203 @@
+package com.pekall.util.tree.diff;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+
+import static com.pekall.util.tree.diff.RandomTrees.*;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+public class TreeSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private <T> SnapshotTree<T> snapshot(Tree<T> tree, KeyCodec<T> codec, boolean subtreeHashes)
+            throws IOException {
+        Path file = folder.newFile().toPath();
+        TreeSnapshot.write(tree, codec, subtreeHashes, file);
+        return TreeSnapshot.open(file, codec);
+    }
+
+    private static List<Integer> keys(List<Node<Integer>> nodes) {
+        List<Integer> keys = new ArrayList<>();
+        for (Node<Integer> node : nodes) {
+            keys.add(node.key);
+        }
+        return keys;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Random random = new Random(20161028L);
+        for (int round = 0; round < 50; round++) {
+            Tree<Integer> tree = build(randomParents(1 + random.nextInt(100), random));
+            SnapshotTree<Integer> snapshot = snapshot(tree, KeyCodec.INTEGER, round % 2 == 0);
+
+            assertThat(snapshot.toString(), is(tree.toString()));
+            assertThat(snapshot.getDeep(), is(tree.getDeep()));
+            for (int level = 1; level <= tree.getDeep(); level++) {
+                assertThat(keys(snapshot.getByLevel(level)), is(keys(tree.getByLevel(level))));
+            }
+
+            Node<Integer> node = snapshot.getByLevel(snapshot.getDeep()).get(0);
+            assertThat(node.getPath(), is(tree.getByLevel(tree.getDeep()).get(0).getPath()));
+            assertThat(node.getLevel(), is(tree.getDeep()));
+        }
+    }
+
+    @Test
+    public void testTraverse() throws IOException {
+        Tree<Integer> tree = build(randomParents(200, new Random(20161029L)));
+        SnapshotTree<Integer> snapshot = snapshot(tree, KeyCodec.INTEGER, true);
+
+        final List<Integer> expected = new ArrayList<>();
+        final List<Integer> actual = new ArrayList<>();
+        Visitor<Integer> expectedVisitor = new Visitor<Integer>() {
+            @Override
+            public void visit(Node<Integer> node) {
+                expected.add(node.key);
+            }
+        };
+        Visitor<Integer> actualVisitor = new Visitor<Integer>() {
+            @Override
+            public void visit(Node<Integer> node) {
+                actual.add(node.key);
+            }
+        };
+
+        Node<Integer> from = tree.getByLevel(2).get(0);
+        Node<Integer> snapshotFrom = snapshot.getByLevel(2).get(0);
+        tree.preOrderTraverse(tree.getRoot(), expectedVisitor);
+        tree.postOrderTraverse(tree.getRoot(), expectedVisitor);
+        tree.levelTraverse(tree.getRoot(), expectedVisitor);
+        tree.preOrderTraverse(from, expectedVisitor);
+        tree.postOrderTraverse(from, expectedVisitor);
+        tree.levelTraverse(from, expectedVisitor);
+        snapshot.preOrderTraverse(snapshot.getRoot(), actualVisitor);
+        snapshot.postOrderTraverse(snapshot.getRoot(), actualVisitor);
+        snapshot.levelTraverse(snapshot.getRoot(), actualVisitor);
+        snapshot.preOrderTraverse(snapshotFrom, actualVisitor);
+        snapshot.postOrderTraverse(snapshotFrom, actualVisitor);
+        snapshot.levelTraverse(snapshotFrom, actualVisitor);
+
+        assertThat(actual, is(expected));
+    }
+
+    @Test
+    public void testDiffRandomTrees() throws IOException {
+        Random random = new Random(20161030L);
+        for (int round = 0; round < 100; round++) {
+            Map<Integer, Integer> parents = randomParents(1 + random.nextInt(60), random);
+            Map<Integer, Integer> mutated = mutate(parents, random);
+            SnapshotTree<Integer> oldSnapshot = snapshot(build(parents), KeyCodec.INTEGER, round % 2 == 0);
+            SnapshotTree<Integer> newSnapshot = snapshot(build(mutated), KeyCodec.INTEGER, round % 3 == 0);
+
+            String expected = build(parents).diff(build(mutated)).toString();
+            assertThat(oldSnapshot.diff(build(mutated)).toString(), is(expected));
+            assertThat(build(parents).diff(newSnapshot, DiffAlgorithm.HASH).toString(), is(expected));
+            assertThat(oldSnapshot.diff(newSnapshot).toString(), is(expected));
+
+            expected = build(parents).diff(build(mutated), DiffAlgorithm.CHANGES_ONLY).toString();
+            assertThat(oldSnapshot.diff(build(mutated), DiffAlgorithm.CHANGES_ONLY).toString(), is(expected));
+            assertThat(oldSnapshot.diff(newSnapshot, DiffAlgorithm.CHANGES_ONLY).toString(), is(expected));
+        }
+    }
+
+    @Test
+    public void testDiffUnchanged() throws IOException {
+        Tree<Integer> tree = sampleTree();
+        SnapshotTree<Integer> snapshot = snapshot(tree, KeyCodec.INTEGER, true);
+        assertTrue(snapshot.hasSubtreeHashes());
+        assertTrue(snapshot.diff(sampleTree(), DiffAlgorithm.CHANGES_ONLY).isEmpty());
+    }
+
+    @Test
+    public void testStringKeys() throws IOException {
+        Tree<String> tree = new MyTree<>("根");
+        Node<String> a = tree.addNode(tree.getRoot(), "a");
+        tree.addNode(a, "");
+        tree.addNode(tree.getRoot(), "节点b");
+
+        SnapshotTree<String> snapshot = snapshot(tree, KeyCodec.STRING, true);
+        assertThat(snapshot.size(), is(4));
+        assertThat(snapshot.toString(), is(tree.toString()));
+        assertTrue(snapshot.diff(tree, DiffAlgorithm.CHANGES_ONLY).isEmpty());
+    }
+
+    /**
+     * 哈希列中哈希相同而key不同的子树仍能比较出变化.
+     */
+    @Test
+    public void testHashCollision() throws IOException {
+        Tree<String> tree = new MyTree<>("root");
+        tree.addNode(tree.addNode(tree.getRoot(), "x"), "Aa");
+        Tree<String> other = new MyTree<>("root");
+        other.addNode(other.addNode(other.getRoot(), "x"), "BB");
+
+        SnapshotTree<String> snapshot = snapshot(tree, KeyCodec.STRING, true);
+        SnapshotTree<String> otherSnapshot = snapshot(other, KeyCodec.STRING, true);
+        assertThat(SubtreeHash.of(snapshot.getRoot()), is(SubtreeHash.of(otherSnapshot.getRoot())));
+        String expected = tree.diff(other).toString();
+        assertThat(snapshot.diff(otherSnapshot, DiffAlgorithm.CHANGES_ONLY).toString(), is(expected));
+        assertThat(snapshot.diff(other, DiffAlgorithm.CHANGES_ONLY).toString(), is(expected));
+        assertFalse(snapshot.diff(otherSnapshot, DiffAlgorithm.CHANGES_ONLY).isEmpty());
+    }
+
+    /**
+     * 两个快照只差一个叶子时, CHANGES_ONLY只为变化的节点及其子节点解码key, 未变化的子树按句柄和字节比较.
+     */
+    @Test
+    public void testChangesOnlyDecodesChangedNodes() throws IOException {
+        final int[] decoded = new int[1];
+        KeyCodec<Integer> codec = new KeyCodec<Integer>() {
+            @Override
+            public byte[] encode(Integer key) {
+                return KeyCodec.INTEGER.encode(key);
+            }
+
+            @Override
+            public Integer decode(ByteBuffer buffer, int offset, int length) {
+                decoded[0]++;
+                return KeyCodec.INTEGER.decode(buffer, offset, length);
+            }
+        };
+        MyTree<Integer> tree = new MyTree<>(0);
+        for (int key = 1; key < 11111; key++) {
+            tree.addNode(tree.findByKey((key - 1) / 10), key);
+        }
+        MyTree<Integer> other = tree.copy();
+        other.addNode(other.findByKey(5000), 11111);
+
+        SnapshotTree<Integer> snapshot = snapshot(tree, codec, true);
+        SnapshotTree<Integer> otherSnapshot = snapshot(other, codec, true);
+        decoded[0] = 0;
+        Queue<NodeEvent<Integer>> events = snapshot.diff(otherSnapshot, DiffAlgorithm.CHANGES_ONLY);
+        assertThat(events.toString(), is(tree.diff(other, DiffAlgorithm.CHANGES_ONLY).toString()));
+        assertTrue(decoded[0] < 200);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testReadOnly() throws IOException {
+        SnapshotTree<Integer> snapshot = snapshot(sampleTree(), KeyCodec.INTEGER, false);
+        snapshot.addNode(snapshot.getRoot(), 12);
+    }
+
+    @Test(expected = IOException.class)
+    public void testOpenInvalidFile() throws IOException {
+        Path file = folder.newFile().toPath();
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        TreeSnapshot.open(file, KeyCodec.INTEGER);
+    }
+}